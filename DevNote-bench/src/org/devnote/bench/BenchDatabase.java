@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.devnote.bench;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Connection to scratch MySQL database for database bound benchmarks.<br/>
+ * <br/>
+ * Such benchmarks need MySQL Connector/J jar in lib directory and 
+ * JDBC URL of empty scratch database passed as benchmark parameter, 
+ * for example: <br/>
+ * ant bench -Dbench.args="LoginUpdateBenchmark -p jdbcUrl=jdbc:mysql://localhost/devnote_bench?user=bench&amp;rewriteBatchedStatements=true"<br/>
+ * Without URL they fail in setup and other benchmarks run as usual.
+ * @author Stanislav Nepochatov
+ */
+public final class BenchDatabase {
+    
+    /**
+     * Static only.
+     */
+    private BenchDatabase() {
+    }
+    
+    /**
+     * Open connection to scratch database.
+     * @param jdbcUrl JDBC URL of scratch database;
+     * @return connection in auto-commit mode;
+     * @throws SQLException if connection fails;
+     * @throws IllegalStateException if URL isn't set;
+     */
+    public static Connection connect(String jdbcUrl) throws SQLException {
+        if (jdbcUrl == null || jdbcUrl.isEmpty()) {
+            throw new IllegalStateException("Database benchmark needs scratch MySQL database: -p jdbcUrl=jdbc:mysql://...");
+        }
+        return DriverManager.getConnection(jdbcUrl);
+    }
+    
+    /**
+     * Execute DDL or other statements without parameters.
+     * @param connection database connection;
+     * @param sqls statements to execute;
+     * @throws SQLException if statement fails;
+     */
+    public static void execute(Connection connection, String... sqls) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String sql: sqls) {
+                statement.execute(sql);
+            }
+        }
+    }
+}
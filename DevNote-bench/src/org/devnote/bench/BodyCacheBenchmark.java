@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.bench;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.devnote.service.TinyLfuCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Version text cache benchmark: cost of lookup (with load on miss) for 
+ * skewed (Zipf) reads of 100000 versions mixed with scans of old versions. 
+ * Hit ratios of W-TinyLFU and plain LRU with the same byte bound are 
+ * printed during setup.
+ * @author Stanislav Nepochatov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class BodyCacheBenchmark {
+    
+    /**
+     * Count of versions.
+     */
+    private static final int VERSIONS = 100000;
+    
+    /**
+     * Cache bound in bytes.
+     */
+    private static final long MAX_BYTES = 64L << 20;
+    
+    /**
+     * Length of trace.
+     */
+    private static final int TRACE = 1 << 20;
+    
+    /**
+     * Weigher of texts.
+     */
+    private static final TinyLfuCache.Weigher<String> WEIGHER = new TinyLfuCache.Weigher<String>() {
+        @Override
+        public long weigh(String value) {
+            return 64 + 2L * value.length();
+        }
+    };
+    
+    /**
+     * Texts of versions (shared instances of several sizes).
+     */
+    private String[] texts;
+    
+    /**
+     * Keys of versions.
+     */
+    private String[] keys;
+    
+    /**
+     * Version numbers of trace.
+     */
+    private int[] trace;
+    
+    /**
+     * Benchmarked cache.
+     */
+    private TinyLfuCache<String, String> cache;
+    
+    /**
+     * Position in trace.
+     */
+    private int pos;
+    
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        String[] sizes = new String[8];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = new String(new char[1000 << i]);
+        }
+        texts = new String[VERSIONS];
+        keys = new String[VERSIONS];
+        for (int i = 0; i < VERSIONS; i++) {
+            texts[i] = sizes[random.nextInt(sizes.length)];
+            keys[i] = Integer.toHexString(i * 0x9E3779B9);
+        }
+        trace = new int[TRACE];
+        double[] cumulative = zipf(VERSIONS, 0.9);
+        for (int i = 0; i < TRACE; i++) {
+            if (i % 100000 < 20000) {
+                //Scan of old versions (e.g. history export or crawler).
+                trace[i] = VERSIONS - 1 - (i % 100000);
+            } else {
+                int found = Arrays.binarySearch(cumulative, random.nextDouble());
+                trace[i] = Math.min(VERSIONS - 1, found < 0 ? -found - 1 : found);
+            }
+        }
+        cache = new TinyLfuCache<>(MAX_BYTES, (int) (MAX_BYTES / 16384), WEIGHER);
+        System.out.println("Hit ratio: W-TinyLFU=" + tinyLfuHitRatio() + ", LRU=" + lruHitRatio());
+    }
+    
+    @Benchmark
+    public String read() {
+        int version = trace[pos];
+        pos = (pos + 1) & (TRACE - 1);
+        String text = cache.get(keys[version]);
+        if (text == null) {
+            text = texts[version];
+            cache.put(keys[version], text);
+        }
+        return text;
+    }
+    
+    private double tinyLfuHitRatio() {
+        TinyLfuCache<String, String> tested = new TinyLfuCache<>(MAX_BYTES, (int) (MAX_BYTES / 16384), WEIGHER);
+        for (int version: trace) {
+            if (tested.get(keys[version]) == null) {
+                tested.put(keys[version], texts[version]);
+            }
+        }
+        return (double) tested.getHits() / TRACE;
+    }
+    
+    private double lruHitRatio() {
+        LinkedHashMap<String, String> lru = new LinkedHashMap<>(16, 0.75f, true);
+        long weight = 0;
+        long hits = 0;
+        for (int version: trace) {
+            if (lru.get(keys[version]) != null) {
+                hits++;
+                continue;
+            }
+            lru.put(keys[version], texts[version]);
+            weight += WEIGHER.weigh(texts[version]);
+            Iterator<Map.Entry<String, String>> iter = lru.entrySet().iterator();
+            while (weight > MAX_BYTES) {
+                weight -= WEIGHER.weigh(iter.next().getValue());
+                iter.remove();
+            }
+        }
+        return (double) hits / TRACE;
+    }
+    
+    /**
+     * Build cumulative Zipf distribution.
+     */
+    private static double[] zipf(int count, double exponent) {
+        double[] cumulative = new double[count];
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += 1 / Math.pow(i + 1, exponent);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < count; i++) {
+            cumulative[i] /= sum;
+        }
+        return cumulative;
+    }
+}
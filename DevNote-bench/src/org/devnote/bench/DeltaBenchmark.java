@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.devnote.service.Delta;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Delta version storage benchmark: encoding cost of new version and 
+ * restore cost of the longest delta chain. Storage size of the chain 
+ * (full texts vs snapshot with deltas) printed during setup.
+ * @author Stanislav Nepochatov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class DeltaBenchmark {
+    
+    /**
+     * Size of note text in bytes.
+     */
+    @Param({"10000", "200000"})
+    public int noteSize;
+    
+    /**
+     * Count of deltas after snapshot.
+     */
+    @Param({"19"})
+    public int chainLength;
+    
+    /**
+     * Full texts of all versions.
+     */
+    private byte[][] versions;
+    
+    /**
+     * Deltas of versions against previous one.
+     */
+    private byte[][] deltas;
+    
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder(NoteTexts.html(noteSize, random));
+        versions = new byte[chainLength + 1][];
+        deltas = new byte[chainLength][];
+        versions[0] = text.toString().getBytes(StandardCharsets.UTF_8);
+        long fullSize = versions[0].length;
+        long deltaSize = versions[0].length;
+        for (int i = 1; i <= chainLength; i++) {
+            NoteTexts.edit(text, random);
+            versions[i] = text.toString().getBytes(StandardCharsets.UTF_8);
+            deltas[i - 1] = Delta.encode(versions[i - 1], versions[i]);
+            fullSize += versions[i].length;
+            deltaSize += deltas[i - 1].length;
+        }
+        System.out.println("Storage of " + (chainLength + 1) + " versions: full=" + fullSize + " bytes, delta=" + deltaSize + " bytes");
+    }
+    
+    /**
+     * Encode last version against previous one (cost of saving).
+     */
+    @Benchmark
+    public byte[] encode() {
+        return Delta.encode(versions[chainLength - 1], versions[chainLength]);
+    }
+    
+    /**
+     * Restore last version from snapshot (worst case of reading).
+     */
+    @Benchmark
+    public byte[] reconstruct() {
+        byte[] text = versions[0];
+        for (byte[] delta: deltas) {
+            text = Delta.apply(text, delta);
+        }
+        return text;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.devnote.service.TextDiff;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Version diff benchmark: line and word diff of large note against 
+ * version after several edits, with trace and in linear space mode, 
+ * plus word diff of completely rewritten note (worst case).
+ * @author Stanislav Nepochatov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class DiffBenchmark {
+    
+    /**
+     * Size of note text in chars.
+     */
+    @Param({"200000", "2000000"})
+    public int noteSize;
+    
+    /**
+     * Count of edits between versions.
+     */
+    @Param({"20"})
+    public int edits;
+    
+    /**
+     * Base version text.
+     */
+    private String base;
+    
+    /**
+     * Edited version text.
+     */
+    private String edited;
+    
+    /**
+     * Unrelated text of the same size.
+     */
+    private String rewritten;
+    
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        base = NoteTexts.html(noteSize, random);
+        StringBuilder text = new StringBuilder(base);
+        for (int i = 0; i < edits; i++) {
+            NoteTexts.edit(text, random);
+        }
+        edited = text.toString();
+        rewritten = NoteTexts.html(noteSize, random);
+    }
+    
+    @Benchmark
+    public void lines(Blackhole hole) {
+        TextDiff.diff(base, edited, TextDiff.Granularity.LINE, false, new Sink(hole));
+    }
+    
+    @Benchmark
+    public void words(Blackhole hole) {
+        TextDiff.diff(base, edited, TextDiff.Granularity.WORD, false, new Sink(hole));
+    }
+    
+    @Benchmark
+    public void wordsLinearSpace(Blackhole hole) {
+        TextDiff.diff(base, edited, TextDiff.Granularity.WORD, true, new Sink(hole));
+    }
+    
+    @Benchmark
+    public void wordsRewritten(Blackhole hole) {
+        TextDiff.diff(base, rewritten, TextDiff.Granularity.WORD, false, new Sink(hole));
+    }
+    
+    /**
+     * Visitor which consumes diff ranges.
+     */
+    private static final class Sink implements TextDiff.Visitor {
+        
+        private final Blackhole hole;
+        
+        Sink(Blackhole hole) {
+            this.hole = hole;
+        }
+
+        @Override
+        public void visit(TextDiff.Operation operation, String text) {
+            hole.consume(text);
+        }
+    }
+}
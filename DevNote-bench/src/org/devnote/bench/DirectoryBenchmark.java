@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.bench;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.devnote.entries.Directory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Directory path accessors benchmark: first call on fresh entity 
+ * (path parsing) and repeated calls (tree rendering).
+ * @author Stanislav Nepochatov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class DirectoryBenchmark {
+    
+    /**
+     * Count of directories.
+     */
+    @Param({"10000"})
+    public int directories;
+    
+    /**
+     * Directory paths.
+     */
+    private String[] paths;
+    
+    /**
+     * Directories with parsed paths.
+     */
+    private Directory[] parsed;
+    
+    @Setup
+    public void setup() {
+        List<String> generated = DirectoryPaths.generate(directories, new Random(42));
+        paths = generated.toArray(new String[generated.size()]);
+        parsed = new Directory[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            parsed[i] = new Directory(i, paths[i]);
+            parsed[i].getShortName();
+        }
+    }
+    
+    /**
+     * Parent path of freshly loaded directories.
+     */
+    @Benchmark
+    public void parentFullPathFresh(Blackhole hole) {
+        for (String path: paths) {
+            hole.consume(new Directory(null, path).getParentFullPath());
+        }
+    }
+    
+    /**
+     * Parent path of already used directories.
+     */
+    @Benchmark
+    public void parentFullPath(Blackhole hole) {
+        for (Directory current: parsed) {
+            hole.consume(current.getParentFullPath());
+        }
+    }
+    
+    /**
+     * Short name of already used directories.
+     */
+    @Benchmark
+    public void shortName(Blackhole hole) {
+        for (Directory current: parsed) {
+            hole.consume(current.getShortName());
+        }
+    }
+}
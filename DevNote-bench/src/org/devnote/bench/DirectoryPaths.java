@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.bench;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generator of synthetic directory trees with dotted paths.
+ * @author Stanislav Nepochatov
+ */
+public final class DirectoryPaths {
+    
+    /**
+     * Base segment names (repeated through the tree like real folders).
+     */
+    private static final String[] NAMES = {"Docs", "Work", "Projects", "Archive", "Clients", 
+        "Servers", "Notes", "Linux", "Java", "Проекты", "Заметки", "Разное", "2013", "2014", "Misc"};
+    
+    /**
+     * Static only.
+     */
+    private DirectoryPaths() {
+    }
+    
+    /**
+     * Generate unique paths sorted in the same order as Directory.findAllSortPath query.
+     * @param count count of paths;
+     * @param random random generator;
+     * @return list of paths (every parent path is present);
+     */
+    public static List<String> generate(int count, Random random) {
+        List<String> paths = new ArrayList<>(count);
+        HashSet<String> used = new HashSet<>();
+        while (paths.size() < count) {
+            String name = NAMES[random.nextInt(NAMES.length)] + random.nextInt(64);
+            String path;
+            if (paths.isEmpty() || random.nextInt(20) == 0) {
+                path = name;
+            } else {
+                String parent = paths.get(paths.size() - 1 - random.nextInt(Math.min(paths.size(), 50)));
+                if (parent.length() - parent.replace(".", "").length() >= 8) {
+                    parent = parent.substring(0, parent.indexOf('.'));
+                }
+                path = parent + "." + name;
+            }
+            if (used.add(path)) {
+                paths.add(path);
+            }
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+}
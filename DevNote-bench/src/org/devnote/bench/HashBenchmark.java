@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.devnote.service.Hash;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Note text hashing benchmark (hash computed on every version save): 
+ * former Hash.getHash implementation vs hashing service algorithms.
+ * @author Stanislav Nepochatov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class HashBenchmark {
+    
+    /**
+     * Size of note text in chars.
+     */
+    @Param({"1024", "65536", "1048576"})
+    public int noteSize;
+    
+    /**
+     * Note text.
+     */
+    private String text;
+    
+    @Setup
+    public void setup() {
+        text = NoteTexts.html(noteSize, new Random(42));
+    }
+    
+    /**
+     * Former implementation: new digest per call, full byte copy, hex by string concatenation.
+     */
+    @Benchmark
+    public String legacyMd5() {
+        StringBuffer hexString = new StringBuffer();
+        try {
+            java.security.MessageDigest md = java.security.MessageDigest.getInstance("MD5");
+            md.update(text.getBytes());
+            byte[] hash = md.digest();
+            for (int i = 0; i < hash.length; i++) {
+                if ((0xff & hash[i]) < 0x10) {
+                    hexString.append("0"
+                            + Integer.toHexString((0xFF & hash[i])));
+                } else {
+                    hexString.append(Integer.toHexString(0xFF & hash[i]));
+                }
+            }
+        } catch (Exception ex) {}
+        return hexString.toString();
+    }
+    
+    @Benchmark
+    public String md5() {
+        return Hash.getHash(text, Hash.Algorithm.MD5);
+    }
+    
+    @Benchmark
+    public String sha256() {
+        return Hash.getHash(text, Hash.Algorithm.SHA256);
+    }
+    
+    @Benchmark
+    public String murmur3() {
+        return Hash.getHash(text, Hash.Algorithm.MURMUR3);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.bench;
+
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.devnote.ejb.LoginDateWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Login storm benchmark: cost of in-memory login date recording 
+ * when many threads log in concurrently. Ratio of logins to rows 
+ * pending for the next batch printed after each iteration. 
+ * Comparison with synchronous UPDATE per login needs database, 
+ * see {@link LoginUpdateBenchmark}.
+ * @author Stanislav Nepochatov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Threads(8)
+public class LoginBenchmark {
+    
+    /**
+     * Count of distinct users.
+     */
+    @Param({"1000"})
+    public int users;
+    
+    /**
+     * Write-behind storage (used without container, no flush).
+     */
+    private LoginDateWriter writer;
+    
+    /**
+     * Count of recorded logins.
+     */
+    private final AtomicLong logins = new AtomicLong();
+    
+    @Setup(Level.Iteration)
+    public void setup() {
+        writer = new LoginDateWriter();
+        logins.set(0);
+    }
+    
+    @TearDown(Level.Iteration)
+    public void report() {
+        System.out.println("\nLogins: " + logins.get() + ", rows in batch: " + writer.getPendingCount());
+    }
+    
+    /**
+     * Login date recording of random user.
+     */
+    @Benchmark
+    public void login() {
+        writer.record(ThreadLocalRandom.current().nextInt(users), new Date());
+        logins.incrementAndGet();
+    }
+}
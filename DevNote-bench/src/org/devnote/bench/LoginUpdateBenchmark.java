@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.devnote.bench;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.devnote.ejb.LoginDateWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Login storm against MySQL: old synchronous UPDATE of login date 
+ * per login compared with write-behind recording, where every 
+ * flushEvery-th login also writes all pending dates with single batch 
+ * (like flush timer of LoginDateWriter). Scores are per login, 
+ * so batch cost is amortized over logins between flushes.<br/>
+ * Needs scratch database, see {@link BenchDatabase}.
+ * @author Stanislav Nepochatov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Threads(8)
+public class LoginUpdateBenchmark {
+    
+    /**
+     * Update statement of login date (the same as in LoginDateWriter).
+     */
+    private static final String UPDATE_SQL = "UPDATE bench_user SET log_date = ? WHERE id = ?";
+    
+    /**
+     * JDBC URL of scratch database.
+     */
+    @Param({""})
+    public String jdbcUrl;
+    
+    /**
+     * Count of distinct users.
+     */
+    @Param({"1000"})
+    public int users;
+    
+    /**
+     * Count of logins between batch flushes.
+     */
+    @Param({"10000"})
+    public int flushEvery;
+    
+    /**
+     * Write-behind storage (used without container).
+     */
+    private LoginDateWriter writer;
+    
+    /**
+     * Count of recorded logins.
+     */
+    private final AtomicLong logins = new AtomicLong();
+    
+    @Setup(Level.Trial)
+    public void createTable() throws SQLException {
+        try (Connection connection = BenchDatabase.connect(jdbcUrl)) {
+            BenchDatabase.execute(connection, "DROP TABLE IF EXISTS bench_user", 
+                    "CREATE TABLE bench_user (id int primary key, log_date datetime) ENGINE = InnoDB");
+            try (PreparedStatement statement = connection.prepareStatement("INSERT INTO bench_user (id) VALUES (?)")) {
+                for (int id = 0; id < users; id++) {
+                    statement.setInt(1, id);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        }
+    }
+    
+    @Setup(Level.Iteration)
+    public void setup() {
+        writer = new LoginDateWriter();
+        logins.set(0);
+    }
+    
+    @TearDown(Level.Trial)
+    public void dropTable() throws SQLException {
+        try (Connection connection = BenchDatabase.connect(jdbcUrl)) {
+            BenchDatabase.execute(connection, "DROP TABLE IF EXISTS bench_user");
+        }
+    }
+    
+    /**
+     * Database connection of benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class ThreadConnection {
+        
+        /**
+         * Connection in auto-commit mode.
+         */
+        private Connection connection;
+        
+        /**
+         * Prepared update of login date.
+         */
+        private PreparedStatement update;
+        
+        @Setup(Level.Trial)
+        public void open(LoginUpdateBenchmark bench) throws SQLException {
+            connection = BenchDatabase.connect(bench.jdbcUrl);
+            update = connection.prepareStatement(UPDATE_SQL);
+        }
+        
+        @TearDown(Level.Trial)
+        public void close() throws SQLException {
+            update.close();
+            connection.close();
+        }
+    }
+    
+    /**
+     * Old login: synchronous update and commit of login date.
+     * @param thread connection of thread;
+     * @throws SQLException if update fails;
+     */
+    @Benchmark
+    public void updatePerLogin(ThreadConnection thread) throws SQLException {
+        thread.update.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
+        thread.update.setInt(2, ThreadLocalRandom.current().nextInt(users));
+        thread.update.executeUpdate();
+    }
+    
+    /**
+     * Write-behind login: recording in memory and batch of pending dates 
+     * on every flushEvery-th login.
+     * @param thread connection of thread;
+     * @throws SQLException if batch fails;
+     */
+    @Benchmark
+    public void writeBehind(ThreadConnection thread) throws SQLException {
+        writer.record(ThreadLocalRandom.current().nextInt(users), new Date());
+        if (logins.incrementAndGet() % flushEvery != 0) {
+            return;
+        }
+        for (Map.Entry<Integer, Date> entry: writer.drainPending().entrySet()) {
+            thread.update.setTimestamp(1, new Timestamp(entry.getValue().getTime()));
+            thread.update.setInt(2, entry.getKey());
+            thread.update.addBatch();
+        }
+        thread.update.executeBatch();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.bench;
+
+import java.util.Random;
+
+/**
+ * Generator of synthetic note texts similar to p:editor HTML output.
+ * @author Stanislav Nepochatov
+ */
+public final class NoteTexts {
+    
+    /**
+     * Words for text generation (latin and cyrillic).
+     */
+    private static final String[] WORDS = {"server", "nginx", "config", "deploy", "ticket", 
+        "database", "index", "query", "java", "glassfish", "заметка", "проект", "версия", 
+        "сервер", "the", "and", "with", "for", "is", "not", "to", "of"};
+    
+    /**
+     * Static only.
+     */
+    private NoteTexts() {
+    }
+    
+    /**
+     * Generate HTML text.
+     * @param size approximate length in chars;
+     * @param random random generator;
+     * @return generated text;
+     */
+    public static String html(int size, Random random) {
+        StringBuilder builder = new StringBuilder(size + 64);
+        while (builder.length() < size) {
+            appendParagraph(builder, random);
+        }
+        return builder.toString();
+    }
+    
+    /**
+     * Apply user-like edit: insert, remove or replace paragraph somewhere in text.
+     * @param text text to edit;
+     * @param random random generator;
+     */
+    public static void edit(StringBuilder text, Random random) {
+        int pos = text.indexOf("<p>", random.nextInt(text.length()));
+        if (pos < 0) {
+            pos = text.length();
+        }
+        int end = text.indexOf("</p>", pos);
+        switch (random.nextInt(3)) {
+            case 0:
+                StringBuilder inserted = new StringBuilder();
+                appendParagraph(inserted, random);
+                text.insert(pos, inserted);
+                break;
+            case 1:
+                if (end > 0) {
+                    text.delete(pos, end + 4);
+                }
+                break;
+            default:
+                if (end > 0) {
+                    text.replace(pos + 3, end, WORDS[random.nextInt(WORDS.length)]);
+                }
+        }
+    }
+    
+    /**
+     * Append single paragraph with some markup.
+     */
+    private static void appendParagraph(StringBuilder builder, Random random) {
+        builder.append("<p>");
+        int words = 5 + random.nextInt(40);
+        for (int i = 0; i < words; i++) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            if (random.nextInt(10) == 0) {
+                builder.append("<b>").append(word).append("</b> ");
+            } else {
+                builder.append(word).append(' ');
+            }
+        }
+        builder.append(random.nextInt(100000)).append("</p>\n");
+    }
+}
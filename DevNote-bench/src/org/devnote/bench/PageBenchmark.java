@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.devnote.bench;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Deep page benchmark against MySQL: page of notes sorted by date of 
+ * the last version at given depth read with LIMIT/OFFSET (like findRange) 
+ * and with keyset condition (like findPageAfter with sort attribute). 
+ * SQL is the same as EclipseLink generates for both methods, table has 
+ * the same (last_version_date, id) index as Note.<br/>
+ * Needs scratch database, see {@link BenchDatabase}.
+ * @author Stanislav Nepochatov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PageBenchmark {
+    
+    /**
+     * JDBC URL of scratch database.
+     */
+    @Param({""})
+    public String jdbcUrl;
+    
+    /**
+     * Count of notes in table.
+     */
+    @Param({"1000000"})
+    public int rows;
+    
+    /**
+     * Index of the first row of page.
+     */
+    @Param({"0", "10000", "500000"})
+    public int depth;
+    
+    /**
+     * Count of rows on page.
+     */
+    @Param({"50"})
+    public int pageSize;
+    
+    /**
+     * Database connection.
+     */
+    private Connection connection;
+    
+    /**
+     * Page by offset.
+     */
+    private PreparedStatement offsetPage;
+    
+    /**
+     * Page by keyset.
+     */
+    private PreparedStatement keysetPage;
+    
+    /**
+     * Sort key of the row before page.
+     */
+    private Timestamp lastDate;
+    
+    /**
+     * Id of the row before page.
+     */
+    private int lastId;
+    
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        connection = BenchDatabase.connect(jdbcUrl);
+        BenchDatabase.execute(connection, "DROP TABLE IF EXISTS bench_note", 
+                "CREATE TABLE bench_note (id int auto_increment primary key, header varchar(255) not null, "
+                + "last_version_date datetime not null, INDEX (last_version_date, id)) ENGINE = InnoDB");
+        Random random = new Random(42);
+        connection.setAutoCommit(false);
+        long now = System.currentTimeMillis();
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO bench_note (header, last_version_date) VALUES (?, ?)")) {
+            for (int row = 1; row <= rows; row++) {
+                insert.setString(1, "Note " + row);
+                insert.setTimestamp(2, new Timestamp(now - 1000L * random.nextInt(rows)));
+                insert.addBatch();
+                if (row % 10000 == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+        offsetPage = connection.prepareStatement("SELECT id, header, last_version_date FROM bench_note "
+                + "ORDER BY last_version_date, id LIMIT ? OFFSET ?");
+        keysetPage = connection.prepareStatement("SELECT id, header, last_version_date FROM bench_note "
+                + "WHERE ((last_version_date > ?) OR ((last_version_date = ?) AND (id > ?))) "
+                + "ORDER BY last_version_date, id LIMIT ?");
+        if (depth > 0) {
+            offsetPage.setInt(1, 1);
+            offsetPage.setInt(2, depth - 1);
+            try (ResultSet rs = offsetPage.executeQuery()) {
+                rs.next();
+                lastId = rs.getInt(1);
+                lastDate = rs.getTimestamp(3);
+            }
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        BenchDatabase.execute(connection, "DROP TABLE IF EXISTS bench_note");
+        connection.close();
+    }
+    
+    /**
+     * Page with LIMIT/OFFSET: database reads and skips all rows before page.
+     * @return last id of page;
+     * @throws SQLException if query fails;
+     */
+    @Benchmark
+    public int offset() throws SQLException {
+        offsetPage.setInt(1, pageSize);
+        offsetPage.setInt(2, depth);
+        return read(offsetPage);
+    }
+    
+    /**
+     * Page with keyset condition: database seeks to the row after cursor.
+     * @return last id of page;
+     * @throws SQLException if query fails;
+     */
+    @Benchmark
+    public int keyset() throws SQLException {
+        PreparedStatement statement = keysetPage;
+        if (depth == 0) {
+            statement = offsetPage;
+            statement.setInt(1, pageSize);
+            statement.setInt(2, 0);
+        } else {
+            statement.setTimestamp(1, lastDate);
+            statement.setTimestamp(2, lastDate);
+            statement.setInt(3, lastId);
+            statement.setInt(4, pageSize);
+        }
+        return read(statement);
+    }
+    
+    /**
+     * Read whole page.
+     */
+    private static int read(PreparedStatement statement) throws SQLException {
+        int last = 0;
+        try (ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                last = rs.getInt(1);
+                rs.getString(2);
+                rs.getTimestamp(3);
+            }
+        }
+        return last;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.bench;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.devnote.entries.Directory;
+import org.devnote.service.PathTrie;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Path resolution benchmark: old HashMap of full paths with 
+ * Directory.getParentFullPath() parent lookup vs path trie.
+ * @author Stanislav Nepochatov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PathTrieBenchmark {
+    
+    /**
+     * Count of directories.
+     */
+    @Param({"100000"})
+    public int directories;
+    
+    /**
+     * Sorted directories.
+     */
+    private Directory[] sorted;
+    
+    /**
+     * Built full path map.
+     */
+    private Map<String, Directory> map;
+    
+    /**
+     * Built trie.
+     */
+    private PathTrie<Directory> trie;
+    
+    @Setup
+    public void setup() {
+        List<String> paths = DirectoryPaths.generate(directories, new Random(42));
+        sorted = new Directory[paths.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = new Directory(i, paths.get(i));
+        }
+        map = buildMap();
+        trie = buildTrie();
+    }
+    
+    /**
+     * Tree build as in old DirectoryTreeBuilder: put every directory 
+     * and resolve its parent.
+     */
+    @Benchmark
+    public Map<String, Directory> hashMapBuild(Blackhole hole) {
+        return buildMap(hole);
+    }
+    
+    /**
+     * Same tree build with path trie.
+     */
+    @Benchmark
+    public PathTrie<Directory> trieBuild(Blackhole hole) {
+        PathTrie<Directory> result = new PathTrie<>();
+        for (Directory current: sorted) {
+            hole.consume(result.getParent(current.getPath()));
+            result.put(current.getPath(), current);
+        }
+        return result;
+    }
+    
+    /**
+     * Parent lookup of every directory in full path map.
+     */
+    @Benchmark
+    public void hashMapParentLookup(Blackhole hole) {
+        for (Directory current: sorted) {
+            hole.consume(map.get(current.getParentFullPath()));
+        }
+    }
+    
+    /**
+     * Parent lookup of every directory in trie.
+     */
+    @Benchmark
+    public void trieParentLookup(Blackhole hole) {
+        for (Directory current: sorted) {
+            hole.consume(trie.getParent(current.getPath()));
+        }
+    }
+    
+    private Map<String, Directory> buildMap() {
+        return buildMap(null);
+    }
+    
+    private PathTrie<Directory> buildTrie() {
+        PathTrie<Directory> result = new PathTrie<>();
+        for (Directory current: sorted) {
+            result.put(current.getPath(), current);
+        }
+        return result;
+    }
+    
+    private Map<String, Directory> buildMap(Blackhole hole) {
+        Map<String, Directory> result = new HashMap<>();
+        for (Directory current: sorted) {
+            Directory parent = result.get(current.getParentFullPath());
+            if (hole != null) {
+                hole.consume(parent);
+            }
+            result.put(current.getPath(), current);
+        }
+        return result;
+    }
+}
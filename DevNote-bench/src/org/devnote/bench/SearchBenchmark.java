@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.bench;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.devnote.service.TextIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full text search benchmark: top 50 notes of single user for common 
+ * words (long posting lists) and for rare word, plus note analysis cost.
+ * @author Stanislav Nepochatov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SearchBenchmark {
+    
+    /**
+     * Count of user notes.
+     */
+    @Param({"10000", "100000"})
+    public int notes;
+    
+    /**
+     * Size of note text in chars.
+     */
+    @Param({"1000"})
+    public int noteSize;
+    
+    /**
+     * Built index.
+     */
+    private TextIndex index;
+    
+    /**
+     * Sample note text.
+     */
+    private String sample;
+    
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        index = new TextIndex();
+        for (int i = 0; i < notes; i++) {
+            String header = "Note " + i + (i % 1000 == 0 ? " rareword" : "");
+            index.add(TextIndex.analyze(i, 1, header, NoteTexts.html(noteSize, random)));
+        }
+        sample = NoteTexts.html(noteSize, random);
+    }
+    
+    @Benchmark
+    public List<TextIndex.Hit> commonWords() {
+        return index.search(1, "nginx deploy заметка", 50);
+    }
+    
+    @Benchmark
+    public List<TextIndex.Hit> rareWord() {
+        return index.search(1, "rareword", 50);
+    }
+    
+    @Benchmark
+    public TextIndex.Document analyze() {
+        return TextIndex.analyze(0, 1, "Header", sample);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.devnote.service.TextCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Stored text compression benchmark: encode and decode cost on editor-like 
+ * HTML. Compression ratio printed during setup.
+ * @author Stanislav Nepochatov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TextCodecBenchmark {
+    
+    /**
+     * Size of note text in chars.
+     */
+    @Param({"1000", "20000", "200000"})
+    public int noteSize;
+    
+    /**
+     * Note text.
+     */
+    private String text;
+    
+    /**
+     * Encoded note text.
+     */
+    private byte[] encoded;
+    
+    @Setup
+    public void setup() {
+        text = NoteTexts.html(noteSize, new Random(42));
+        encoded = TextCodec.encode(text);
+        int plainSize = text.getBytes(StandardCharsets.UTF_8).length;
+        System.out.println("Stored size: plain=" + plainSize + " bytes, encoded=" + encoded.length 
+                + " bytes, ratio=" + String.format("%.2f", (double) plainSize / encoded.length));
+    }
+    
+    @Benchmark
+    public byte[] encode() {
+        return TextCodec.encode(text);
+    }
+    
+    @Benchmark
+    public String decode() {
+        return TextCodec.decode(encoded);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.bench;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.devnote.entries.Directory;
+import org.devnote.service.PathTrie;
+import org.devnote.wrappers.primefaces.DirectoryWrapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.primefaces.model.TreeNode;
+
+/**
+ * Directory tree benchmark: construction of DirectoryWrapper tree from 
+ * directories sorted by path (as DirectoryTreeBuilder receives them) and 
+ * full traversal of built tree (as tree rendering does).
+ * @author Stanislav Nepochatov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TreeBenchmark {
+    
+    /**
+     * Count of directories.
+     */
+    @Param({"1000", "10000", "100000"})
+    public int directories;
+    
+    /**
+     * Directories sorted by path.
+     */
+    private Directory[] sorted;
+    
+    /**
+     * Built tree root.
+     */
+    private DirectoryWrapper root;
+    
+    @Setup
+    public void setup() {
+        List<String> paths = DirectoryPaths.generate(directories, new Random(42));
+        sorted = new Directory[paths.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = new Directory(i, paths.get(i));
+        }
+        root = build();
+    }
+    
+    /**
+     * Build wrapper tree.
+     */
+    @Benchmark
+    public DirectoryWrapper buildTree() {
+        return build();
+    }
+    
+    /**
+     * Visit every node of tree and read its label.
+     */
+    @Benchmark
+    public int traverseTree(Blackhole hole) {
+        int count = 0;
+        ArrayDeque<TreeNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            TreeNode current = stack.pop();
+            hole.consume(current.getData());
+            hole.consume(current.isLeaf());
+            for (TreeNode child: current.getChildren()) {
+                stack.push(child);
+            }
+            count++;
+        }
+        return count;
+    }
+    
+    private DirectoryWrapper build() {
+        DirectoryWrapper result = new DirectoryWrapper();
+        PathTrie<DirectoryWrapper> index = new PathTrie<>();
+        for (Directory current: sorted) {
+            DirectoryWrapper parent = index.getParent(current.getPath());
+            if (parent == null) {
+                parent = result;
+            }
+            DirectoryWrapper inserted = new DirectoryWrapper(current, parent);
+            parent.getChildren().add(inserted);
+            index.put(current.getPath(), inserted);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.bench;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.devnote.service.TrigramIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Header search benchmark: substring search for ticket number and 
+ * common word, fuzzy search with typo, against headers of single user.
+ * @author Stanislav Nepochatov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TrigramBenchmark {
+    
+    /**
+     * Words of generated headers.
+     */
+    private static final String[] WORDS = {"nginx", "config", "deploy", "glassfish", "java", 
+        "mysql", "replication", "backup", "заметка", "сервер", "proxy", "release", "hotfix"};
+    
+    /**
+     * Count of user notes.
+     */
+    @Param({"100000", "1000000"})
+    public int notes;
+    
+    /**
+     * Built index.
+     */
+    private TrigramIndex index;
+    
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        index = new TrigramIndex();
+        StringBuilder header = new StringBuilder();
+        for (int i = 0; i < notes; i++) {
+            header.setLength(0);
+            header.append("JIRA-").append(i).append(' ');
+            for (int w = 0; w < 3; w++) {
+                header.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            index.put(1, i, header.toString());
+        }
+    }
+    
+    @Benchmark
+    public List<Integer> ticketNumber() {
+        return index.findSubstring(1, "jira-54321 ", 50);
+    }
+    
+    @Benchmark
+    public List<Integer> commonWord() {
+        return index.findSubstring(1, "replication", 50);
+    }
+    
+    @Benchmark
+    public List<Integer> similar() {
+        return index.findSimilar(1, "jira-54321 glasfish", 0.3f, 50);
+    }
+}
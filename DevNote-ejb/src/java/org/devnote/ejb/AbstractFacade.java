@@ -17,8 +17,29 @@
 
 package org.devnote.ejb;
 
+import java.util.Collections;
 import java.util.List;
+import javax.annotation.Resource;
+import javax.ejb.EJB;
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnit;
+import javax.persistence.Query;
+import javax.persistence.Table;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.EntityType;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.config.ResultSetType;
+import org.eclipse.persistence.queries.ScrollableCursor;
 
 /**
  * Abstract facade for EJB.
@@ -26,10 +47,40 @@ import javax.persistence.EntityManager;
  */
 public abstract class AbstractFacade<T> {
     
+    /**
+     * JDBC fetch size for streaming reads. Persistence context 
+     * cleared after the same count of entities.
+     */
+    protected static final int STREAM_FETCH_SIZE = 200;
+    
     /**
      * Facade type pointer.
      */
     private Class<T> entityClass;
+    
+    /**
+     * Shared entity counters.
+     */
+    @EJB
+    private CountCache countCache;
+    
+    /**
+     * Shared entity cache statistics and invalidation.
+     */
+    @EJB
+    private SharedCache sharedCache;
+    
+    /**
+     * Registry of current transaction callbacks.
+     */
+    @Resource
+    private TransactionSynchronizationRegistry transactionRegistry;
+    
+    /**
+     * Entity manager factory for readers outside of transaction.
+     */
+    @PersistenceUnit(unitName = "DevNote-ejbPU")
+    private EntityManagerFactory emf;
 
     /**
      * Facade constructor.
@@ -45,28 +96,88 @@ public abstract class AbstractFacade<T> {
      */
     protected abstract EntityManager getEntityManager();
 
+    /**
+     * Create application managed entity manager for long reads outside 
+     * of transaction (e.g. exports), so cursor isn't limited by transaction 
+     * timeout and keeps its connection until closed. Caller should close it.
+     * @return new entity manager;
+     */
+    protected EntityManager createReader() {
+        return emf.createEntityManager();
+    }
+
+    /**
+     * Run action after commit of current transaction or right now 
+     * if there is no transaction. Action is dropped on rollback.<br/>
+     * <br/>
+     * Use it for application wide caches and indexes: changed before 
+     * commit, they may be refilled with old rows by concurrent reader 
+     * or keep changes of rolled back transaction.
+     * @param action action to run;
+     */
+    protected void afterCommit(final Runnable action) {
+        if (transactionRegistry.getTransactionKey() == null) {
+            action.run();
+            return;
+        }
+        transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+                //Pass
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    action.run();
+                }
+            }
+        });
+    }
+
     /**
      * Create entity in database (INSERT).
      * @param entity object to create;
      */
-    public void create(T entity) {
+    public void create(final T entity) {
         getEntityManager().persist(entity);
+        afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                countCache.add(entityClass, 1);
+                sharedCache.invalidateReferences(entity);
+            }
+        });
     }
 
     /**
      * Edit entity in database (UPDATE).
      * @param entity object ot edit;
      */
-    public void edit(T entity) {
+    public void edit(final T entity) {
         getEntityManager().merge(entity);
+        afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                sharedCache.invalidate(entity);
+            }
+        });
     }
 
     /**
      * Remove entity from database (DROP).
      * @param entity object ot delete;
      */
-    public void remove(T entity) {
+    public void remove(final T entity) {
         getEntityManager().remove(getEntityManager().merge(entity));
+        afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                sharedCache.invalidate(entity);
+                countCache.add(entityClass, -1);
+                countCache.invalidateOthers(entityClass);
+            }
+        });
     }
 
     /**
@@ -75,11 +186,14 @@ public abstract class AbstractFacade<T> {
      * @return finded entity with specified id;
      */
     public T find(Object id) {
+        sharedCache.lookup(entityClass, id);
         return getEntityManager().find(entityClass, id);
     }
 
     /**
-     * Find all entities of this type.
+     * Find all entities of this type.<br/>
+     * <b>WARNING!</b> Whole table will be loaded into memory, 
+     * use {@link #visitAll(EntityVisitor)} for big tables.
      * @return list with all entities with this type;
      */
     public List<T> findAll() {
@@ -88,6 +202,65 @@ public abstract class AbstractFacade<T> {
         return getEntityManager().createQuery(cq).getResultList();
     }
 
+    /**
+     * Visit all entities of this type without loading them into single list.<br/>
+     * <br/>
+     * Entities readed through the database cursor in id order and 
+     * detached periodically, so memory usage stays flat for any table size. 
+     * Use this method instead of {@link #findAll()} for exports and admin jobs.
+     * @param visitor callback for every entity;
+     */
+    public void visitAll(EntityVisitor<T> visitor) {
+        CriteriaBuilder cb = getEntityManager().getCriteriaBuilder();
+        CriteriaQuery<T> cq = cb.createQuery(entityClass);
+        Root<T> rt = cq.from(entityClass);
+        cq.select(rt);
+        cq.orderBy(cb.asc(rt.get(getIdAttribute())));
+        visitQuery(getEntityManager().createQuery(cq), visitor);
+    }
+
+    /**
+     * Read query results through server-side cursor and pass it to visitor.<br/>
+     * <br/>
+     * <b>WARNING!</b> Persistence context cleared every {@link #STREAM_FETCH_SIZE} 
+     * entities, so all unflushed changes of current transaction should be 
+     * flushed before this call.
+     * @param query query with entities of this type;
+     * @param visitor callback for every entity;
+     */
+    protected void visitQuery(Query query, EntityVisitor<T> visitor) {
+        visitQuery(query, getEntityManager(), visitor);
+    }
+
+    /**
+     * Read query results of other entity manager through server-side cursor 
+     * and pass it to visitor.
+     * @param query query with entities of this type;
+     * @param manager entity manager which created the query;
+     * @param visitor callback for every entity;
+     * @see #createReader()
+     */
+    @SuppressWarnings("unchecked")
+    protected void visitQuery(Query query, EntityManager manager, EntityVisitor<T> visitor) {
+        query.setHint(QueryHints.SCROLLABLE_CURSOR, HintValues.TRUE);
+        query.setHint(QueryHints.RESULT_SET_TYPE, ResultSetType.ForwardOnly);
+        query.setHint(QueryHints.JDBC_FETCH_SIZE, STREAM_FETCH_SIZE);
+        query.setHint(QueryHints.MAINTAIN_CACHE, HintValues.FALSE);
+        ScrollableCursor cursor = (ScrollableCursor) query.getSingleResult();
+        try {
+            int readed = 0;
+            while (cursor.hasNext()) {
+                visitor.visit((T) cursor.next());
+                if (++readed % STREAM_FETCH_SIZE == 0) {
+                    cursor.clear();
+                    manager.clear();
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
     /**
      * Find range of entityes of this type.
      * @param range int array with range;
@@ -103,10 +276,190 @@ public abstract class AbstractFacade<T> {
     }
 
     /**
-     * Return count of entities of this type.
+     * Find next page of entities ordered by id (keyset pagination).<br/>
+     * <br/>
+     * Unlike {@link #findRange(int[])} this method doesn't skip rows on the 
+     * database side, so the cost of the page doesn't depend on its depth.
+     * @param lastId id of the last entity on previous page or null for the first page;
+     * @param pageSize maximum size of the page;
+     * @return list with entities sorted by id;
+     */
+    public List<T> findPageAfter(Object lastId, int pageSize) {
+        return findPage(null, null, lastId, pageSize, true);
+    }
+
+    /**
+     * Find previous page of entities ordered by id (keyset pagination).
+     * @param firstId id of the first entity on next page or null for the last page;
+     * @param pageSize maximum size of the page;
+     * @return list with entities sorted by id;
+     */
+    public List<T> findPageBefore(Object firstId, int pageSize) {
+        return findPage(null, null, firstId, pageSize, false);
+    }
+
+    /**
+     * Find next page of entities ordered by attribute and id (keyset pagination).<br/>
+     * <br/>
+     * Id is used as tie breaker, so order is stable even for equal sort keys.
+     * @param sortAttribute name of the entity attribute to sort by;
+     * @param lastKey sort key of the last entity on previous page or null for the first page;
+     * @param lastId id of the last entity on previous page or null for the first page;
+     * @param pageSize maximum size of the page;
+     * @return list with entities sorted by attribute and id;
+     */
+    public List<T> findPageAfter(String sortAttribute, Object lastKey, Object lastId, int pageSize) {
+        return findPage(sortAttribute, lastKey, lastId, pageSize, true);
+    }
+
+    /**
+     * Find previous page of entities ordered by attribute and id (keyset pagination).
+     * @param sortAttribute name of the entity attribute to sort by;
+     * @param firstKey sort key of the first entity on next page or null for the last page;
+     * @param firstId id of the first entity on next page or null for the last page;
+     * @param pageSize maximum size of the page;
+     * @return list with entities sorted by attribute and id;
+     */
+    public List<T> findPageBefore(String sortAttribute, Object firstKey, Object firstId, int pageSize) {
+        return findPage(sortAttribute, firstKey, firstId, pageSize, false);
+    }
+
+    /**
+     * Build and execute keyset page query.<br/>
+     * <br/>
+     * Backward pages are selected in reversed order and turned back, so 
+     * caller always gets ascending list. Null sort keys are ordered 
+     * before all other keys, like MySQL does.
+     * @param sortAttribute attribute to sort by or null to sort only by id;
+     * @param key sort key of cursor entity (may be null if entity has no such value);
+     * @param id id of cursor entity or null to start from the edge;
+     * @param pageSize maximum size of the page;
+     * @param forward direction flag;
+     * @return list with entities;
+     * @throws IllegalArgumentException if page size isn't positive;
+     */
+    protected List<T> findPage(String sortAttribute, Object key, Object id, int pageSize, boolean forward) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size should be positive: " + pageSize);
+        }
+        CriteriaBuilder cb = getEntityManager().getCriteriaBuilder();
+        CriteriaQuery<T> cq = cb.createQuery(entityClass);
+        Root<T> rt = cq.from(entityClass);
+        Path<Object> idPath = rt.get(getIdAttribute());
+        Path<Object> keyPath = sortAttribute != null ? rt.get(sortAttribute) : null;
+        
+        if (id != null) {
+            Predicate afterId = compare(cb, idPath, id, forward);
+            if (keyPath == null) {
+                cq.where(afterId);
+            } else if (key == null) {
+                Predicate sameKey = cb.and(cb.isNull(keyPath), afterId);
+                cq.where(forward ? cb.or(cb.isNotNull(keyPath), sameKey) : sameKey);
+            } else {
+                Predicate afterKey = compare(cb, keyPath, key, forward);
+                if (!forward) {
+                    afterKey = cb.or(afterKey, cb.isNull(keyPath));
+                }
+                cq.where(cb.or(afterKey, cb.and(cb.equal(keyPath, key), afterId)));
+            }
+        }
+        
+        if (keyPath == null) {
+            cq.orderBy(forward ? cb.asc(idPath) : cb.desc(idPath));
+        } else {
+            cq.orderBy(forward ? cb.asc(keyPath) : cb.desc(keyPath), forward ? cb.asc(idPath) : cb.desc(idPath));
+        }
+        
+        TypedQuery<T> q = getEntityManager().createQuery(cq);
+        q.setMaxResults(pageSize);
+        List<T> result = q.getResultList();
+        if (!forward) {
+            Collections.reverse(result);
+        }
+        return result;
+    }
+
+    /**
+     * Build comparison of attribute with cursor value.
+     * @param cb criteria builder;
+     * @param path attribute path;
+     * @param value cursor value of comparable attribute;
+     * @param greater true for greater than, false for less than;
+     * @return predicate;
+     */
+    @SuppressWarnings("unchecked")
+    protected static <Y extends Comparable<? super Y>> Predicate compare(CriteriaBuilder cb, Path<?> path, Object value, boolean greater) {
+        Path<Y> typedPath = (Path<Y>) path;
+        return greater ? cb.greaterThan(typedPath, (Y) value) : cb.lessThan(typedPath, (Y) value);
+    }
+
+    /**
+     * Get name of the id attribute of this entity type.
+     * @return attribute name;
+     */
+    protected String getIdAttribute() {
+        EntityType<T> type = getEntityManager().getMetamodel().entity(entityClass);
+        return type.getId(type.getIdType().getJavaType()).getName();
+    }
+
+    /**
+     * Return count of entities of this type.<br/>
+     * <br/>
+     * Count is served from {@link CountCache} and queried only 
+     * if cached value is absent or stale.
      * @return integer count;
      */
     public int count() {
+        Long cached = countCache.getExact(entityClass);
+        if (cached != null) {
+            return cached.intValue();
+        }
+        int exact = countExact();
+        countCache.setExact(entityClass, exact);
+        return exact;
+    }
+
+    /**
+     * Return approximate count of entities of this type.<br/>
+     * <br/>
+     * Count taken from database table statistics (may differ from real count 
+     * for InnoDB), cached exact count is used if available. Falls back to 
+     * exact count if statistics is unavailable.
+     * @return integer count;
+     */
+    public int countApproximate() {
+        Long cached = countCache.getExact(entityClass);
+        if (cached == null) {
+            cached = countCache.getApproximate(entityClass);
+        }
+        if (cached != null) {
+            return cached.intValue();
+        }
+        Query q = getEntityManager().createNativeQuery("SELECT TABLE_ROWS FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?1");
+        q.setParameter(1, getTableName());
+        List<?> rows = q.getResultList();
+        if (rows.isEmpty() || rows.get(0) == null) {
+            return count();
+        }
+        long approximate = ((Number) rows.get(0)).longValue();
+        countCache.setApproximate(entityClass, approximate);
+        return (int) approximate;
+    }
+
+    /**
+     * Get name of the table for this entity type.
+     * @return table name;
+     */
+    protected String getTableName() {
+        Table table = entityClass.getAnnotation(Table.class);
+        return table != null ? table.name() : entityClass.getSimpleName();
+    }
+
+    /**
+     * Return count of entities of this type directly from database.
+     * @return integer count;
+     */
+    protected int countExact() {
         javax.persistence.criteria.CriteriaQuery cq = getEntityManager().getCriteriaBuilder().createQuery();
         javax.persistence.criteria.Root<T> rt = cq.from(entityClass);
         cq.select(getEntityManager().getCriteriaBuilder().count(rt));
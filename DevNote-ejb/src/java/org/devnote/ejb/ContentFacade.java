@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.ejb;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.ejb.Stateless;
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import org.devnote.entries.Content;
+import org.devnote.entries.Directory;
+import org.devnote.entries.Note;
+import org.devnote.service.TextCodec;
+
+/**
+ * Content facade.
+ * @author Stanislav Nepochatov
+ */
+@Stateless
+public class ContentFacade extends AbstractFacade<Content> implements ContentFacadeLocal {
+    
+    /**
+     * Insert of unused content, existing content with the same hash is kept as is.
+     */
+    private static final String INSERT_SQL = "INSERT INTO Content (hash, note_text, ref_count) VALUES (?1, ?2, 0) "
+            + "ON DUPLICATE KEY UPDATE ref_count = ref_count";
+    
+    /**
+     * Entity manager.
+     */
+    @PersistenceContext(unitName = "DevNote-ejbPU")
+    private EntityManager em;
+
+    @Override
+    protected EntityManager getEntityManager() {
+        return em;
+    }
+
+    /**
+     * Default constructor.
+     */
+    public ContentFacade() {
+        super(Content.class);
+    }
+
+    @Override
+    public Content acquireExisting(String hash, String text) {
+        return acquireMatching(hash, text, false);
+    }
+
+    /**
+     * Get content for text. Content is inserted unused, or kept as is if 
+     * other transaction already inserted it, then it's read with lock 
+     * (latest committed row) and acquired if its text is the same.
+     * @param hash text hash;
+     * @param text full text;
+     * @return content entity or null if content with such hash has other text;
+     */
+    @Override
+    public Content acquire(String hash, String text) {
+        Content existing = acquireMatching(hash, text, false);
+        if (existing != null) {
+            return existing;
+        }
+        em.createNativeQuery(INSERT_SQL)
+                .setParameter(1, hash)
+                .setParameter(2, TextCodec.encode(text))
+                .executeUpdate();
+        return acquireMatching(hash, text, true);
+    }
+
+    /**
+     * Find content by hash, compare its text and increment reference count.
+     * @param hash text hash;
+     * @param text full text;
+     * @param lock read with pessimistic lock;
+     * @return content or null if there is no content with such hash and text;
+     */
+    private Content acquireMatching(String hash, String text, boolean lock) {
+        TypedQuery<Content> tr = em.createNamedQuery("Content.findByHash", Content.class);
+        tr.setParameter("hash", hash);
+        if (lock) {
+            tr.setLockMode(LockModeType.PESSIMISTIC_WRITE);
+        }
+        List<Content> found = tr.getResultList();
+        if (found.isEmpty() || !text.equals(found.get(0).getNoteText())) {
+            return null;
+        }
+        Content content = found.get(0);
+        em.createNamedQuery("Content.acquire").setParameter("id", content.getId()).executeUpdate();
+        return content;
+    }
+
+    @Override
+    public void release(Content content) {
+        em.flush();
+        em.createNamedQuery("Content.release").setParameter("id", content.getId()).executeUpdate();
+        em.createNamedQuery("Content.removeUnused").setParameter("id", content.getId()).executeUpdate();
+    }
+
+    @Override
+    public List<Integer> releaseByNote(Note note) {
+        TypedQuery<Object[]> tr = em.createNamedQuery("Version.countContentsByNote", Object[].class);
+        tr.setParameter("note", note);
+        return releaseCounted(tr.getResultList());
+    }
+
+    @Override
+    public List<Integer> releaseByDirectory(Directory directory) {
+        TypedQuery<Object[]> tr = em.createNamedQuery("Version.countContentsByDirectory", Object[].class);
+        tr.setParameter("directory", directory);
+        return releaseCounted(tr.getResultList());
+    }
+
+    /**
+     * Decrement reference counts of contents by count of their versions.
+     * @param counts rows of content id and count of versions;
+     * @return ids of released contents;
+     */
+    private List<Integer> releaseCounted(List<Object[]> counts) {
+        List<Integer> ids = new ArrayList<>(counts.size());
+        for (Object[] row: counts) {
+            em.createNamedQuery("Content.releaseCount")
+                    .setParameter("id", row[0])
+                    .setParameter("count", ((Number) row[1]).intValue())
+                    .executeUpdate();
+            ids.add((Integer) row[0]);
+        }
+        return ids;
+    }
+
+    @Override
+    public void removeUnused(List<Integer> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        em.flush();
+        em.createNamedQuery("Content.removeUnusedIn").setParameter("ids", ids).executeUpdate();
+    }
+
+    @Override
+    public int removeOrphans() {
+        em.flush();
+        return em.createNamedQuery("Content.removeOrphans").executeUpdate();
+    }
+    
+}
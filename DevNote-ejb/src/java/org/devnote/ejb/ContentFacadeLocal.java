@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.ejb;
+
+import java.util.List;
+import javax.ejb.Local;
+import org.devnote.entries.Content;
+import org.devnote.entries.Directory;
+import org.devnote.entries.Note;
+
+/**
+ * Content local interface.
+ * @author Stanislav Nepochatov
+ */
+@Local
+public interface ContentFacadeLocal {
+    
+    // Standard methods
+
+    void create(Content content);
+
+    void edit(Content content);
+
+    void remove(Content content);
+
+    Content find(Object id);
+
+    List<Content> findAll();
+
+    void visitAll(EntityVisitor<Content> visitor);
+
+    List<Content> findRange(int[] range);
+
+    int count();
+
+    int countApproximate();
+
+    List<Content> findPageAfter(Object lastId, int pageSize);
+
+    List<Content> findPageBefore(Object firstId, int pageSize);
+
+    List<Content> findPageAfter(String sortAttribute, Object lastKey, Object lastId, int pageSize);
+
+    List<Content> findPageBefore(String sortAttribute, Object firstKey, Object firstId, int pageSize);
+    
+    // My methods
+    
+    /**
+     * Get existing content with the same text and increment its reference count. 
+     * Text of content with given hash is compared with text, 
+     * so hash collision never shares other text.
+     * @param hash text hash;
+     * @param text full text;
+     * @return content or null if there is no content with such hash and text;
+     */
+    Content acquireExisting(String hash, String text);
+    
+    /**
+     * Get content for text: existing one (with incremented reference count) 
+     * or newly created. Concurrent creation of the same content is safe: 
+     * content inserted by other transaction is reused.
+     * @param hash text hash;
+     * @param text full text;
+     * @return content entity or null if content with such hash has other text;
+     */
+    Content acquire(String hash, String text);
+    
+    /**
+     * Decrement reference count of content and remove it if it's unused.
+     * @param content content to release;
+     */
+    void release(Content content);
+    
+    /**
+     * Decrement reference counts of contents used by versions of note 
+     * which is going to be removed.
+     * @param note note to remove;
+     * @return ids of released contents for {@link #removeUnused(java.util.List)};
+     */
+    List<Integer> releaseByNote(Note note);
+    
+    /**
+     * Decrement reference counts of contents used by versions of notes 
+     * of directory which is going to be removed.
+     * @param directory directory to remove;
+     * @return ids of released contents for {@link #removeUnused(java.util.List)};
+     */
+    List<Integer> releaseByDirectory(Directory directory);
+    
+    /**
+     * Remove released contents which aren't used anymore. 
+     * Should be called after removal of their versions.
+     * @param ids ids of released contents;
+     */
+    void removeUnused(List<Integer> ids);
+    
+    /**
+     * Remove all content which isn't referenced by any version 
+     * (maintenance of contents leaked by external changes).
+     * @return count of removed rows;
+     */
+    int removeOrphans();
+    
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.ejb;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+
+/**
+ * Application wide cache of entity counts.<br/>
+ * <br/>
+ * Exact counters are loaded with single COUNT query and then updated by 
+ * facades after commit of every create/remove call. Approximate counters are taken from 
+ * database table statistics. Every value is trusted only for 
+ * {@link #MAX_AGE} milliseconds after loading, so counter will be 
+ * synchronized with database even if some transaction was rolled back 
+ * or table was changed from other node.
+ * @author Stanislav Nepochatov
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class CountCache {
+    
+    /**
+     * Max age of cached count in milliseconds (system property devnote.count.maxAge).
+     */
+    public static final long MAX_AGE = Long.getLong("devnote.count.maxAge", 60000L);
+    
+    /**
+     * Exact counters by entity type.
+     */
+    private final ConcurrentMap<Class<?>, Entry> exactCounts = new ConcurrentHashMap<>();
+    
+    /**
+     * Approximate counters by entity type.
+     */
+    private final ConcurrentMap<Class<?>, Entry> approximateCounts = new ConcurrentHashMap<>();
+    
+    /**
+     * Get exact count of entities.
+     * @param type entity type;
+     * @return count or null if count is unknown or stale;
+     */
+    public Long getExact(Class<?> type) {
+        return getFresh(exactCounts, type);
+    }
+    
+    /**
+     * Set exact count of entities after database query.
+     * @param type entity type;
+     * @param count count to set;
+     */
+    public void setExact(Class<?> type, long count) {
+        exactCounts.put(type, new Entry(count));
+    }
+    
+    /**
+     * Change exact count of entities after create or remove.
+     * @param type entity type;
+     * @param delta count difference;
+     */
+    public void add(Class<?> type, long delta) {
+        Entry current = exactCounts.get(type);
+        if (current != null) {
+            current.value.addAndGet(delta);
+        }
+    }
+    
+    /**
+     * Get approximate count of entities.
+     * @param type entity type;
+     * @return count or null if count is unknown or stale;
+     */
+    public Long getApproximate(Class<?> type) {
+        return getFresh(approximateCounts, type);
+    }
+    
+    /**
+     * Set approximate count of entities after reading table statistics.
+     * @param type entity type;
+     * @param count count to set;
+     */
+    public void setApproximate(Class<?> type, long count) {
+        approximateCounts.put(type, new Entry(count));
+    }
+    
+    /**
+     * Drop all exact counters except given type. Used after remove, 
+     * because removal may cascade to other entities.
+     * @param type entity type to keep;
+     */
+    public void invalidateOthers(Class<?> type) {
+        for (Class<?> key: exactCounts.keySet()) {
+            if (!key.equals(type)) {
+                exactCounts.remove(key);
+            }
+        }
+    }
+    
+    /**
+     * Get value from map if it isn't older than {@link #MAX_AGE}.
+     * @param counts map with counters;
+     * @param type entity type;
+     * @return count or null;
+     */
+    private Long getFresh(ConcurrentMap<Class<?>, Entry> counts, Class<?> type) {
+        Entry current = counts.get(type);
+        if (current == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - current.loadTime > MAX_AGE) {
+            counts.remove(type, current);
+            return null;
+        }
+        return current.value.get();
+    }
+    
+    /**
+     * Single cached counter.
+     */
+    private static class Entry {
+        
+        /**
+         * Current count.
+         */
+        private final AtomicLong value;
+        
+        /**
+         * Time of loading from database.
+         */
+        private final long loadTime;
+        
+        /**
+         * Default constructor.
+         * @param value loaded count;
+         */
+        Entry(long value) {
+            this.value = new AtomicLong(value);
+            this.loadTime = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.ejb;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import org.devnote.service.TextDiff;
+
+/**
+ * Application wide cache of computed version diffs.<br/>
+ * <br/>
+ * Diffs are keyed by ids of both versions and granularity, so cached 
+ * diff never becomes stale: versions aren't changed after creation 
+ * and hash collisions can't mix texts of different versions. 
+ * Cache is bounded by total length of cached diff texts and evicted in 
+ * least recently used order. Diffs larger than quarter of the bound 
+ * aren't cached at all.
+ * @author Stanislav Nepochatov
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class DiffCache {
+    
+    /**
+     * Max total length of cached diffs in chars (system property devnote.diffCache.maxChars).
+     */
+    public static final long MAX_CHARS = Long.getLong("devnote.diffCache.maxChars", 16777216L);
+    
+    /**
+     * Weight of single diff range besides its text.
+     */
+    private static final int EDIT_WEIGHT = 16;
+    
+    /**
+     * Cached diffs in access order.
+     */
+    private final Map<String, List<TextDiff.Edit>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    
+    /**
+     * Total weight of cached diffs.
+     */
+    private long weight = 0;
+    
+    /**
+     * Build cache key.
+     * @param idA id of base version;
+     * @param idB id of target version;
+     * @param granularity diff granularity;
+     * @return key string;
+     */
+    public static String key(Integer idA, Integer idB, TextDiff.Granularity granularity) {
+        return idA + ":" + idB + ':' + granularity.name();
+    }
+    
+    /**
+     * Get cached diff.
+     * @param key diff key;
+     * @return unmodifiable diff or null;
+     */
+    public List<TextDiff.Edit> get(String key) {
+        synchronized (entries) {
+            return entries.get(key);
+        }
+    }
+    
+    /**
+     * Put computed diff.
+     * @param key diff key;
+     * @param diff computed diff;
+     * @return unmodifiable diff;
+     */
+    public List<TextDiff.Edit> put(String key, List<TextDiff.Edit> diff) {
+        List<TextDiff.Edit> cached = Collections.unmodifiableList(diff);
+        long diffWeight = weigh(cached);
+        if (diffWeight > MAX_CHARS / 4) {
+            return cached;
+        }
+        synchronized (entries) {
+            List<TextDiff.Edit> previous = entries.put(key, cached);
+            if (previous != null) {
+                weight -= weigh(previous);
+            }
+            weight += diffWeight;
+            Iterator<List<TextDiff.Edit>> iter = entries.values().iterator();
+            while (weight > MAX_CHARS && iter.hasNext()) {
+                weight -= weigh(iter.next());
+                iter.remove();
+            }
+        }
+        return cached;
+    }
+    
+    /**
+     * Get weight of diff.
+     */
+    private static long weigh(List<TextDiff.Edit> diff) {
+        long result = 0;
+        for (TextDiff.Edit edit: diff) {
+            result += edit.getText().length() + EDIT_WEIGHT;
+        }
+        return result;
+    }
+}
@@ -17,12 +17,20 @@
 
 package org.devnote.ejb;
 
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import javax.ejb.EJB;
 import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 import org.devnote.entries.Directory;
+import org.devnote.entries.DirectoryClosure;
+import org.devnote.entries.Note;
 import org.devnote.entries.User;
 
 /**
@@ -37,6 +45,30 @@ public class DirectoryFacade extends AbstractFacade<Directory> implements Direct
      */
     @PersistenceContext(unitName = "DevNote-ejbPU")
     private EntityManager em;
+    
+    /**
+     * Shared directory tree cache.
+     */
+    @EJB
+    private DirectoryTreeCache treeCache;
+    
+    /**
+     * Shared content facade.
+     */
+    @EJB
+    private ContentFacadeLocal contentBean;
+    
+    /**
+     * Full text index.
+     */
+    @EJB
+    private SearchIndex searchIndex;
+    
+    /**
+     * Trigram index of headers.
+     */
+    @EJB
+    private HeaderIndex headerIndex;
 
     @Override
     protected EntityManager getEntityManager() {
@@ -57,5 +89,264 @@ public class DirectoryFacade extends AbstractFacade<Directory> implements Direct
         tr.setParameter("userId", userId);
         return tr.getResultList();
     }
+
+    /**
+     * Visit directories of user through cursor of own entity manager 
+     * outside of transaction.
+     * @param userId owner of directories;
+     * @param visitor callback for every directory;
+     */
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void visitAllSortByPath(User userId, EntityVisitor<Directory> visitor) {
+        EntityManager reader = createReader();
+        try {
+            Query query = reader.createNamedQuery("Directory.findAllSortPath");
+            query.setParameter("userId", userId);
+            visitQuery(query, reader, visitor);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Create directory, add it to closure table and drop cached levels which contain it after commit.
+     * @param directory directory to create;
+     */
+    @Override
+    public void create(Directory directory) {
+        super.create(directory);
+        em.flush();
+        String parentPath = directory.getParentFullPath();
+        Directory parent = parentPath.isEmpty() ? null : findByPath(directory.getUserId(), parentPath);
+        em.persist(new DirectoryClosure(directory.getId(), directory.getId(), 0));
+        if (parent != null) {
+            em.createNativeQuery("INSERT INTO DirectoryClosure (ancestor_id, descendant_id, depth) "
+                    + "SELECT ancestor_id, ?1, depth + 1 FROM DirectoryClosure WHERE descendant_id = ?2")
+                    .setParameter(1, directory.getId())
+                    .setParameter(2, parent.getId())
+                    .executeUpdate();
+        }
+        final Integer userId = directory.getUserId().getId();
+        final String[] changedPaths = parentPath.isEmpty() ? new String[] {parentPath} 
+                : new String[] {parentPath, new Directory(null, parentPath).getParentFullPath()};
+        afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                treeCache.invalidate(userId, changedPaths);
+            }
+        });
+    }
+
+    /**
+     * Edit directory (e.g. rename) and drop cached tree of its user after commit. 
+     * If path changed, paths of all descendants get the new prefix in the same 
+     * transaction. If directory moved to other parent, whole its subtree 
+     * relinked in closure table.
+     * @param directory directory to edit;
+     */
+    @Override
+    public void edit(Directory directory) {
+        Directory stored = em.find(Directory.class, directory.getId());
+        String oldPath = stored != null ? stored.getPath() : null;
+        String oldParentPath = stored != null ? stored.getParentFullPath() : null;
+        super.edit(directory);
+        if (oldPath != null && !oldPath.equals(directory.getPath())) {
+            renameDescendants(directory, oldPath);
+        }
+        String newParentPath = directory.getParentFullPath();
+        if (oldParentPath != null && !oldParentPath.equals(newParentPath)) {
+            Directory newParent = newParentPath.isEmpty() ? null : findByPath(directory.getUserId(), newParentPath);
+            moveSubtree(directory.getId(), newParent != null ? newParent.getId() : null);
+        }
+        invalidateTreeAfterCommit(directory.getUserId().getId());
+    }
+
+    /**
+     * Replace path prefix of all descendants of renamed or moved directory. 
+     * Descendants are changed as entities, so shared caches of all nodes see new paths.
+     * @param directory edited directory with new path;
+     * @param oldPath path of directory before edit;
+     */
+    private void renameDescendants(Directory directory, String oldPath) {
+        for (Directory descendant: findDescendants(directory)) {
+            descendant.setPath(directory.getPath() + descendant.getPath().substring(oldPath.length()));
+        }
+    }
+
+    /**
+     * Remove directory with release of shared contents of its notes, 
+     * drop its notes from indexes and cached tree of its user after commit.
+     * @param directory directory to remove;
+     */
+    @Override
+    public void remove(Directory directory) {
+        final List<Integer> noteIds = em.createNamedQuery("Note.findIdsByDirectory", Integer.class)
+                .setParameter("directory", directory)
+                .getResultList();
+        List<Integer> released = contentBean.releaseByDirectory(directory);
+        em.createNamedQuery("DirectoryClosure.removeDirectory").setParameter("id", directory.getId()).executeUpdate();
+        super.remove(directory);
+        contentBean.removeUnused(released);
+        final User owner = directory.getUserId();
+        afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                for (Integer noteId: noteIds) {
+                    Note note = new Note(noteId);
+                    note.setUserId(owner);
+                    searchIndex.remove(note);
+                    headerIndex.remove(note);
+                }
+            }
+        });
+        invalidateTreeAfterCommit(owner.getId());
+    }
+
+    /**
+     * Drop cached tree of user after commit of current transaction, 
+     * so other sessions can't cache old tree again before commit.
+     * @param userId id of user;
+     */
+    private void invalidateTreeAfterCommit(final Integer userId) {
+        afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                treeCache.invalidateAll(userId);
+            }
+        });
+    }
+
+    @Override
+    public List<Directory> findDescendants(Directory directory) {
+        TypedQuery<Directory> tr = em.createNamedQuery("DirectoryClosure.findDescendants", Directory.class);
+        tr.setParameter("id", directory.getId());
+        return tr.getResultList();
+    }
+
+    @Override
+    public List<Directory> findAncestors(Directory directory) {
+        TypedQuery<Directory> tr = em.createNamedQuery("DirectoryClosure.findAncestors", Directory.class);
+        tr.setParameter("id", directory.getId());
+        return tr.getResultList();
+    }
+
+    @Override
+    public int countSubtreeNotes(Directory directory) {
+        TypedQuery<Long> tr = em.createNamedQuery("DirectoryClosure.countSubtreeNotes", Long.class);
+        tr.setParameter("id", directory.getId());
+        return tr.getSingleResult().intValue();
+    }
+
+    /**
+     * Find directory of user by full path.
+     * @param userId owner of directory;
+     * @param path full path of directory;
+     * @return directory or null;
+     */
+    private Directory findByPath(User userId, String path) {
+        TypedQuery<Directory> tr = em.createNamedQuery("Directory.findByUserPath", Directory.class);
+        tr.setParameter("userId", userId);
+        tr.setParameter("path", path);
+        List<Directory> found = tr.getResultList();
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * Relink subtree in closure table: unlink it from old ancestors 
+     * and link to ancestors of new parent.
+     * @param directoryId id of subtree root;
+     * @param newParentId id of new parent or null for top level;
+     */
+    private void moveSubtree(Integer directoryId, Integer newParentId) {
+        em.createNativeQuery("DELETE c FROM DirectoryClosure c "
+                + "JOIN DirectoryClosure s ON s.descendant_id = c.descendant_id "
+                + "LEFT JOIN DirectoryClosure i ON i.ancestor_id = ?1 AND i.descendant_id = c.ancestor_id "
+                + "WHERE s.ancestor_id = ?1 AND i.ancestor_id IS NULL")
+                .setParameter(1, directoryId)
+                .executeUpdate();
+        if (newParentId != null) {
+            em.createNativeQuery("INSERT INTO DirectoryClosure (ancestor_id, descendant_id, depth) "
+                    + "SELECT p.ancestor_id, s.descendant_id, p.depth + s.depth + 1 FROM DirectoryClosure p "
+                    + "JOIN DirectoryClosure s ON p.descendant_id = ?1 AND s.ancestor_id = ?2")
+                    .setParameter(1, newParentId)
+                    .setParameter(2, directoryId)
+                    .executeUpdate();
+        }
+    }
+
+    @Override
+    public List<Directory> findChildren(User userId, String parentPath) {
+        return getLevel(userId, parentPath).getChildren();
+    }
+
+    @Override
+    public Set<String> findNonEmptyChildPaths(User userId, String parentPath) {
+        return getLevel(userId, parentPath).getNonEmptyPaths();
+    }
+
+    /**
+     * Get level of directory tree from cache or load it from database.
+     * @param userId owner of directories;
+     * @param parentPath path of parent directory or empty string for top level;
+     * @return tree level;
+     */
+    private DirectoryTreeCache.Level getLevel(User userId, String parentPath) {
+        String key = parentPath != null ? parentPath : "";
+        DirectoryTreeCache.Level level = treeCache.get(userId.getId(), key);
+        if (level == null) {
+            long generation = treeCache.getGeneration();
+            List<Directory> children = queryChildren(userId, key);
+            Set<String> nonEmpty = children.isEmpty() ? new HashSet<String>() : queryNonEmptyChildPaths(userId, key);
+            level = treeCache.put(userId.getId(), key, children, nonEmpty, generation);
+        }
+        return level;
+    }
+
+    /**
+     * Query direct children of directory.
+     * @param userId owner of directories;
+     * @param parentPath path of parent directory or empty string for top level;
+     * @return list of child directories;
+     */
+    private List<Directory> queryChildren(User userId, String parentPath) {
+        String prefix = childPrefix(parentPath);
+        TypedQuery<Directory> tr = em.createNamedQuery("Directory.findByPathLike", Directory.class);
+        tr.setParameter("userId", userId);
+        tr.setParameter("pattern", prefix + "%");
+        tr.setParameter("deepPattern", prefix + "%.%");
+        return tr.getResultList();
+    }
+
+    /**
+     * Query paths of direct children of directory which have own subdirectories.
+     * @param userId owner of directories;
+     * @param parentPath path of parent directory or empty string for top level;
+     * @return set of child paths;
+     */
+    private Set<String> queryNonEmptyChildPaths(User userId, String parentPath) {
+        String prefix = childPrefix(parentPath);
+        TypedQuery<String> tr = em.createNamedQuery("Directory.findPathsLike", String.class);
+        tr.setParameter("userId", userId);
+        tr.setParameter("pattern", prefix + "%.%");
+        tr.setParameter("deepPattern", prefix + "%.%.%");
+        Set<String> result = new HashSet<>();
+        for (String grandchildPath: tr.getResultList()) {
+            result.add(grandchildPath.substring(0, grandchildPath.lastIndexOf('.')));
+        }
+        return result;
+    }
+
+    /**
+     * Get escaped LIKE prefix of children paths.
+     * @param parentPath path of parent directory or empty string for root;
+     * @return prefix for LIKE pattern;
+     */
+    private static String childPrefix(String parentPath) {
+        if (parentPath == null || parentPath.isEmpty()) {
+            return "";
+        }
+        return parentPath.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + ".";
+    }
     
 }
@@ -18,6 +18,7 @@
 package org.devnote.ejb;
 
 import java.util.List;
+import java.util.Set;
 import javax.ejb.Local;
 import org.devnote.entries.Directory;
 import org.devnote.entries.User;
@@ -41,9 +42,21 @@ public interface DirectoryFacadeLocal {
 
     List<Directory> findAll();
 
+    void visitAll(EntityVisitor<Directory> visitor);
+
     List<Directory> findRange(int[] range);
 
     int count();
+
+    int countApproximate();
+
+    List<Directory> findPageAfter(Object lastId, int pageSize);
+
+    List<Directory> findPageBefore(Object firstId, int pageSize);
+
+    List<Directory> findPageAfter(String sortAttribute, Object lastKey, Object lastId, int pageSize);
+
+    List<Directory> findPageBefore(String sortAttribute, Object firstKey, Object firstId, int pageSize);
     
     // My methods
     
@@ -53,4 +66,49 @@ public interface DirectoryFacadeLocal {
      */
     List<Directory> findAllSortByPath(User userId);
     
+    /**
+     * Visit directories of user sorted by path through the database cursor.
+     * @param userId owner of directories;
+     * @param visitor callback for every directory;
+     */
+    void visitAllSortByPath(User userId, EntityVisitor<Directory> visitor);
+    
+    /**
+     * Find all subdirectories of directory (any depth) sorted by path.
+     * @param directory root of subtree;
+     * @return list of descendant directories;
+     */
+    List<Directory> findDescendants(Directory directory);
+    
+    /**
+     * Find all parents of directory from top level to direct parent.
+     * @param directory directory to search;
+     * @return list of ancestor directories;
+     */
+    List<Directory> findAncestors(Directory directory);
+    
+    /**
+     * Count notes in directory and all its subdirectories.
+     * @param directory root of subtree;
+     * @return count of notes;
+     */
+    int countSubtreeNotes(Directory directory);
+    
+    /**
+     * Find direct children of directory sorted by path. 
+     * Result is shared by all sessions of user, so it's read only.
+     * @param userId owner of directories;
+     * @param parentPath path of parent directory or empty string for top level;
+     * @return unmodifiable list of child directories;
+     */
+    List<Directory> findChildren(User userId, String parentPath);
+    
+    /**
+     * Find paths of direct children of directory which have own subdirectories.
+     * @param userId owner of directories;
+     * @param parentPath path of parent directory or empty string for top level;
+     * @return unmodifiable set of child paths;
+     */
+    Set<String> findNonEmptyChildPaths(User userId, String parentPath);
+    
 }
@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.ejb;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import org.devnote.entries.Directory;
+
+/**
+ * Application wide cache of user directory trees.<br/>
+ * <br/>
+ * Tree of every user cached level by level: every level is an immutable 
+ * list of direct children of some directory, loaded on first request 
+ * and shared by all sessions of the user. Levels are dropped by 
+ * {@link DirectoryFacade} after commit of transaction which creates, 
+ * renames or removes directories. Other application nodes don't see 
+ * these invalidations, so every level also expires after MAX_AGE_MILLIS. 
+ * Levels loaded while some invalidation happened aren't cached at all.<br/>
+ * <br/>
+ * Cache is bounded by total count of cached directories, 
+ * least recently used user trees are evicted first, then levels 
+ * of the current user if its tree alone is too big.<br/>
+ * <br/>
+ * <b>WARNING!</b> Cached directories are shared between sessions, 
+ * so they should be used for read only.
+ * @author Stanislav Nepochatov
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class DirectoryTreeCache {
+    
+    /**
+     * Max count of cached directories (system property devnote.dirCache.maxDirectories).
+     */
+    public static final int MAX_DIRECTORIES = Integer.getInteger("devnote.dirCache.maxDirectories", 100000);
+    
+    /**
+     * Max age of cached level in milliseconds (system property devnote.dirCache.maxAgeMillis), 
+     * limits staleness of levels changed on other application nodes.
+     */
+    public static final long MAX_AGE_MILLIS = Long.getLong("devnote.dirCache.maxAgeMillis", 30000L);
+    
+    /**
+     * User trees by user id in access order.
+     */
+    private final LinkedHashMap<Integer, UserTree> trees = new LinkedHashMap<>(16, 0.75f, true);
+    
+    /**
+     * Count of cached directories in all trees.
+     */
+    private int size = 0;
+    
+    /**
+     * Count of invalidations, used to detect levels loaded concurrently with changes.
+     */
+    private long generation = 0;
+    
+    /**
+     * Get current generation of cache, should be taken before loading of level.
+     * @return count of invalidations;
+     */
+    public long getGeneration() {
+        synchronized (trees) {
+            return generation;
+        }
+    }
+    
+    /**
+     * Get cached level of user tree.
+     * @param userId id of user;
+     * @param parentPath path of parent directory or empty string for top level;
+     * @return cached level or null;
+     */
+    public Level get(Integer userId, String parentPath) {
+        UserTree tree;
+        synchronized (trees) {
+            tree = trees.get(userId);
+        }
+        Level level = tree != null ? tree.levels.get(parentPath) : null;
+        if (level != null && System.currentTimeMillis() - level.loadTime > MAX_AGE_MILLIS) {
+            invalidate(userId, parentPath);
+            return null;
+        }
+        return level;
+    }
+    
+    /**
+     * Put loaded level of user tree.
+     * @param userId id of user;
+     * @param parentPath path of parent directory or empty string for top level;
+     * @param children children of directory sorted by path;
+     * @param nonEmptyPaths paths of children which have subdirectories;
+     * @param loadGeneration generation of cache before loading of level;
+     * @return level, cached only if there were no invalidations since loading;
+     */
+    public Level put(Integer userId, String parentPath, List<Directory> children, Set<String> nonEmptyPaths, long loadGeneration) {
+        Level level = new Level(children, nonEmptyPaths);
+        synchronized (trees) {
+            if (loadGeneration != generation) {
+                return level;
+            }
+            UserTree tree = trees.get(userId);
+            if (tree == null) {
+                tree = new UserTree();
+                trees.put(userId, tree);
+            }
+            Level previous = tree.levels.put(parentPath, level);
+            int delta = level.size() - (previous != null ? previous.size() : 0);
+            tree.size += delta;
+            size += delta;
+            evict(userId, parentPath);
+        }
+        return level;
+    }
+    
+    /**
+     * Drop cached children of directories (used after directory creation).
+     * @param userId id of user;
+     * @param parentPaths paths of changed parent directories;
+     */
+    public void invalidate(Integer userId, String... parentPaths) {
+        synchronized (trees) {
+            generation++;
+            UserTree tree = trees.get(userId);
+            if (tree != null) {
+                for (String parentPath: parentPaths) {
+                    Level removed = tree.levels.remove(parentPath);
+                    if (removed != null) {
+                        tree.size -= removed.size();
+                        size -= removed.size();
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Drop whole cached tree of user (used after rename or removal).
+     * @param userId id of user;
+     */
+    public void invalidateAll(Integer userId) {
+        synchronized (trees) {
+            generation++;
+            UserTree removed = trees.remove(userId);
+            if (removed != null) {
+                size -= removed.size;
+            }
+        }
+    }
+    
+    /**
+     * Evict least recently used trees while cache is too big, 
+     * then other levels of current user and at last the new level itself.
+     * @param keepUserId id of user which tree is evicted last;
+     * @param keepPath path of the new level;
+     */
+    private void evict(Integer keepUserId, String keepPath) {
+        Iterator<Map.Entry<Integer, UserTree>> iterator = trees.entrySet().iterator();
+        while (size > MAX_DIRECTORIES && iterator.hasNext()) {
+            Map.Entry<Integer, UserTree> eldest = iterator.next();
+            if (!eldest.getKey().equals(keepUserId)) {
+                size -= eldest.getValue().size;
+                iterator.remove();
+            }
+        }
+        UserTree tree = trees.get(keepUserId);
+        Iterator<Map.Entry<String, Level>> levels = tree.levels.entrySet().iterator();
+        while (size > MAX_DIRECTORIES && levels.hasNext()) {
+            Map.Entry<String, Level> level = levels.next();
+            if (!level.getKey().equals(keepPath)) {
+                tree.size -= level.getValue().size();
+                size -= level.getValue().size();
+                levels.remove();
+            }
+        }
+        if (size > MAX_DIRECTORIES) {
+            trees.remove(keepUserId);
+            size -= tree.size;
+        }
+    }
+    
+    /**
+     * Cached levels of single user.
+     */
+    private static class UserTree {
+        
+        /**
+         * Levels by parent path.
+         */
+        private final ConcurrentMap<String, Level> levels = new ConcurrentHashMap<>();
+        
+        /**
+         * Count of cached directories of user.
+         */
+        private int size = 0;
+    }
+    
+    /**
+     * Immutable level of directory tree: direct children of single directory.
+     */
+    public static class Level {
+        
+        /**
+         * Children sorted by path.
+         */
+        private final List<Directory> children;
+        
+        /**
+         * Paths of children which have subdirectories.
+         */
+        private final Set<String> nonEmptyPaths;
+        
+        /**
+         * Time of loading in milliseconds.
+         */
+        private final long loadTime = System.currentTimeMillis();
+        
+        /**
+         * Parametrick constructor.
+         * @param children children sorted by path;
+         * @param nonEmptyPaths paths of children which have subdirectories;
+         */
+        Level(List<Directory> children, Set<String> nonEmptyPaths) {
+            this.children = Collections.unmodifiableList(children);
+            this.nonEmptyPaths = Collections.unmodifiableSet(nonEmptyPaths);
+        }
+        
+        /**
+         * Get children of directory.
+         * @return unmodifiable list sorted by path;
+         */
+        public List<Directory> getChildren() {
+            return children;
+        }
+        
+        /**
+         * Get paths of children which have subdirectories.
+         * @return unmodifiable set of paths;
+         */
+        public Set<String> getNonEmptyPaths() {
+            return nonEmptyPaths;
+        }
+        
+        /**
+         * Get count of directories in level.
+         * @return count of children;
+         */
+        int size() {
+            return children.size();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.ejb;
+
+/**
+ * Callback for streaming entity access. Facade calls it once per entity 
+ * while reading the database cursor, so whole result never stays in memory.
+ * @param <T> entity type;
+ * @author Stanislav Nepochatov
+ */
+public interface EntityVisitor<T> {
+    
+    /**
+     * Process single entity. Entity is detached after some time, 
+     * so don't rely on lazy relations outside of this method.
+     * @param entity current entity from cursor;
+     */
+    void visit(T entity);
+    
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.devnote.ejb;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+import javax.ejb.EJB;
+import javax.ejb.EJBException;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import org.devnote.entries.Directory;
+import org.devnote.entries.Note;
+import org.devnote.entries.User;
+import org.devnote.entries.Version;
+import org.devnote.service.NoteArchiveWriter;
+
+/**
+ * Export facade. Streams user notes to archive with 
+ * {@link NoteArchiveWriter} while directories and versions are 
+ * readed through the database cursor. Export runs outside of transaction: 
+ * large export may take longer than transaction timeout.
+ * @author Stanislav Nepochatov
+ */
+@Stateless
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class ExportFacade implements ExportFacadeLocal {
+    
+    /**
+     * Directories ejb facade.
+     */
+    @EJB
+    private DirectoryFacadeLocal directoryBean;
+    
+    /**
+     * Versions ejb facade.
+     */
+    @EJB
+    private VersionFacadeLocal versionBean;
+
+    @Override
+    public void export(User user, Date since, OutputStream output) throws IOException {
+        final NoteArchiveWriter writer = new NoteArchiveWriter(output);
+        try {
+            directoryBean.visitAllSortByPath(user, new EntityVisitor<Directory>() {
+                @Override
+                public void visit(Directory directory) {
+                    try {
+                        writer.addDirectory(directory.getPath());
+                    } catch (IOException ex) {
+                        throw new EJBException(ex);
+                    }
+                }
+            });
+            versionBean.visitForExport(user, since, new EntityVisitor<Version>() {
+                @Override
+                public void visit(Version version) {
+                    Note note = version.getNoteId();
+                    try {
+                        writer.addVersion(note.getId(), note.getHeader(), note.getDirId().getPath(), 
+                                version.getId(), version.getSaveDate(), version.getHash(), version.getNoteText());
+                    } catch (IOException ex) {
+                        throw new EJBException(ex);
+                    }
+                }
+            });
+        } catch (EJBException ex) {
+            for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+            }
+            throw ex;
+        }
+        writer.finish();
+    }
+    
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.devnote.ejb;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+import javax.ejb.Local;
+import org.devnote.entries.User;
+
+/**
+ * Export local interface.
+ * @author Stanislav Nepochatov
+ */
+@Local
+public interface ExportFacadeLocal {
+    
+    /**
+     * Write directories, notes and versions of user to ZIP archive. 
+     * Versions are read through the database cursor, so memory usage 
+     * doesn't depend on account size.
+     * @param user owner of notes;
+     * @param since export only versions saved after this date or null for all versions;
+     * @param output stream for archive (HTTP response or file), it isn't closed;
+     * @throws IOException on write error;
+     */
+    void export(User user, Date since, OutputStream output) throws IOException;
+    
+}
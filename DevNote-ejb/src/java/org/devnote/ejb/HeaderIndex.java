@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.ejb;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import org.devnote.entries.Note;
+import org.devnote.service.TrigramIndex;
+
+/**
+ * Application wide trigram index of note headers.<br/>
+ * <br/>
+ * Index is loaded in background on startup with (id, user, header) 
+ * projection of notes and maintained by {@link NoteFacade} after commit 
+ * of every note create, edit and remove. Until loading is finished 
+ * {@link #isReady()} returns false and callers should use database search.<br/>
+ * <br/>
+ * Index isn't coordinated between application nodes, so by default 
+ * it only finds candidates and never hides notes from database queries. 
+ * See {@link #isComplete(java.lang.Integer, java.lang.String)}.
+ * @author Stanislav Nepochatov
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class HeaderIndex {
+    
+    /**
+     * Min similarity of fuzzy header search (system property devnote.headerIndex.minSimilarity).
+     */
+    public static final float MIN_SIMILARITY = Float.parseFloat(System.getProperty("devnote.headerIndex.minSimilarity", "0.3"));
+    
+    /**
+     * Index sees every note change, i.e. application runs on single node 
+     * (system property devnote.headerIndex.authoritative).
+     */
+    public static final boolean AUTHORITATIVE = Boolean.parseBoolean(System.getProperty("devnote.headerIndex.authoritative", "false"));
+    
+    /**
+     * Count of notes in single loading query.
+     */
+    private static final int LOAD_PAGE_SIZE = 5000;
+    
+    /**
+     * Entity manager.
+     */
+    @PersistenceContext(unitName = "DevNote-ejbPU")
+    private EntityManager em;
+    
+    /**
+     * Executor of loading task.
+     */
+    @Resource
+    private ManagedExecutorService executor;
+    
+    /**
+     * Trigram index.
+     */
+    private final TrigramIndex index = new TrigramIndex();
+    
+    /**
+     * Notes changed during loading, their loaded headers may be stale.
+     */
+    private final ConcurrentMap<Integer, Boolean> changedDuringLoad = new ConcurrentHashMap<>();
+    
+    /**
+     * Lock of loaded header check and put.
+     */
+    private final Object loadLock = new Object();
+    
+    /**
+     * Loading finished flag.
+     */
+    private volatile boolean ready = false;
+    
+    /**
+     * Start index loading.
+     */
+    @PostConstruct
+    public void init() {
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        });
+    }
+    
+    /**
+     * Check if index is loaded.
+     * @return true if index covers all notes;
+     */
+    public boolean isReady() {
+        return ready;
+    }
+    
+    /**
+     * Check if substring search of index gives exactly the same notes as 
+     * database LIKE, so index can restrict database query. It's true only 
+     * for loaded {@link #AUTHORITATIVE} index, ASCII fragment and user 
+     * without non ASCII headers (database collation may match other 
+     * chars differently, for example 'e' and 'é').
+     * @param userId id of user;
+     * @param fragment header fragment;
+     * @return true if index is complete for this search;
+     */
+    public boolean isComplete(Integer userId, String fragment) {
+        return AUTHORITATIVE && ready && TrigramIndex.isAscii(fragment) && index.isAscii(userId);
+    }
+    
+    /**
+     * Index created or changed note.
+     * @param note note with header;
+     */
+    public void put(Note note) {
+        if (!ready) {
+            synchronized (loadLock) {
+                changedDuringLoad.put(note.getId(), Boolean.TRUE);
+                index.put(note.getUserId().getId(), note.getId(), note.getHeader());
+            }
+        } else {
+            index.put(note.getUserId().getId(), note.getId(), note.getHeader());
+        }
+    }
+    
+    /**
+     * Remove note from index.
+     * @param note removed note;
+     */
+    public void remove(Note note) {
+        if (!ready) {
+            synchronized (loadLock) {
+                changedDuringLoad.put(note.getId(), Boolean.TRUE);
+                index.remove(note.getUserId().getId(), note.getId());
+            }
+        } else {
+            index.remove(note.getUserId().getId(), note.getId());
+        }
+    }
+    
+    /**
+     * Find notes which headers contain fragment.
+     * @param userId id of user;
+     * @param fragment header fragment;
+     * @param limit max count of ids;
+     * @return ids of notes;
+     */
+    public List<Integer> findSubstring(Integer userId, String fragment, int limit) {
+        return index.findSubstring(userId, fragment, limit);
+    }
+    
+    /**
+     * Find notes with headers similar to text.
+     * @param userId id of user;
+     * @param text text to compare;
+     * @param limit max count of ids;
+     * @return ids of notes, most similar first;
+     */
+    public List<Integer> findSimilar(Integer userId, String text, int limit) {
+        return index.findSimilar(userId, text, MIN_SIMILARITY, limit);
+    }
+    
+    /**
+     * Load headers of all notes.
+     */
+    private void load() {
+        TypedQuery<Object[]> tr = em.createNamedQuery("Note.findHeaders", Object[].class);
+        tr.setMaxResults(LOAD_PAGE_SIZE);
+        Integer lastId = 0;
+        List<Object[]> page;
+        while (!(page = tr.setParameter("lastId", lastId).getResultList()).isEmpty()) {
+            for (Object[] row: page) {
+                Integer noteId = (Integer) row[0];
+                synchronized (loadLock) {
+                    if (!changedDuringLoad.containsKey(noteId)) {
+                        index.put((Integer) row[1], noteId, (String) row[2]);
+                    }
+                }
+                lastId = noteId;
+            }
+            em.clear();
+        }
+        ready = true;
+        changedDuringLoad.clear();
+    }
+}
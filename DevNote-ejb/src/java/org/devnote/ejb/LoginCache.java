@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.ejb;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import org.devnote.entries.User;
+
+/**
+ * Application wide cache of login credentials.<br/>
+ * <br/>
+ * Keeps user id, password hash and flags by login, so wrong passwords 
+ * and repeated logins don't query users by login. Unknown logins are cached 
+ * too, in separate smaller map with shorter lifetime, so flood of random 
+ * logins can only evict other unknown logins. Both maps are evicted in 
+ * least recently used order. Entries are dropped by {@link UserFacade} 
+ * after commit of transaction which creates, changes or removes user, 
+ * users loaded while some invalidation happened aren't cached at all. 
+ * Other application nodes don't see these invalidations, so entries 
+ * live only MAX_AGE: changed password or disabled user is accepted 
+ * by other nodes at most that long.
+ * @author Stanislav Nepochatov
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class LoginCache {
+    
+    /**
+     * Max count of cached logins (system property devnote.loginCache.maxEntries).
+     */
+    public static final int MAX_ENTRIES = Integer.getInteger("devnote.loginCache.maxEntries", 10000);
+    
+    /**
+     * Max age of cached login in milliseconds (system property devnote.loginCache.maxAge).
+     */
+    public static final long MAX_AGE = Long.getLong("devnote.loginCache.maxAge", 30000L);
+    
+    /**
+     * Max count of cached unknown logins (system property devnote.loginCache.maxMissing).
+     */
+    public static final int MAX_MISSING = Integer.getInteger("devnote.loginCache.maxMissing", 1000);
+    
+    /**
+     * Max age of cached unknown login in milliseconds (system property devnote.loginCache.missingMaxAge).
+     */
+    public static final long MISSING_MAX_AGE = Long.getLong("devnote.loginCache.missingMaxAge", 30000L);
+    
+    /**
+     * Known logins in access order.
+     */
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LoginCache.Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    
+    /**
+     * Unknown logins with caching time in access order.
+     */
+    private final Map<String, Long> missing = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_MISSING;
+        }
+    };
+    
+    /**
+     * Count of invalidations, used to detect users loaded concurrently with changes.
+     */
+    private long generation = 0;
+    
+    /**
+     * Get current generation of cache, should be taken before loading of user.
+     * @return count of invalidations;
+     */
+    public long getGeneration() {
+        synchronized (entries) {
+            return generation;
+        }
+    }
+    
+    /**
+     * Get cached login.
+     * @param login login of user;
+     * @return entry or null if login isn't cached or stale;
+     */
+    public Entry get(String login) {
+        synchronized (entries) {
+            Entry entry = entries.get(login);
+            if (entry != null && System.currentTimeMillis() - entry.time > MAX_AGE) {
+                entries.remove(login);
+                return null;
+            }
+            return entry;
+        }
+    }
+    
+    /**
+     * Put loaded user.
+     * @param login login which was used for search;
+     * @param user finded user;
+     * @param loadGeneration generation of cache before loading of user;
+     */
+    public void put(String login, User user, long loadGeneration) {
+        synchronized (entries) {
+            if (loadGeneration == generation) {
+                entries.put(login, new Entry(user));
+            }
+        }
+    }
+    
+    /**
+     * Check if login is cached as unknown.
+     * @param login login of user;
+     * @return true if there is no user with such login;
+     */
+    public boolean isMissing(String login) {
+        synchronized (missing) {
+            Long time = missing.get(login);
+            if (time != null && System.currentTimeMillis() - time > MISSING_MAX_AGE) {
+                missing.remove(login);
+                return false;
+            }
+            return time != null;
+        }
+    }
+    
+    /**
+     * Mark login as unknown.
+     * @param login login without user;
+     * @param loadGeneration generation of cache before search of user;
+     */
+    public void putMissing(String login, long loadGeneration) {
+        synchronized (entries) {
+            if (loadGeneration != generation) {
+                return;
+            }
+            synchronized (missing) {
+                missing.put(login, System.currentTimeMillis());
+            }
+        }
+    }
+    
+    /**
+     * Drop cached data of user.
+     * @param user changed user;
+     */
+    public void invalidate(User user) {
+        synchronized (entries) {
+            generation++;
+            Iterator<Entry> iter = entries.values().iterator();
+            while (iter.hasNext()) {
+                Entry current = iter.next();
+                if (current.id.equals(user.getId()) || current.login.equalsIgnoreCase(user.getLogin())) {
+                    iter.remove();
+                }
+            }
+        }
+        synchronized (missing) {
+            Iterator<String> iter = missing.keySet().iterator();
+            while (iter.hasNext()) {
+                if (iter.next().equalsIgnoreCase(user.getLogin())) {
+                    iter.remove();
+                }
+            }
+        }
+    }
+    
+    /**
+     * Cached login credentials.
+     */
+    public static class Entry {
+        
+        /**
+         * User id.
+         */
+        private final Integer id;
+        
+        /**
+         * Login as stored in database.
+         */
+        private final String login;
+        
+        /**
+         * Password hash.
+         */
+        private final String passw;
+        
+        /**
+         * Admin flag.
+         */
+        private final boolean isAdmin;
+        
+        /**
+         * Enabled flag.
+         */
+        private final boolean isEnabled;
+        
+        /**
+         * Caching time.
+         */
+        private final long time = System.currentTimeMillis();
+        
+        /**
+         * Parametrick constructor.
+         * @param user loaded user;
+         */
+        Entry(User user) {
+            this.id = user.getId();
+            this.login = user.getLogin();
+            this.passw = user.getPassw();
+            this.isAdmin = user.getIsAdmin();
+            this.isEnabled = user.getIsEnabled();
+        }
+        
+        /**
+         * Get user id.
+         * @return id of user;
+         */
+        public Integer getId() {
+            return id;
+        }
+        
+        /**
+         * Get login as stored in database.
+         * @return login string;
+         */
+        public String getLogin() {
+            return login;
+        }
+        
+        /**
+         * Get password hash.
+         * @return hash of password;
+         */
+        public String getPassw() {
+            return passw;
+        }
+        
+        /**
+         * Get admin flag.
+         * @return true if user is admin;
+         */
+        public boolean getIsAdmin() {
+            return isAdmin;
+        }
+        
+        /**
+         * Get enabled flag.
+         * @return true if user is enabled;
+         */
+        public boolean getIsEnabled() {
+            return isEnabled;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.ejb;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJBException;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.Timeout;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.sql.DataSource;
+import org.devnote.entries.User;
+
+/**
+ * Write-behind storage of user login dates.<br/>
+ * <br/>
+ * Login only records date in memory, repeated logins of the same user 
+ * are coalesced to the latest date. Pending dates are written with 
+ * single JDBC batch every {@link #FLUSH_INTERVAL} milliseconds and 
+ * on application shutdown. Batch is committed by writer itself, so cached 
+ * users are evicted only after their dates are visible to other readers. Failure of the last flush on shutdown is 
+ * only logged: login dates aren't worth to break undeploy.
+ * @author Stanislav Nepochatov
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class LoginDateWriter {
+    
+    /**
+     * Interval of pending dates flush in milliseconds (system property devnote.login.flushInterval).
+     */
+    public static final long FLUSH_INTERVAL = Long.getLong("devnote.login.flushInterval", 5000L);
+    
+    /**
+     * Update statement of login date.
+     */
+    private static final String UPDATE_SQL = "UPDATE User SET log_date = ? WHERE id = ?";
+    
+    /**
+     * Logger of shutdown failures.
+     */
+    private static final Logger LOG = Logger.getLogger(LoginDateWriter.class.getName());
+    
+    /**
+     * Data source of persistence unit.
+     */
+    @Resource(lookup = "devnote")
+    private DataSource dataSource;
+    
+    /**
+     * Entity manager (for shared cache eviction).
+     */
+    @PersistenceContext(unitName = "DevNote-ejbPU")
+    private EntityManager em;
+    
+    /**
+     * Timer service.
+     */
+    @Resource
+    private TimerService timerService;
+    
+    /**
+     * Pending login dates by user id.
+     */
+    private final ConcurrentMap<Integer, Date> pending = new ConcurrentHashMap<>();
+    
+    /**
+     * Start flush timer.
+     */
+    @PostConstruct
+    public void init() {
+        timerService.createIntervalTimer(FLUSH_INTERVAL, FLUSH_INTERVAL, new TimerConfig(null, false));
+    }
+    
+    /**
+     * Record login date of user. Earlier date never replaces later one.
+     * @param userId id of user;
+     * @param date login date;
+     */
+    public void record(Integer userId, Date date) {
+        Date previous = pending.putIfAbsent(userId, date);
+        while (previous != null && previous.before(date) && !pending.replace(userId, previous, date)) {
+            previous = pending.putIfAbsent(userId, date);
+        }
+    }
+    
+    /**
+     * Get count of users with pending login date.
+     * @return count of pending updates;
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+    
+    /**
+     * Take all pending login dates, dates recorded meanwhile stay pending.
+     * @return login dates by user id;
+     */
+    public Map<Integer, Date> drainPending() {
+        Map<Integer, Date> batch = new HashMap<>();
+        for (Map.Entry<Integer, Date> entry: pending.entrySet()) {
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                batch.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return batch;
+    }
+    
+    /**
+     * Write all pending login dates with single batch. 
+     * Dates are returned to pending on failure.
+     */
+    @Timeout
+    public void flush() {
+        Map<Integer, Date> batch = drainPending();
+        if (batch.isEmpty()) {
+            return;
+        }
+        try (Connection connection = dataSource.getConnection(); 
+                PreparedStatement statement = connection.prepareStatement(UPDATE_SQL)) {
+            for (Map.Entry<Integer, Date> entry: batch.entrySet()) {
+                statement.setTimestamp(1, new Timestamp(entry.getValue().getTime()));
+                statement.setInt(2, entry.getKey());
+                statement.addBatch();
+            }
+            connection.setAutoCommit(false);
+            try {
+                statement.executeBatch();
+                connection.commit();
+            } catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException ex) {
+            for (Map.Entry<Integer, Date> entry: batch.entrySet()) {
+                record(entry.getKey(), entry.getValue());
+            }
+            throw new EJBException(ex);
+        }
+        Cache cache = em.getEntityManagerFactory().getCache();
+        for (Integer userId: batch.keySet()) {
+            cache.evict(User.class, userId);
+        }
+    }
+    
+    /**
+     * Write pending login dates on shutdown. Exceptions aren't allowed 
+     * in lifecycle callback, so failure is logged and dates are lost.
+     */
+    @PreDestroy
+    public void shutdown() {
+        try {
+            flush();
+        } catch (RuntimeException ex) {
+            LOG.log(Level.WARNING, "Login dates of " + getPendingCount() + " users weren't written on shutdown", ex);
+        }
+    }
+}
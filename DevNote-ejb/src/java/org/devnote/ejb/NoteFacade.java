@@ -17,10 +17,24 @@
 
 package org.devnote.ejb;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import org.devnote.entries.Directory;
 import org.devnote.entries.Note;
+import org.devnote.entries.User;
 
 /**
  * Note facade.
@@ -29,12 +43,45 @@ import org.devnote.entries.Note;
 @Stateless
 public class NoteFacade extends AbstractFacade<Note> implements NoteFacadeLocal {
     
+    /**
+     * Attribute to sort notes by default.
+     */
+    public static final String SORT_LAST_VERSION_DATE = "lastVersionDate";
+    
+    /**
+     * Attribute to sort notes by header.
+     */
+    public static final String SORT_HEADER = "header";
+    
+    /**
+     * Max count of header index candidates to use in query as id list.
+     */
+    private static final int MAX_HEADER_CANDIDATES = 1000;
+    
     /**
      * Entity manager.
      */
     @PersistenceContext(unitName = "DevNote-ejbPU")
     private EntityManager em;
     
+    /**
+     * Full text index.
+     */
+    @EJB
+    private SearchIndex searchIndex;
+    
+    /**
+     * Trigram index of headers.
+     */
+    @EJB
+    private HeaderIndex headerIndex;
+    
+    /**
+     * Shared content facade.
+     */
+    @EJB
+    private ContentFacadeLocal contentBean;
+    
     @Override
     protected EntityManager getEntityManager() {
         return em;
@@ -46,5 +93,229 @@ public class NoteFacade extends AbstractFacade<Note> implements NoteFacadeLocal
     public NoteFacade() {
         super(Note.class);
     }
+
+    /**
+     * Create note and index its header after commit 
+     * (when IDENTITY id is already assigned).
+     * @param note note to create;
+     */
+    @Override
+    public void create(final Note note) {
+        super.create(note);
+        afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                headerIndex.put(note);
+            }
+        });
+    }
+
+    /**
+     * Edit note and index its header after commit.
+     * @param note note to edit;
+     */
+    @Override
+    public void edit(final Note note) {
+        super.edit(note);
+        afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                headerIndex.put(note);
+            }
+        });
+    }
+
+    /**
+     * Remove note with release of shared contents of its versions 
+     * and drop it from indexes after commit.
+     * @param note note to remove;
+     */
+    @Override
+    public void remove(final Note note) {
+        List<Integer> released = contentBean.releaseByNote(note);
+        super.remove(note);
+        contentBean.removeUnused(released);
+        afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                searchIndex.remove(note);
+                headerIndex.remove(note);
+            }
+        });
+    }
+
+
+    @Override
+    public List<Note> findDirPage(Directory dir, String sortField, boolean ascending, String headerFilter, 
+            Object cursorKey, Object cursorId, boolean forward, int pageSize) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Note> cq = cb.createQuery(Note.class);
+        Root<Note> rt = cq.from(Note.class);
+        Path<Object> keyPath = rt.get(checkSortField(sortField));
+        Path<Object> idPath = rt.get("id");
+        boolean queryAscending = ascending == forward;
+        
+        List<Predicate> where = dirRestrictions(cb, rt, dir, headerFilter);
+        if (cursorId != null) {
+            Predicate afterId = compare(cb, idPath, cursorId, queryAscending);
+            Predicate afterKey = compare(cb, keyPath, cursorKey, queryAscending);
+            where.add(cb.or(afterKey, cb.and(cb.equal(keyPath, cursorKey), afterId)));
+        }
+        cq.where(where.toArray(new Predicate[where.size()]));
+        if (queryAscending) {
+            cq.orderBy(cb.asc(keyPath), cb.asc(idPath));
+        } else {
+            cq.orderBy(cb.desc(keyPath), cb.desc(idPath));
+        }
+        
+        TypedQuery<Note> tr = em.createQuery(cq);
+        tr.setMaxResults(pageSize);
+        List<Note> result = tr.getResultList();
+        if (!forward) {
+            Collections.reverse(result);
+        }
+        return result;
+    }
+
+    @Override
+    public List<Note> findDirRange(Directory dir, String sortField, boolean ascending, String headerFilter, int first, int pageSize) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Note> cq = cb.createQuery(Note.class);
+        Root<Note> rt = cq.from(Note.class);
+        Path<Object> keyPath = rt.get(checkSortField(sortField));
+        Path<Object> idPath = rt.get("id");
+        List<Predicate> where = dirRestrictions(cb, rt, dir, headerFilter);
+        cq.where(where.toArray(new Predicate[where.size()]));
+        if (ascending) {
+            cq.orderBy(cb.asc(keyPath), cb.asc(idPath));
+        } else {
+            cq.orderBy(cb.desc(keyPath), cb.desc(idPath));
+        }
+        TypedQuery<Note> tr = em.createQuery(cq);
+        tr.setFirstResult(first);
+        tr.setMaxResults(pageSize);
+        return tr.getResultList();
+    }
+
+    @Override
+    public int countDir(Directory dir, String headerFilter) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Long> cq = cb.createQuery(Long.class);
+        Root<Note> rt = cq.from(Note.class);
+        List<Predicate> where = dirRestrictions(cb, rt, dir, headerFilter);
+        cq.select(cb.count(rt)).where(where.toArray(new Predicate[where.size()]));
+        return em.createQuery(cq).getSingleResult().intValue();
+    }
+
+    @Override
+    public List<Note> findByHeaderFragment(User user, String fragment, int limit) {
+        if (!headerIndex.isComplete(user.getId(), fragment)) {
+            return findByHeaderLike(user, fragment, limit);
+        }
+        return findByIds(user, headerIndex.findSubstring(user.getId(), fragment, limit));
+    }
+
+    @Override
+    public List<Note> findByHeaderSimilar(User user, String text, int limit) {
+        if (!headerIndex.isReady()) {
+            return findByHeaderLike(user, text, limit);
+        }
+        return findByIds(user, headerIndex.findSimilar(user.getId(), text, limit));
+    }
+
+    /**
+     * Find notes of user which headers contain fragment with database query.
+     * @param user owner of notes;
+     * @param fragment part of header;
+     * @param limit max count of notes;
+     * @return found notes;
+     */
+    private List<Note> findByHeaderLike(User user, String fragment, int limit) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Note> cq = cb.createQuery(Note.class);
+        Root<Note> rt = cq.from(Note.class);
+        cq.where(cb.equal(rt.get("userId"), user), headerLike(cb, rt, fragment));
+        return em.createQuery(cq).setMaxResults(limit).getResultList();
+    }
+
+    /**
+     * Load notes of user by ids.
+     * @param user owner of notes;
+     * @param ids ids of notes;
+     * @return notes in order of ids (missing notes skipped);
+     */
+    private List<Note> findByIds(User user, List<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        TypedQuery<Note> tr = em.createNamedQuery("Note.findByIds", Note.class);
+        tr.setParameter("ids", ids);
+        Map<Integer, Note> found = new HashMap<>();
+        for (Note note: tr.getResultList()) {
+            found.put(note.getId(), note);
+        }
+        List<Note> result = new ArrayList<>(found.size());
+        for (Integer id: ids) {
+            Note note = found.get(id);
+            if (note != null && note.getUserId().equals(user)) {
+                result.add(note);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Build directory and header filter restrictions.
+     * @param cb criteria builder;
+     * @param rt note root;
+     * @param dir directory of notes;
+     * @param headerFilter header fragment or null;
+     * @return modifiable list of predicates;
+     */
+    private List<Predicate> dirRestrictions(CriteriaBuilder cb, Root<Note> rt, Directory dir, String headerFilter) {
+        List<Predicate> where = new ArrayList<>();
+        where.add(cb.equal(rt.get("dirId"), dir));
+        if (headerFilter != null && !headerFilter.isEmpty()) {
+            where.add(headerLike(cb, rt, headerFilter));
+            if (headerFilter.length() >= 3 && headerIndex.isComplete(dir.getUserId().getId(), headerFilter)) {
+                //Trigram candidates turn full scan of headers into primary key lookups.
+                List<Integer> candidates = headerIndex.findSubstring(dir.getUserId().getId(), headerFilter, MAX_HEADER_CANDIDATES + 1);
+                if (candidates.isEmpty()) {
+                    where.add(cb.disjunction());
+                } else if (candidates.size() <= MAX_HEADER_CANDIDATES) {
+                    where.add(rt.get("id").in(candidates));
+                }
+            }
+        }
+        return where;
+    }
+    
+    /**
+     * Build case insensitive header substring restriction.
+     * @param cb criteria builder;
+     * @param rt note root;
+     * @param fragment header fragment;
+     * @return LIKE predicate;
+     */
+    private Predicate headerLike(CriteriaBuilder cb, Root<Note> rt, String fragment) {
+        String escaped = fragment.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        return cb.like(cb.lower(rt.<String>get("header")), "%" + escaped.toLowerCase() + "%", '\\');
+    }
+
+    /**
+     * Check sort field of note page.
+     * @param sortField attribute name or null for default sorting;
+     * @return allowed attribute name;
+     * @throws IllegalArgumentException if notes can't be sorted by this field;
+     */
+    private String checkSortField(String sortField) {
+        if (sortField == null) {
+            return SORT_LAST_VERSION_DATE;
+        } else if (SORT_LAST_VERSION_DATE.equals(sortField) || SORT_HEADER.equals(sortField)) {
+            return sortField;
+        } else {
+            throw new IllegalArgumentException("Notes can't be sorted by " + sortField);
+        }
+    }
     
 }
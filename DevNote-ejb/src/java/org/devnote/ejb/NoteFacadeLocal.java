@@ -19,7 +19,9 @@ package org.devnote.ejb;
 
 import java.util.List;
 import javax.ejb.Local;
+import org.devnote.entries.Directory;
 import org.devnote.entries.Note;
+import org.devnote.entries.User;
 
 /**
  * Note local interface.
@@ -40,8 +42,81 @@ public interface NoteFacadeLocal {
 
     List<Note> findAll();
 
+    void visitAll(EntityVisitor<Note> visitor);
+
     List<Note> findRange(int[] range);
 
     int count();
+
+    int countApproximate();
+
+    List<Note> findPageAfter(Object lastId, int pageSize);
+
+    List<Note> findPageBefore(Object firstId, int pageSize);
+
+    List<Note> findPageAfter(String sortAttribute, Object lastKey, Object lastId, int pageSize);
+
+    List<Note> findPageBefore(String sortAttribute, Object firstKey, Object firstId, int pageSize);
+    
+    // My methods
+    
+    /**
+     * Find page of directory notes with keyset pagination.<br/>
+     * <br/>
+     * Notes ordered by sort field and id, cursor is a (sort key, id) pair 
+     * of the last row of previous page (forward) or the first row of 
+     * next page (backward).
+     * @param dir directory of notes;
+     * @param sortField "lastVersionDate", "header" or null for default;
+     * @param ascending sort order;
+     * @param headerFilter fragment of header to filter or null;
+     * @param cursorKey sort key of cursor note;
+     * @param cursorId id of cursor note or null to start from the edge;
+     * @param forward direction of paging;
+     * @param pageSize max count of notes;
+     * @return notes in sort order;
+     */
+    List<Note> findDirPage(Directory dir, String sortField, boolean ascending, String headerFilter, 
+            Object cursorKey, Object cursorId, boolean forward, int pageSize);
+    
+    /**
+     * Find page of directory notes by offset (for random page jumps).
+     * @param dir directory of notes;
+     * @param sortField "lastVersionDate", "header" or null for default;
+     * @param ascending sort order;
+     * @param headerFilter fragment of header to filter or null;
+     * @param first offset of the first note;
+     * @param pageSize max count of notes;
+     * @return notes in sort order;
+     */
+    List<Note> findDirRange(Directory dir, String sortField, boolean ascending, String headerFilter, int first, int pageSize);
+    
+    /**
+     * Count notes in directory.
+     * @param dir directory of notes;
+     * @param headerFilter fragment of header to filter or null;
+     * @return count of notes;
+     */
+    int countDir(Directory dir, String headerFilter);
+    
+    /**
+     * Find notes of user by header fragment (case insensitive).
+     * @param user owner of notes;
+     * @param fragment header fragment, e.g. ticket number;
+     * @param limit max count of notes;
+     * @return finded notes;
+     */
+    List<Note> findByHeaderFragment(User user, String fragment, int limit);
+    
+    /**
+     * Find notes of user with headers similar to text (fuzzy search). 
+     * Until header index is loaded only headers which contain text 
+     * are found by database query.
+     * @param user owner of notes;
+     * @param text text to compare with headers;
+     * @param limit max count of notes;
+     * @return notes, most similar first;
+     */
+    List<Note> findByHeaderSimilar(User user, String text, int limit);
     
 }
@@ -0,0 +1,961 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.devnote.ejb;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJB;
+import javax.ejb.EJBException;
+import javax.ejb.Singleton;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.concurrent.ManagedThreadFactory;
+import javax.sql.DataSource;
+import org.devnote.entries.Directory;
+import org.devnote.entries.Note;
+import org.devnote.entries.User;
+import org.devnote.entries.Version;
+import org.devnote.service.Hash;
+import org.devnote.service.NoteTreeWalker;
+import org.devnote.service.TextCodec;
+
+/**
+ * Bulk import of note trees from local folder.<br/>
+ * <br/>
+ * Folder tree is walked by {@link NoteTreeWalker}, found files are 
+ * splitted to batches of {@link #BATCH_SIZE} notes or {@link #BATCH_BYTES} 
+ * bytes of files, whichever is reached first. Every batch is read, 
+ * hashed and compressed by separate task of dedicated read pool, up to 
+ * {@link #READ_THREADS} batches are read in parallel. Import itself runs 
+ * on managed executor and waits for read tasks, so they never share 
+ * threads and import can't starve its own reads. Read batches are 
+ * written in walk order with plain JDBC, every batch in single transaction: 
+ * missing directories with their closure rows, shared contents, notes 
+ * and their first versions are inserted with one statement batch per 
+ * table instead of IDENTITY round-trip per entity. Insert batches are 
+ * sent as multi-row statements if data source has 
+ * rewriteBatchedStatements option. Texts of written batch are dropped 
+ * right after index update, so memory of import is bounded by 
+ * {@link #READ_THREADS} + 1 batches.<br/>
+ * <br/>
+ * Shared contents with the same hash are locked and their texts compared 
+ * with imported ones, notes with colliding hash keep their text inline.
+ * <br/>
+ * Note and version refer to each other, so notes are inserted with 
+ * foreign key checks disabled for the import connection and 
+ * fixed up with their versions before batch commit. Import stops on first 
+ * database error, already committed batches stay in database. Files which 
+ * can't be read or are larger than {@link #MAX_FILE_SIZE} are skipped.
+ * @author Stanislav Nepochatov
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class NoteImporter {
+    
+    /**
+     * Count of notes in single batch (system property devnote.import.batchSize).
+     */
+    public static final int BATCH_SIZE = Integer.getInteger("devnote.import.batchSize", 1000);
+    
+    /**
+     * Max total size of files in single batch in bytes (system property devnote.import.batchBytes).
+     */
+    public static final long BATCH_BYTES = Long.getLong("devnote.import.batchBytes", 16777216L);
+    
+    /**
+     * Count of batches read in parallel (system property devnote.import.readThreads).
+     */
+    public static final int READ_THREADS = Integer.getInteger("devnote.import.readThreads", 
+            Runtime.getRuntime().availableProcessors());
+    
+    /**
+     * Max size of imported file in bytes (system property devnote.import.maxFileSize).
+     */
+    public static final long MAX_FILE_SIZE = Long.getLong("devnote.import.maxFileSize", 8388608L);
+    
+    /**
+     * Select of existing directories of user.
+     */
+    private static final String SELECT_DIRECTORIES_SQL = "SELECT id, path FROM Directory WHERE user_id = ?";
+    
+    /**
+     * Insert of directory.
+     */
+    private static final String INSERT_DIRECTORY_SQL = "INSERT INTO Directory (path, user_id) VALUES (?, ?)";
+    
+    /**
+     * Insert of directory closure row.
+     */
+    private static final String INSERT_CLOSURE_SQL = "INSERT INTO DirectoryClosure (ancestor_id, descendant_id, depth) VALUES (?, ?, ?)";
+    
+    /**
+     * Insert of shared content. Missing hashes are gap locked by select 
+     * of contents, so concurrent insert of the same hash waits for commit.
+     */
+    private static final String INSERT_CONTENT_SQL = "INSERT INTO Content (hash, note_text, ref_count) VALUES (?, ?, ?)";
+    
+    /**
+     * Lock of existing contents by hashes (without list of placeholders and FOR UPDATE).
+     */
+    private static final String SELECT_CONTENTS_SQL = "SELECT id, hash, note_text FROM Content WHERE hash IN (";
+    
+    /**
+     * Increment of content references.
+     */
+    private static final String ACQUIRE_CONTENT_SQL = "UPDATE Content SET ref_count = ref_count + ? WHERE id = ?";
+    
+    /**
+     * Insert of note without version.
+     */
+    private static final String INSERT_NOTE_SQL = "INSERT INTO Note (header, dir_id, user_id, last_version_id, last_version_date) "
+            + "VALUES (?, ?, ?, 0, ?)";
+    
+    /**
+     * Insert of version with shared content or inline text.
+     */
+    private static final String INSERT_VERSION_SQL = "INSERT INTO Version (hash, save_date, user_id, note_id, text_size, content_id, note_text, chain_length) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, 0)";
+    
+    /**
+     * Set of note version. Written as upsert of existing rows, because it's 
+     * sent as multi-row statement like inserts, unlike batch of updates.
+     */
+    private static final String SET_NOTE_VERSION_SQL = "INSERT INTO Note (id, header, dir_id, user_id, last_version_id, last_version_date) "
+            + "VALUES (?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE last_version_id = VALUES(last_version_id)";
+    
+    /**
+     * Data source of persistence unit.
+     */
+    @Resource(lookup = "devnote")
+    private DataSource dataSource;
+    
+    /**
+     * Executor of import tasks.
+     */
+    @Resource
+    private ManagedExecutorService executor;
+    
+    /**
+     * Factory of read pool threads.
+     */
+    @Resource
+    private ManagedThreadFactory threadFactory;
+    
+    /**
+     * Pool of {@link #READ_THREADS} threads which read batches.
+     */
+    private ExecutorService readPool;
+    
+    /**
+     * Shared directory tree cache.
+     */
+    @EJB
+    private DirectoryTreeCache treeCache;
+    
+    /**
+     * Cache of entity counts.
+     */
+    @EJB
+    private CountCache countCache;
+    
+    /**
+     * Trigram index of note headers.
+     */
+    @EJB
+    private HeaderIndex headerIndex;
+    
+    /**
+     * Full text index of notes.
+     */
+    @EJB
+    private SearchIndex searchIndex;
+    
+    /**
+     * Progress of the latest import by user id.
+     */
+    private final ConcurrentMap<Integer, Progress> imports = new ConcurrentHashMap<>();
+    
+    /**
+     * Create read pool.
+     */
+    @PostConstruct
+    public void init() {
+        readPool = Executors.newFixedThreadPool(READ_THREADS, threadFactory);
+    }
+    
+    /**
+     * Stop read pool, running imports fail on their next batch.
+     */
+    @PreDestroy
+    public void shutdown() {
+        readPool.shutdownNow();
+    }
+    
+    /**
+     * Start import of folder tree in background.
+     * @param userId id of notes owner;
+     * @param folder local path of root folder;
+     * @param rootPath directory path of root folder;
+     * @return progress of started import;
+     * @throws IllegalArgumentException if folder doesn't exist or root path is empty;
+     * @throws IllegalStateException if other import of the user is running;
+     */
+    public Progress start(final Integer userId, String folder, String rootPath) {
+        Path root = Paths.get(folder);
+        if (!Files.isDirectory(root)) {
+            throw new IllegalArgumentException("There is no folder " + folder);
+        }
+        final NoteTreeWalker walker = new NoteTreeWalker(root, rootPath);
+        final Progress progress = new Progress();
+        synchronized (imports) {
+            Progress previous = imports.get(userId);
+            if (previous != null && !previous.isDone()) {
+                throw new IllegalStateException("Import of user " + userId + " is already running");
+            }
+            imports.put(userId, progress);
+        }
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    importTree(userId, walker, progress);
+                    progress.finish(null);
+                } catch (IOException | SQLException | InterruptedException | ExecutionException | RuntimeException ex) {
+                    progress.finish(ex);
+                } finally {
+                    treeCache.invalidateAll(userId);
+                }
+            }
+        });
+        return progress;
+    }
+    
+    /**
+     * Get progress of the latest import of user.
+     * @param userId id of user;
+     * @return progress or null if there was no import;
+     */
+    public Progress getProgress(Integer userId) {
+        return imports.get(userId);
+    }
+    
+    /**
+     * Walk folder tree, read batches in parallel and write them in walk order.
+     * @param userId id of notes owner;
+     * @param walker walker of folder tree;
+     * @param progress import progress;
+     */
+    private void importTree(Integer userId, NoteTreeWalker walker, Progress progress) 
+            throws IOException, SQLException, InterruptedException, ExecutionException {
+        try (Connection connection = dataSource.getConnection()) {
+            BatchWriter writer = new BatchWriter(connection, userId);
+            try {
+                BatchReader reader = new BatchReader(writer, progress);
+                walker.walk(reader);
+                reader.finish();
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+    
+    /**
+     * Write read batch and add its notes to caches and indexes.
+     * @param writer writer of batches;
+     * @param notes read notes of batch;
+     * @param progress import progress;
+     */
+    private void write(BatchWriter writer, List<ImportedNote> notes, Progress progress) throws SQLException {
+        if (notes.isEmpty()) {
+            return;
+        }
+        int createdDirectories = writer.write(notes);
+        User owner = new User(writer.userId);
+        for (ImportedNote imported: notes) {
+            Note note = new Note(imported.noteId, imported.header);
+            note.setUserId(owner);
+            headerIndex.put(note);
+            searchIndex.update(note, imported.text);
+            imported.text = null;
+            imported.encodedText = null;
+        }
+        countCache.add(Directory.class, createdDirectories);
+        countCache.add(Note.class, notes.size());
+        countCache.add(Version.class, notes.size());
+        progress.directories.addAndGet(createdDirectories);
+        progress.imported.addAndGet(notes.size());
+    }
+    
+    /**
+     * Execute insert batch and get generated ids of all rows.
+     * @param statement prepared statement with generated keys;
+     * @param count count of rows in batch;
+     * @return ids in order of rows;
+     */
+    private static int[] executeForKeys(PreparedStatement statement, int count) throws SQLException {
+        statement.executeBatch();
+        int[] ids = new int[count];
+        int index = 0;
+        try (ResultSet keys = statement.getGeneratedKeys()) {
+            while (index < count && keys.next()) {
+                ids[index++] = keys.getInt(1);
+            }
+        }
+        if (index < count) {
+            throw new SQLException("Only " + index + " of " + count + " generated ids returned");
+        }
+        return ids;
+    }
+    
+    /**
+     * Visitor of note files which collects them to batches and 
+     * submits read tasks. Read batches are written in submit order.
+     */
+    private class BatchReader implements NoteTreeWalker.Visitor {
+        
+        /**
+         * Writer of batches.
+         */
+        private final BatchWriter writer;
+        
+        /**
+         * Import progress.
+         */
+        private final Progress progress;
+        
+        /**
+         * Submitted read tasks in walk order.
+         */
+        private final Deque<Future<List<ImportedNote>>> tasks = new ArrayDeque<>();
+        
+        /**
+         * Batch which is collected now.
+         */
+        private List<ImportedNote> current = new ArrayList<>();
+        
+        /**
+         * Total size of files in current batch.
+         */
+        private long currentBytes = 0;
+        
+        /**
+         * Parametrick constructor.
+         * @param writer writer of batches;
+         * @param progress import progress;
+         */
+        BatchReader(BatchWriter writer, Progress progress) {
+            this.writer = writer;
+            this.progress = progress;
+        }
+
+        @Override
+        public void visit(Path file, String directoryPath, String header) throws IOException {
+            current.add(new ImportedNote(file, directoryPath, header));
+            progress.found.incrementAndGet();
+            try {
+                long size = Files.size(file);
+                currentBytes += size <= MAX_FILE_SIZE ? size : 0;
+            } catch (IOException ex) {
+                //File is skipped by read task
+            }
+            if (current.size() < BATCH_SIZE && currentBytes < BATCH_BYTES) {
+                return;
+            }
+            tasks.add(readPool.submit(new ReadTask(current, progress)));
+            current = new ArrayList<>();
+            currentBytes = 0;
+            try {
+                while (tasks.size() >= READ_THREADS) {
+                    write(writer, tasks.poll().get(), progress);
+                }
+            } catch (SQLException | InterruptedException | ExecutionException ex) {
+                throw new IOException(ex);
+            }
+        }
+        
+        /**
+         * Read last incomplete batch and write all remaining batches.
+         */
+        void finish() throws SQLException, InterruptedException, ExecutionException {
+            if (!current.isEmpty()) {
+                tasks.add(readPool.submit(new ReadTask(current, progress)));
+                current = new ArrayList<>();
+            }
+            while (!tasks.isEmpty()) {
+                write(writer, tasks.poll().get(), progress);
+            }
+        }
+    }
+    
+    /**
+     * Task which reads, hashes and compresses texts of batch.
+     */
+    private static class ReadTask implements Callable<List<ImportedNote>> {
+        
+        /**
+         * Notes of batch.
+         */
+        private final List<ImportedNote> notes;
+        
+        /**
+         * Import progress.
+         */
+        private final Progress progress;
+        
+        /**
+         * Parametrick constructor.
+         * @param notes notes of batch;
+         * @param progress import progress;
+         */
+        ReadTask(List<ImportedNote> notes, Progress progress) {
+            this.notes = notes;
+            this.progress = progress;
+        }
+
+        /**
+         * Read batch.
+         * @return notes which were read, skipped files are excluded;
+         */
+        @Override
+        public List<ImportedNote> call() {
+            List<ImportedNote> read = new ArrayList<>(notes.size());
+            for (ImportedNote note: notes) {
+                try {
+                    if (Files.size(note.file) > MAX_FILE_SIZE) {
+                        progress.skipped.incrementAndGet();
+                        continue;
+                    }
+                    String text = new String(Files.readAllBytes(note.file), StandardCharsets.UTF_8);
+                    if (text.startsWith("\uFEFF")) {
+                        text = text.substring(1);
+                    }
+                    note.text = text;
+                    note.textSize = text.length();
+                    note.hash = Hash.getContentHash(text);
+                    note.encodedText = TextCodec.encode(text);
+                    note.saveDate = new Timestamp(Files.getLastModifiedTime(note.file).toMillis());
+                    read.add(note);
+                } catch (IOException ex) {
+                    progress.skipped.incrementAndGet();
+                }
+            }
+            return read;
+        }
+    }
+    
+    /**
+     * JDBC writer of batches to database.
+     */
+    private static class BatchWriter {
+        
+        /**
+         * Import connection.
+         */
+        private final Connection connection;
+        
+        /**
+         * Id of notes owner.
+         */
+        private final Integer userId;
+        
+        /**
+         * Ids of user directories by path.
+         */
+        private final Map<String, Integer> directories = new HashMap<>();
+        
+        /**
+         * Parametrick constructor. Loads existing directories of user.
+         * @param connection import connection;
+         * @param userId id of notes owner;
+         */
+        BatchWriter(Connection connection, Integer userId) throws SQLException {
+            this.connection = connection;
+            this.userId = userId;
+            try (PreparedStatement statement = connection.prepareStatement(SELECT_DIRECTORIES_SQL)) {
+                statement.setInt(1, userId);
+                try (ResultSet rows = statement.executeQuery()) {
+                    while (rows.next()) {
+                        directories.put(rows.getString(2), rows.getInt(1));
+                    }
+                }
+            }
+            connection.setAutoCommit(false);
+        }
+        
+        /**
+         * Write batch in single transaction and set ids of created notes.
+         * @param notes read notes of batch;
+         * @return count of created directories;
+         */
+        int write(List<ImportedNote> notes) throws SQLException {
+            try {
+                Map<String, Integer> created = createDirectories(notes);
+                acquireContents(notes);
+                insertNotes(notes, created);
+                insertVersions(notes);
+                setNoteVersions(notes, created);
+                connection.commit();
+                directories.putAll(created);
+                return created.size();
+            } catch (SQLException | RuntimeException ex) {
+                connection.rollback();
+                throw ex;
+            }
+        }
+        
+        /**
+         * Insert missing directories of batch with their closure rows.
+         * @param notes notes of batch;
+         * @return ids of created directories by path;
+         */
+        private Map<String, Integer> createDirectories(List<ImportedNote> notes) throws SQLException {
+            TreeSet<String> missing = new TreeSet<>();
+            for (ImportedNote note: notes) {
+                String path = note.directoryPath;
+                while (path != null && !directories.containsKey(path) && missing.add(path)) {
+                    path = getParentPath(path);
+                }
+            }
+            Map<String, Integer> created = new HashMap<>();
+            if (missing.isEmpty()) {
+                return created;
+            }
+            List<String> paths = new ArrayList<>(missing);
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_DIRECTORY_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                for (String path: paths) {
+                    statement.setString(1, path);
+                    statement.setInt(2, userId);
+                    statement.addBatch();
+                }
+                int[] ids = executeForKeys(statement, paths.size());
+                for (int index = 0; index < ids.length; index++) {
+                    created.put(paths.get(index), ids[index]);
+                }
+            }
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_CLOSURE_SQL)) {
+                for (Map.Entry<String, Integer> directory: created.entrySet()) {
+                    int depth = 0;
+                    for (String ancestor = directory.getKey(); ancestor != null; ancestor = getParentPath(ancestor)) {
+                        Integer ancestorId = getDirectoryId(ancestor, created);
+                        if (ancestorId != null) {
+                            statement.setInt(1, ancestorId);
+                            statement.setInt(2, directory.getValue());
+                            statement.setInt(3, depth);
+                            statement.addBatch();
+                        }
+                        depth++;
+                    }
+                }
+                statement.executeBatch();
+            }
+            return created;
+        }
+        
+        /**
+         * Add references to existing shared contents with the same text 
+         * and insert new ones. Notes which hash belongs to other text 
+         * are left without content and stored inline.
+         * @param notes notes of batch;
+         */
+        private void acquireContents(List<ImportedNote> notes) throws SQLException {
+            Map<String, List<ImportedNote>> groups = new LinkedHashMap<>();
+            for (ImportedNote note: notes) {
+                List<ImportedNote> group = groups.get(note.hash);
+                if (group == null) {
+                    group = new ArrayList<>();
+                    groups.put(note.hash, group);
+                } else if (!group.get(0).text.equals(note.text)) {
+                    continue;
+                }
+                group.add(note);
+            }
+            StringBuilder select = new StringBuilder(SELECT_CONTENTS_SQL);
+            for (int index = 0; index < groups.size(); index++) {
+                select.append(index == 0 ? "?" : ", ?");
+            }
+            try (PreparedStatement statement = connection.prepareStatement(select.append(") FOR UPDATE").toString()); 
+                    PreparedStatement acquire = connection.prepareStatement(ACQUIRE_CONTENT_SQL)) {
+                int index = 1;
+                for (String hash: groups.keySet()) {
+                    statement.setString(index++, hash);
+                }
+                try (ResultSet rows = statement.executeQuery()) {
+                    while (rows.next()) {
+                        List<ImportedNote> group = groups.remove(rows.getString(2));
+                        if (group == null || !group.get(0).text.equals(TextCodec.decode(rows.getBytes(3)))) {
+                            continue;
+                        }
+                        acquire.setInt(1, group.size());
+                        acquire.setInt(2, rows.getInt(1));
+                        acquire.addBatch();
+                        for (ImportedNote note: group) {
+                            note.contentId = rows.getInt(1);
+                        }
+                    }
+                }
+                acquire.executeBatch();
+            }
+            if (groups.isEmpty()) {
+                return;
+            }
+            List<List<ImportedNote>> missing = new ArrayList<>(groups.values());
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_CONTENT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                for (List<ImportedNote> group: missing) {
+                    statement.setString(1, group.get(0).hash);
+                    statement.setBytes(2, group.get(0).encodedText);
+                    statement.setInt(3, group.size());
+                    statement.addBatch();
+                }
+                int[] ids = executeForKeys(statement, missing.size());
+                for (int index = 0; index < ids.length; index++) {
+                    for (ImportedNote note: missing.get(index)) {
+                        note.contentId = ids[index];
+                    }
+                }
+            }
+        }
+        
+        /**
+         * Insert notes of batch with foreign key checks disabled, 
+         * because their versions aren't inserted yet.
+         * @param notes notes of batch;
+         * @param created ids of directories created by batch;
+         */
+        private void insertNotes(List<ImportedNote> notes, Map<String, Integer> created) throws SQLException {
+            setForeignKeyChecks(false);
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_NOTE_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                for (ImportedNote note: notes) {
+                    statement.setString(1, note.header);
+                    statement.setInt(2, getDirectoryId(note.directoryPath, created));
+                    statement.setInt(3, userId);
+                    statement.setTimestamp(4, note.saveDate);
+                    statement.addBatch();
+                }
+                int[] ids = executeForKeys(statement, notes.size());
+                for (int index = 0; index < ids.length; index++) {
+                    notes.get(index).noteId = ids[index];
+                }
+            } finally {
+                setForeignKeyChecks(true);
+            }
+        }
+        
+        /**
+         * Insert first versions of notes.
+         * @param notes notes of batch;
+         */
+        private void insertVersions(List<ImportedNote> notes) throws SQLException {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_VERSION_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                for (ImportedNote note: notes) {
+                    statement.setString(1, note.hash);
+                    statement.setTimestamp(2, note.saveDate);
+                    statement.setInt(3, userId);
+                    statement.setInt(4, note.noteId);
+                    statement.setInt(5, note.textSize);
+                    if (note.contentId != null) {
+                        statement.setInt(6, note.contentId);
+                        statement.setNull(7, Types.BLOB);
+                    } else {
+                        statement.setNull(6, Types.INTEGER);
+                        statement.setBytes(7, note.encodedText);
+                    }
+                    statement.addBatch();
+                }
+                int[] ids = executeForKeys(statement, notes.size());
+                for (int index = 0; index < ids.length; index++) {
+                    notes.get(index).versionId = ids[index];
+                }
+            }
+        }
+        
+        /**
+         * Link notes to their versions.
+         * @param notes notes of batch;
+         * @param created ids of directories created by batch;
+         */
+        private void setNoteVersions(List<ImportedNote> notes, Map<String, Integer> created) throws SQLException {
+            try (PreparedStatement statement = connection.prepareStatement(SET_NOTE_VERSION_SQL)) {
+                for (ImportedNote note: notes) {
+                    statement.setInt(1, note.noteId);
+                    statement.setString(2, note.header);
+                    statement.setInt(3, getDirectoryId(note.directoryPath, created));
+                    statement.setInt(4, userId);
+                    statement.setInt(5, note.versionId);
+                    statement.setTimestamp(6, note.saveDate);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        }
+        
+        /**
+         * Enable or disable foreign key checks of import connection.
+         * @param enabled true to enable checks;
+         */
+        private void setForeignKeyChecks(boolean enabled) throws SQLException {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET FOREIGN_KEY_CHECKS = " + (enabled ? 1 : 0));
+            }
+        }
+        
+        /**
+         * Get id of existing or just created directory.
+         * @param path path of directory;
+         * @param created ids of directories created by batch;
+         * @return id or null if there is no such directory;
+         */
+        private Integer getDirectoryId(String path, Map<String, Integer> created) {
+            Integer id = created.get(path);
+            return id != null ? id : directories.get(path);
+        }
+        
+        /**
+         * Get path of parent directory.
+         * @param path path of directory;
+         * @return parent path or null for top level directory;
+         */
+        private static String getParentPath(String path) {
+            int dotIndex = path.lastIndexOf('.');
+            return dotIndex < 0 ? null : path.substring(0, dotIndex);
+        }
+    }
+    
+    /**
+     * Imported note file.
+     */
+    private static class ImportedNote {
+        
+        /**
+         * Path of file.
+         */
+        private final Path file;
+        
+        /**
+         * Path of note directory.
+         */
+        private final String directoryPath;
+        
+        /**
+         * Header of note.
+         */
+        private final String header;
+        
+        /**
+         * Text of file.
+         */
+        private String text;
+        
+        /**
+         * Length of text in chars.
+         */
+        private int textSize;
+        
+        /**
+         * Content hash of text.
+         */
+        private String hash;
+        
+        /**
+         * Id of shared content or null if text is stored inline.
+         */
+        private Integer contentId;
+        
+        /**
+         * Text encoded for content table.
+         */
+        private byte[] encodedText;
+        
+        /**
+         * Last modification date of file.
+         */
+        private Timestamp saveDate;
+        
+        /**
+         * Id of inserted note.
+         */
+        private int noteId;
+        
+        /**
+         * Id of inserted version.
+         */
+        private int versionId;
+        
+        /**
+         * Parametrick constructor.
+         * @param file path of file;
+         * @param directoryPath path of note directory;
+         * @param header header of note;
+         */
+        ImportedNote(Path file, String directoryPath, String header) {
+            this.file = file;
+            this.directoryPath = directoryPath;
+            this.header = header;
+        }
+    }
+    
+    /**
+     * Progress of import. Counters are updated while import is running.
+     */
+    public static class Progress {
+        
+        /**
+         * Count of found note files.
+         */
+        private final AtomicLong found = new AtomicLong();
+        
+        /**
+         * Count of skipped files.
+         */
+        private final AtomicLong skipped = new AtomicLong();
+        
+        /**
+         * Count of imported notes.
+         */
+        private final AtomicLong imported = new AtomicLong();
+        
+        /**
+         * Count of created directories.
+         */
+        private final AtomicLong directories = new AtomicLong();
+        
+        /**
+         * Start time of import.
+         */
+        private final long startTime = System.currentTimeMillis();
+        
+        /**
+         * Finish time of import (0 while running).
+         */
+        private volatile long finishTime = 0;
+        
+        /**
+         * Error which stopped import.
+         */
+        private volatile Throwable failure;
+        
+        /**
+         * Mark import as finished.
+         * @param failure error which stopped import or null;
+         */
+        private void finish(Throwable failure) {
+            this.failure = failure;
+            this.finishTime = System.currentTimeMillis();
+        }
+        
+        /**
+         * Get count of found note files.
+         * @return count of files;
+         */
+        public long getFound() {
+            return found.get();
+        }
+        
+        /**
+         * Get count of files skipped as unreadable or too large.
+         * @return count of files;
+         */
+        public long getSkipped() {
+            return skipped.get();
+        }
+        
+        /**
+         * Get count of imported notes.
+         * @return count of notes;
+         */
+        public long getImported() {
+            return imported.get();
+        }
+        
+        /**
+         * Get count of created directories.
+         * @return count of directories;
+         */
+        public long getDirectories() {
+            return directories.get();
+        }
+        
+        /**
+         * Get time since import start or total import time.
+         * @return time in milliseconds;
+         */
+        public long getElapsedTime() {
+            long finish = finishTime;
+            return (finish != 0 ? finish : System.currentTimeMillis()) - startTime;
+        }
+        
+        /**
+         * Get average import speed.
+         * @return imported notes per second;
+         */
+        public double getNotesPerSecond() {
+            return getImported() * 1000.0 / Math.max(1, getElapsedTime());
+        }
+        
+        /**
+         * Check if import is finished (successfully or not).
+         * @return true if import isn't running;
+         */
+        public boolean isDone() {
+            return finishTime != 0;
+        }
+        
+        /**
+         * Get error which stopped import.
+         * @return error or null;
+         */
+        public Throwable getFailure() {
+            return failure;
+        }
+
+        @Override
+        public String toString() {
+            return "imported " + getImported() + " of " + getFound() + " notes, " + getSkipped() + " skipped, " 
+                    + getDirectories() + " directories in " + getElapsedTime() + " ms" 
+                    + (failure != null ? ", failed: " + failure : "");
+        }
+    }
+}
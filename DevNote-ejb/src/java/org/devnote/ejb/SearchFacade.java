@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.ejb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.ejb.EJB;
+import javax.ejb.Stateless;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import org.devnote.entries.Note;
+import org.devnote.entries.User;
+import org.devnote.service.TextIndex;
+
+/**
+ * Search facade. Ranks notes with {@link SearchIndex} and loads 
+ * found notes with single query.
+ * @author Stanislav Nepochatov
+ */
+@Stateless
+public class SearchFacade implements SearchFacadeLocal {
+    
+    /**
+     * Entity manager.
+     */
+    @PersistenceContext(unitName = "DevNote-ejbPU")
+    private EntityManager em;
+    
+    /**
+     * Full text index.
+     */
+    @EJB
+    private SearchIndex searchIndex;
+
+    @Override
+    public List<Note> search(User user, String query, int limit) {
+        List<TextIndex.Hit> hits = searchIndex.search(user.getId(), query, limit);
+        if (hits.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Integer> ids = new ArrayList<>(hits.size());
+        for (TextIndex.Hit hit: hits) {
+            ids.add(hit.getNoteId());
+        }
+        TypedQuery<Note> tr = em.createNamedQuery("Note.findByIds", Note.class);
+        tr.setParameter("ids", ids);
+        Map<Integer, Note> found = new HashMap<>();
+        for (Note note: tr.getResultList()) {
+            found.put(note.getId(), note);
+        }
+        List<Note> result = new ArrayList<>(found.size());
+        for (Integer id: ids) {
+            Note note = found.get(id);
+            if (note != null && note.getUserId().equals(user)) {
+                result.add(note);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void index(Note note, String text) {
+        searchIndex.update(note, text);
+    }
+
+    @Override
+    public void rebuild() {
+        searchIndex.rebuild();
+    }
+    
+}
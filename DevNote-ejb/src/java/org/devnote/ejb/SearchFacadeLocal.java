@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.ejb;
+
+import java.util.List;
+import javax.ejb.Local;
+import org.devnote.entries.Note;
+import org.devnote.entries.User;
+
+/**
+ * Search local interface.
+ * @author Stanislav Nepochatov
+ */
+@Local
+public interface SearchFacadeLocal {
+    
+    /**
+     * Find notes of user by words in header and text of the latest version.
+     * @param user owner of notes;
+     * @param query search words;
+     * @param limit max count of notes;
+     * @return notes sorted by relevance;
+     */
+    List<Note> search(User user, String query, int limit);
+    
+    /**
+     * Update index after note save.
+     * @param note saved note;
+     * @param text text of the latest version;
+     */
+    void index(Note note, String text);
+    
+    /**
+     * Rebuild whole index from database.
+     */
+    void rebuild();
+    
+}
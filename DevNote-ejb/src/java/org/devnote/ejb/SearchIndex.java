@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.ejb;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJB;
+import javax.ejb.EJBException;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import org.devnote.entries.Note;
+import org.devnote.service.TextIndex;
+
+/**
+ * Application wide full text index of notes.<br/>
+ * <br/>
+ * Index covers header and text of the latest version of every note. 
+ * It's built from database on startup (in background) and then updated 
+ * on every saved version. Rebuild reads notes page by page, latest 
+ * versions of every page are loaded with single query (bypassing cache 
+ * of version texts) and analyzed by separate task of managed executor. Notes saved during rebuild are applied to the new 
+ * index before it replaces the old one.
+ * @author Stanislav Nepochatov
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class SearchIndex {
+    
+    /**
+     * Count of parallel rebuild tasks (system property devnote.search.rebuildThreads).
+     */
+    public static final int REBUILD_THREADS = Integer.getInteger("devnote.search.rebuildThreads", 
+            Runtime.getRuntime().availableProcessors());
+    
+    /**
+     * Rebuild index on application startup (system property devnote.search.rebuildOnStartup).
+     */
+    public static final boolean REBUILD_ON_STARTUP = Boolean.parseBoolean(System.getProperty("devnote.search.rebuildOnStartup", "true"));
+    
+    /**
+     * Count of notes in single rebuild task.
+     */
+    private static final int REBUILD_PAGE_SIZE = 200;
+    
+    /**
+     * Notes ejb facade.
+     */
+    @EJB
+    private NoteFacadeLocal noteBean;
+    
+    /**
+     * Versions ejb facade.
+     */
+    @EJB
+    private VersionFacadeLocal versionBean;
+    
+    /**
+     * Executor of rebuild tasks.
+     */
+    @Resource
+    private ManagedExecutorService executor;
+    
+    /**
+     * Current index.
+     */
+    private volatile TextIndex index = new TextIndex();
+    
+    /**
+     * Notes changed during rebuild (null if there is no rebuild).
+     */
+    private Map<Integer, TextIndex.Document> rebuildLog;
+    
+    /**
+     * Lock of index swap.
+     */
+    private final Object swapLock = new Object();
+    
+    /**
+     * Rebuild in progress flag.
+     */
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+    
+    /**
+     * Start index build.
+     */
+    @PostConstruct
+    public void init() {
+        if (REBUILD_ON_STARTUP) {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    rebuild();
+                }
+            });
+        }
+    }
+    
+    /**
+     * Index saved note.
+     * @param note note with new header;
+     * @param text text of the latest version;
+     */
+    public void update(Note note, String text) {
+        apply(TextIndex.analyze(note.getId(), note.getUserId().getId(), note.getHeader(), text));
+    }
+    
+    /**
+     * Remove note from index.
+     * @param note removed note;
+     */
+    public void remove(Note note) {
+        apply(TextIndex.analyze(note.getId(), note.getUserId().getId(), null, null));
+    }
+    
+    /**
+     * Search notes of user.
+     * @param userId id of user;
+     * @param query search words;
+     * @param limit max count of results;
+     * @return hits sorted by relevance;
+     */
+    public List<TextIndex.Hit> search(Integer userId, String query, int limit) {
+        return index.search(userId, query, limit);
+    }
+    
+    /**
+     * Get count of indexed notes.
+     * @return count of notes;
+     */
+    public int size() {
+        return index.size();
+    }
+    
+    /**
+     * Build new index from database and replace current one. 
+     * Does nothing if rebuild is already running.
+     */
+    public void rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            synchronized (swapLock) {
+                rebuildLog = new ConcurrentHashMap<>();
+            }
+            final TextIndex built = new TextIndex();
+            Deque<Future<?>> tasks = new ArrayDeque<>();
+            Object lastId = null;
+            List<Note> page;
+            while (!(page = noteBean.findPageAfter(lastId, REBUILD_PAGE_SIZE)).isEmpty()) {
+                lastId = page.get(page.size() - 1).getId();
+                final List<Note> notes = page;
+                tasks.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        List<Integer> ids = new ArrayList<>(notes.size());
+                        for (Note current: notes) {
+                            ids.add(current.getId());
+                        }
+                        Map<Integer, String> texts = versionBean.findLatestTexts(ids);
+                        for (Note current: notes) {
+                            built.add(TextIndex.analyze(current.getId(), current.getUserId().getId(), 
+                                    current.getHeader(), texts.get(current.getId())));
+                        }
+                    }
+                }));
+                while (tasks.size() >= REBUILD_THREADS) {
+                    tasks.poll().get();
+                }
+            }
+            for (Future<?> task: tasks) {
+                task.get();
+            }
+            synchronized (swapLock) {
+                for (TextIndex.Document changed: rebuildLog.values()) {
+                    built.add(changed);
+                }
+                index = built;
+            }
+        } catch (InterruptedException | ExecutionException ex) {
+            throw new EJBException(ex);
+        } finally {
+            synchronized (swapLock) {
+                rebuildLog = null;
+            }
+            rebuilding.set(false);
+        }
+    }
+    
+    /**
+     * Apply changed note to current index and rebuild log.
+     */
+    private void apply(TextIndex.Document document) {
+        synchronized (swapLock) {
+            index.add(document);
+            if (rebuildLog != null) {
+                rebuildLog.put(document.getNoteId(), document);
+            }
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.ejb;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJBException;
+import javax.ejb.Singleton;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.persistence.Cacheable;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnit;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.SingularAttribute;
+
+/**
+ * Statistics and invalidation of shared (second level) entity cache.<br/>
+ * <br/>
+ * Entities marked with {@link Cacheable} are kept in shared cache 
+ * of persistence unit with policies declared on entity classes. Facades 
+ * report every lookup by id, so hit ratio of every entity cache is 
+ * available through {@link #getStatistics()} (shown to admins 
+ * at /pages/admin/cache).<br/>
+ * <br/>
+ * Changed and removed entities are evicted after commit together with 
+ * cached entities they refer to: collections of referred entities (e.g. versions of note) 
+ * are cached too and become stale otherwise.<br/>
+ * <br/>
+ * Changes committed through entities are invalidated on other application 
+ * nodes by cache coordination (see persistence.xml). Evictions of this class 
+ * and JDBC writes (login dates, import) are local only, on other nodes such 
+ * entities stay stale until expiry of their cache.
+ * @author Stanislav Nepochatov
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class SharedCache {
+    
+    /**
+     * Entity manager factory of persistence unit.
+     */
+    @PersistenceUnit(unitName = "DevNote-ejbPU")
+    private EntityManagerFactory emf;
+    
+    /**
+     * Marker of uncached entity classes.
+     */
+    private static final Statistics UNCACHED = new Statistics(null);
+    
+    /**
+     * Statistics by entity class.
+     */
+    private final ConcurrentMap<Class<?>, Statistics> statistics = new ConcurrentHashMap<>();
+    
+    /**
+     * Count lookup of entity by id.
+     * @param entityClass class of entity;
+     * @param id id of entity;
+     */
+    public void lookup(Class<?> entityClass, Object id) {
+        Statistics current = getStatistics(entityClass);
+        if (current == null || id == null) {
+            return;
+        }
+        if (emf.getCache().contains(entityClass, id)) {
+            current.hits.incrementAndGet();
+        } else {
+            current.misses.incrementAndGet();
+        }
+    }
+    
+    /**
+     * Evict entity and cached entities it refers to.
+     * @param entity changed or removed entity;
+     */
+    public void invalidate(Object entity) {
+        evict(entity);
+        invalidateReferences(entity);
+    }
+    
+    /**
+     * Evict cached entities which are referred by entity (for created entities).
+     * @param entity created entity;
+     */
+    public void invalidateReferences(Object entity) {
+        for (SingularAttribute<?, ?> attribute: emf.getMetamodel().entity(entity.getClass()).getSingularAttributes()) {
+            if (attribute.isAssociation()) {
+                Object referred = read(attribute.getJavaMember(), entity);
+                if (referred != null) {
+                    evict(referred);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Get statistics of all cached entity classes.
+     * @return list of statistics;
+     */
+    public List<Statistics> getStatistics() {
+        List<Statistics> result = new ArrayList<>();
+        for (EntityType<?> type: emf.getMetamodel().getEntities()) {
+            Statistics current = getStatistics(type.getJavaType());
+            if (current != null) {
+                result.add(current);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Evict single entity if its class is cached.
+     */
+    private void evict(Object entity) {
+        Statistics current = getStatistics(entity.getClass());
+        if (current == null) {
+            return;
+        }
+        Object id = emf.getPersistenceUnitUtil().getIdentifier(entity);
+        if (id != null) {
+            emf.getCache().evict(entity.getClass(), id);
+            current.invalidations.incrementAndGet();
+        }
+    }
+    
+    /**
+     * Get statistics of entity class.
+     * @return statistics or null if entity class isn't cached;
+     */
+    private Statistics getStatistics(Class<?> entityClass) {
+        Statistics current = statistics.get(entityClass);
+        if (current == null) {
+            Cacheable cacheable = entityClass.getAnnotation(Cacheable.class);
+            current = cacheable != null && cacheable.value() ? new Statistics(entityClass.getSimpleName()) : UNCACHED;
+            Statistics previous = statistics.putIfAbsent(entityClass, current);
+            if (previous != null) {
+                current = previous;
+            }
+        }
+        return current != UNCACHED ? current : null;
+    }
+    
+    /**
+     * Read attribute value of entity.
+     */
+    private static Object read(Member member, Object entity) {
+        try {
+            if (member instanceof Field) {
+                Field field = (Field) member;
+                field.setAccessible(true);
+                return field.get(entity);
+            } else if (member instanceof Method) {
+                return ((Method) member).invoke(entity);
+            }
+            return null;
+        } catch (ReflectiveOperationException ex) {
+            throw new EJBException(ex);
+        }
+    }
+    
+    /**
+     * Hit and miss counters of single entity cache.
+     */
+    public static class Statistics {
+        
+        /**
+         * Entity name.
+         */
+        private final String entityName;
+        
+        /**
+         * Count of lookups found in shared cache.
+         */
+        private final AtomicLong hits = new AtomicLong();
+        
+        /**
+         * Count of lookups missed shared cache.
+         */
+        private final AtomicLong misses = new AtomicLong();
+        
+        /**
+         * Count of evicted entities.
+         */
+        private final AtomicLong invalidations = new AtomicLong();
+        
+        /**
+         * Parametrick constructor.
+         * @param entityName name of entity;
+         */
+        Statistics(String entityName) {
+            this.entityName = entityName;
+        }
+        
+        /**
+         * Get entity name.
+         * @return simple name of entity class;
+         */
+        public String getEntityName() {
+            return entityName;
+        }
+        
+        /**
+         * Get count of cache hits.
+         * @return count of lookups found in cache;
+         */
+        public long getHits() {
+            return hits.get();
+        }
+        
+        /**
+         * Get count of cache misses.
+         * @return count of lookups which went to database;
+         */
+        public long getMisses() {
+            return misses.get();
+        }
+        
+        /**
+         * Get count of evictions by facades.
+         * @return count of evicted entities;
+         */
+        public long getInvalidations() {
+            return invalidations.get();
+        }
+        
+        /**
+         * Get share of lookups found in cache.
+         * @return hit ratio from 0 to 1;
+         */
+        public double getHitRatio() {
+            long total = getHits() + getMisses();
+            return total == 0 ? 0 : (double) getHits() / total;
+        }
+
+        @Override
+        public String toString() {
+            return entityName + ": hits=" + getHits() + ", misses=" + getMisses() + ", invalidations=" + getInvalidations();
+        }
+    }
+}
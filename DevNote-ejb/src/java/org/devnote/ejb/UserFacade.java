@@ -18,6 +18,7 @@
 package org.devnote.ejb;
 
 import java.util.Date;
+import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
@@ -37,6 +38,18 @@ public class UserFacade extends AbstractFacade<User> implements UserFacadeLocal
      */
     @PersistenceContext(unitName = "DevNote-ejbPU")
     private EntityManager em;
+    
+    /**
+     * Write-behind storage of login dates.
+     */
+    @EJB
+    private LoginDateWriter loginDateWriter;
+    
+    /**
+     * Cache of login credentials.
+     */
+    @EJB
+    private LoginCache loginCache;
 
     @Override
     protected EntityManager getEntityManager() {
@@ -50,6 +63,38 @@ public class UserFacade extends AbstractFacade<User> implements UserFacadeLocal
         super(User.class);
     }
 
+    @Override
+    public void create(User user) {
+        super.create(user);
+        invalidateAfterCommit(user);
+    }
+
+    @Override
+    public void edit(User user) {
+        super.edit(user);
+        invalidateAfterCommit(user);
+    }
+
+    @Override
+    public void remove(User user) {
+        super.remove(user);
+        invalidateAfterCommit(user);
+    }
+
+    /**
+     * Drop cached login of user after commit of current transaction, 
+     * so other logins can't cache old password or flags again before commit.
+     * @param user changed user;
+     */
+    private void invalidateAfterCommit(final User user) {
+        afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                loginCache.invalidate(user);
+            }
+        });
+    }
+
     @Override
     public User findByLogin(String login) {
         EntityManager em = this.getEntityManager();
@@ -62,10 +107,36 @@ public class UserFacade extends AbstractFacade<User> implements UserFacadeLocal
         }
     }
 
+    @Override
+    public User authenticate(String login, String passw) {
+        if (login == null || passw == null) {
+            return null;
+        }
+        LoginCache.Entry entry = loginCache.get(login);
+        if (entry == null) {
+            if (loginCache.isMissing(login)) {
+                return null;
+            }
+            long generation = loginCache.getGeneration();
+            User findedUser = findByLogin(login);
+            if (findedUser == null) {
+                loginCache.putMissing(login, generation);
+                return null;
+            }
+            loginCache.put(login, findedUser, generation);
+            return login.equals(findedUser.getLogin()) && passw.equals(findedUser.getPassw()) ? findedUser : null;
+        }
+        if (!login.equals(entry.getLogin()) || !passw.equals(entry.getPassw())) {
+            return null;
+        }
+        return find(entry.getId());
+    }
+
     @Override
     public void performLogin(User logined) {
-        logined.setLogDate(new Date());
-        this.edit(logined);
+        Date now = new Date();
+        logined.setLogDate(now);
+        loginDateWriter.record(logined.getId(), now);
     }
     
 }
@@ -40,9 +40,21 @@ public interface UserFacadeLocal {
 
     List<User> findAll();
 
+    void visitAll(EntityVisitor<User> visitor);
+
     List<User> findRange(int[] range);
 
     int count();
+
+    int countApproximate();
+
+    List<User> findPageAfter(Object lastId, int pageSize);
+
+    List<User> findPageBefore(Object firstId, int pageSize);
+
+    List<User> findPageAfter(String sortAttribute, Object lastKey, Object lastId, int pageSize);
+
+    List<User> findPageBefore(String sortAttribute, Object firstKey, Object firstId, int pageSize);
     
     // My methods
     
@@ -54,7 +66,17 @@ public interface UserFacadeLocal {
     public User findByLogin(String login);
     
     /**
-     * Update user infromation during login.
+     * Check login and password of user. Credentials are taken from 
+     * {@link LoginCache}, so only successful login loads user entity.
+     * @param login user name;
+     * @param passw hash of password;
+     * @return user or null if login or password is wrong;
+     */
+    public User authenticate(String login, String passw);
+    
+    /**
+     * Update user infromation during login. 
+     * Login date is written to database later by {@link LoginDateWriter}.
      * @param logined user which enters to the system;
      */
     public void performLogin(User logined);
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.ejb;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import org.devnote.service.TinyLfuCache;
+
+/**
+ * Application wide cache of version texts.<br/>
+ * <br/>
+ * Versions aren't changed after creation, so texts are keyed by version 
+ * id and never become stale. Cache is bounded by memory size of texts 
+ * and uses W-TinyLFU admission, so texts of popular notes are kept 
+ * for all sessions and rare reads of old versions don't evict them.
+ * @author Stanislav Nepochatov
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class VersionBodyCache {
+    
+    /**
+     * Max memory size of cached texts in bytes (system property devnote.bodyCache.maxBytes).
+     */
+    public static final long MAX_BYTES = Long.getLong("devnote.bodyCache.maxBytes", 67108864L);
+    
+    /**
+     * Expected average size of text in bytes, used for frequency sketch size.
+     */
+    private static final int AVERAGE_BYTES = 16384;
+    
+    /**
+     * Memory size of string besides its chars.
+     */
+    private static final int STRING_OVERHEAD = 64;
+    
+    /**
+     * Texts by version id.
+     */
+    private final TinyLfuCache<Integer, String> texts = new TinyLfuCache<>(MAX_BYTES, 
+            (int) Math.min(Integer.MAX_VALUE, MAX_BYTES / AVERAGE_BYTES), new TinyLfuCache.Weigher<String>() {
+                @Override
+                public long weigh(String value) {
+                    return STRING_OVERHEAD + 2L * value.length();
+                }
+            });
+    
+    /**
+     * Get cached text.
+     * @param versionId id of version;
+     * @return text or null;
+     */
+    public String get(Integer versionId) {
+        return texts.get(versionId);
+    }
+    
+    /**
+     * Offer text of version to cache.
+     * @param versionId id of version;
+     * @param text text of version;
+     */
+    public void put(Integer versionId, String text) {
+        if (versionId != null && text != null) {
+            texts.put(versionId, text);
+        }
+    }
+    
+    /**
+     * Get count of lookups which found text.
+     * @return count of hits;
+     */
+    public long getHits() {
+        return texts.getHits();
+    }
+    
+    /**
+     * Get count of lookups which went to database.
+     * @return count of misses;
+     */
+    public long getMisses() {
+        return texts.getMisses();
+    }
+}
@@ -17,10 +17,30 @@
 
 package org.devnote.ejb;
 
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.ejb.EJB;
 import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.persistence.CacheStoreMode;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.QueryHints;
+import org.devnote.entries.Content;
+import org.devnote.entries.Note;
+import org.devnote.entries.User;
 import org.devnote.entries.Version;
+import org.devnote.entries.VersionInfo;
+import org.devnote.service.Delta;
+import org.devnote.service.TextDiff;
 
 /**
  * Version faced.
@@ -29,11 +49,40 @@ import org.devnote.entries.Version;
 @Stateless
 public class VersionFacade extends AbstractFacade<Version> implements VersionFacadeLocal {
     
+    /**
+     * Max count of versions in delta chain including snapshot 
+     * (system property devnote.version.snapshotInterval).
+     */
+    public static final int SNAPSHOT_INTERVAL = Integer.getInteger("devnote.version.snapshotInterval", 20);
+    
+    /**
+     * Charset of delta content.
+     */
+    private static final Charset CHARSET = StandardCharsets.UTF_8;
+    
     /**
      * Entity manager.
      */
     @PersistenceContext(unitName = "DevNote-ejbPU")
     private EntityManager em;
+    
+    /**
+     * Shared content facade.
+     */
+    @EJB
+    private ContentFacadeLocal contentBean;
+    
+    /**
+     * Cache of computed diffs.
+     */
+    @EJB
+    private DiffCache diffCache;
+    
+    /**
+     * Cache of version texts.
+     */
+    @EJB
+    private VersionBodyCache bodyCache;
 
     @Override
     protected EntityManager getEntityManager() {
@@ -46,5 +95,330 @@ public class VersionFacade extends AbstractFacade<Version> implements VersionFac
     public VersionFacade() {
         super(Version.class);
     }
+
+
+    /**
+     * Create version. If there is content with the same hash and text, version 
+     * just refers to it and text isn't written at all. Otherwise version stored 
+     * as delta against last version of the note if delta chain isn't 
+     * too long and delta is smaller than text, or as new shared content. 
+     * If other text already has the same hash, text is stored inline. 
+     * Text is cached after commit when version id is known.
+     * @param version version with full text to create;
+     */
+    @Override
+    public void create(final Version version) {
+        final String text = version.getNoteText();
+        if (text != null) {
+            version.setTextSize(text.length());
+        }
+        if (version.isSnapshot() && version.getContentId() == null && version.getNoteText() != null) {
+            Content shared = contentBean.acquireExisting(version.getHash(), version.getNoteText());
+            if (shared == null && !storeAsDelta(version)) {
+                shared = contentBean.acquire(version.getHash(), version.getNoteText());
+            }
+            if (shared != null) {
+                version.storeAsContent(shared);
+            }
+        }
+        super.create(version);
+        afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                bodyCache.put(version.getId(), text);
+            }
+        });
+    }
+
+    /**
+     * Remove version and release its shared content. Deltas based on 
+     * this version are turned into snapshots before removal, 
+     * so the rest of their chains stay restorable.
+     * @param version version to remove;
+     */
+    @Override
+    public void remove(Version version) {
+        TypedQuery<Version> tr = em.createNamedQuery("Version.findDependents", Version.class);
+        tr.setParameter("noteId", version.getNoteId());
+        tr.setParameter("id", version.getId());
+        for (Version dependent: tr.getResultList()) {
+            storeAsSnapshot(dependent);
+        }
+        Content content = version.getContentId();
+        super.remove(version);
+        if (content != null) {
+            contentBean.release(content);
+        }
+    }
+
+    @Override
+    public Version openNote(Object noteId) {
+        TypedQuery<Version> tr = em.createNamedQuery("Version.openNote", Version.class);
+        tr.setHint(QueryHints.FETCH_GROUP_DEFAULT, HintValues.FALSE);
+        tr.setParameter("noteId", noteId);
+        List<Version> found = tr.getResultList();
+        if (found.isEmpty()) {
+            return null;
+        }
+        Version latest = found.get(0);
+        String cached = bodyCache.get(latest.getId());
+        if (cached != null) {
+            latest.setRestoredText(cached);
+            return latest;
+        }
+        if (!latest.isSnapshot() && latest.getNoteText() == null) {
+            restoreText(latest);
+        }
+        bodyCache.put(latest.getId(), latest.getNoteText());
+        return latest;
+    }
+
+    @Override
+    public Map<Integer, String> findLatestTexts(List<Integer> noteIds) {
+        Map<Integer, String> texts = new HashMap<>();
+        if (noteIds.isEmpty()) {
+            return texts;
+        }
+        TypedQuery<Version> tr = em.createNamedQuery("Version.findLatestOfNotes", Version.class);
+        tr.setHint(QueryHints.FETCH_GROUP_DEFAULT, HintValues.FALSE);
+        tr.setHint("javax.persistence.cache.storeMode", CacheStoreMode.BYPASS);
+        tr.setParameter("noteIds", noteIds);
+        for (Version latest: tr.getResultList()) {
+            if (!latest.isSnapshot() && latest.getNoteText() == null) {
+                restoreText(latest);
+            }
+            texts.put(latest.getNoteId().getId(), latest.getNoteText());
+        }
+        return texts;
+    }
+
+    @Override
+    public Version findForReading(VersionInfo info) {
+        String text = bodyCache.get(info.getId());
+        if (text != null) {
+            Version cached = new Version(info.getId(), info.getHash(), info.getSaveDate(), null);
+            cached.setTextSize(info.getTextSize());
+            cached.setRestoredText(text);
+            return cached;
+        }
+        Version found = find(info.getId());
+        if (found != null) {
+            bodyCache.put(found.getId(), found.getNoteText());
+        }
+        return found;
+    }
+
+    @Override
+    public List<VersionInfo> findHistory(Note note) {
+        TypedQuery<VersionInfo> tr = em.createNamedQuery("Version.findHistory", VersionInfo.class);
+        tr.setParameter("noteId", note);
+        return tr.getResultList();
+    }
+
+    @Override
+    public List<TextDiff.Edit> diff(Version versionA, Version versionB) {
+        return diff(versionA, versionB, TextDiff.Granularity.LINE);
+    }
+
+    @Override
+    public List<TextDiff.Edit> diff(Version versionA, Version versionB, TextDiff.Granularity granularity) {
+        if (versionA.getId() == null || versionB.getId() == null) {
+            return TextDiff.diff(loadText(versionA), loadText(versionB), granularity);
+        }
+        String key = DiffCache.key(versionA.getId(), versionB.getId(), granularity);
+        List<TextDiff.Edit> cached = diffCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        return diffCache.put(key, TextDiff.diff(loadText(versionA), loadText(versionB), granularity));
+    }
+
+    /**
+     * Visit versions for export. Delta is applied to text of its base 
+     * if base was visited since the latest snapshot of the same note, 
+     * otherwise delta chain is loaded from database. So at most 
+     * SNAPSHOT_INTERVAL texts are kept in memory. Versions are readed through 
+     * cursor of own entity manager outside of transaction.
+     * @param user owner of notes;
+     * @param since only versions saved after this date or null for all versions;
+     * @param visitor callback for every version;
+     */
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void visitForExport(User user, Date since, final EntityVisitor<Version> visitor) {
+        EntityManager reader = createReader();
+        try {
+            visitForExport(reader, user, since, visitor);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Visit versions for export through cursor of entity manager.
+     * @param reader entity manager outside of transaction;
+     * @param user owner of notes;
+     * @param since only versions saved after this date or null for all versions;
+     * @param visitor callback for every version;
+     */
+    private void visitForExport(EntityManager reader, User user, Date since, final EntityVisitor<Version> visitor) {
+        Query query = reader.createNamedQuery("Version.findForExport");
+        query.setHint(QueryHints.FETCH_GROUP_DEFAULT, HintValues.FALSE);
+        query.setHint(QueryHints.FETCH, "v.noteId.dirId");
+        query.setParameter("userId", user);
+        query.setParameter("since", since != null ? since : new Date(0));
+        visitQuery(query, reader, new EntityVisitor<Version>() {
+            
+            /**
+             * Texts of visited versions of current note since its latest snapshot.
+             */
+            private final Map<Integer, String> chainTexts = new HashMap<>();
+            
+            /**
+             * Id of current note.
+             */
+            private Integer noteId;
+            
+            @Override
+            public void visit(Version version) {
+                if (!version.getNoteId().getId().equals(noteId) || version.isSnapshot()) {
+                    chainTexts.clear();
+                    noteId = version.getNoteId().getId();
+                }
+                if (!version.isSnapshot() && version.getNoteText() == null) {
+                    String base = chainTexts.get(version.getBaseVersionId());
+                    if (base != null) {
+                        version.setRestoredText(new String(Delta.apply(base.getBytes(CHARSET), version.getNoteDelta()), CHARSET));
+                    } else {
+                        restoreText(version);
+                    }
+                }
+                chainTexts.put(version.getId(), version.getNoteText());
+                visitor.visit(version);
+            }
+        });
+    }
+
+    /**
+     * Load text of version by its id.
+     * @param version version to load;
+     * @return text of version;
+     */
+    private String loadText(Version version) {
+        if (version.getId() == null) {
+            return version.getNoteText();
+        }
+        String text = bodyCache.get(version.getId());
+        if (text != null) {
+            return text;
+        }
+        Version found = find(version.getId());
+        if (found == null) {
+            throw new IllegalArgumentException("There is no version " + version.getId());
+        }
+        bodyCache.put(found.getId(), found.getNoteText());
+        return found.getNoteText();
+    }
+
+    /**
+     * Try to store version as delta against last version of the note.
+     * @param version version with full text;
+     * @return true if version turned into delta;
+     */
+    private boolean storeAsDelta(Version version) {
+        Version base = version.getNoteId() != null ? version.getNoteId().getLastVersionId() : null;
+        if (base == null) {
+            return false;
+        }
+        base = find(base.getId());
+        if (base == null || base.getChainLength() + 1 >= SNAPSHOT_INTERVAL) {
+            return false;
+        }
+        byte[] target = version.getNoteText().getBytes(CHARSET);
+        byte[] delta = Delta.encode(base.getNoteText().getBytes(CHARSET), target);
+        if (delta.length >= target.length) {
+            return false;
+        }
+        version.storeAsDelta(delta, base);
+        return true;
+    }
+
+    /**
+     * Turn delta version into snapshot and move deltas based on it 
+     * to the new chain which starts from it.
+     * @param delta delta version;
+     */
+    private void storeAsSnapshot(Version delta) {
+        Integer snapshotId = delta.getSnapshotVersionId();
+        int chainLength = delta.getChainLength();
+        if (delta.getNoteText() == null) {
+            restoreText(delta);
+        }
+        String text = delta.getNoteText();
+        Content shared = contentBean.acquire(delta.getHash(), text);
+        if (shared != null) {
+            delta.storeAsContent(shared);
+        } else {
+            delta.setNoteText(text);
+        }
+        TypedQuery<Version> tr = em.createNamedQuery("Version.findChainTail", Version.class);
+        tr.setHint(QueryHints.FETCH_GROUP_DEFAULT, HintValues.FALSE);
+        tr.setParameter("noteId", delta.getNoteId());
+        tr.setParameter("snapshotId", snapshotId);
+        tr.setParameter("chainLength", chainLength);
+        for (Version tail: tr.getResultList()) {
+            tail.moveToChain(delta, chainLength);
+        }
+    }
+
+    /**
+     * Find version and restore its text if version is delta.
+     * @param id unique id of version;
+     * @return finded version;
+     */
+    @Override
+    public Version find(Object id) {
+        Version found = super.find(id);
+        if (found != null && !found.isSnapshot() && found.getNoteText() == null) {
+            restoreText(found);
+        }
+        return found;
+    }
+
+    /**
+     * Restore text of delta version. Whole chain from snapshot 
+     * loaded by single query, so at most SNAPSHOT_INTERVAL - 1 deltas applied.
+     * @param version delta version;
+     */
+    private void restoreText(Version version) {
+        TypedQuery<Version> tr = em.createNamedQuery("Version.findChain", Version.class);
+        tr.setHint(QueryHints.FETCH_GROUP_DEFAULT, HintValues.FALSE);
+        tr.setParameter("noteId", version.getNoteId());
+        tr.setParameter("snapshotId", version.getSnapshotVersionId());
+        tr.setParameter("id", version.getId());
+        Map<Integer, Version> chainMap = new HashMap<>();
+        for (Version current: tr.getResultList()) {
+            chainMap.put(current.getId(), current);
+        }
+        
+        Version[] chain = new Version[version.getChainLength()];
+        Version current = version;
+        for (int i = chain.length - 1; i >= 0; i--) {
+            chain[i] = current;
+            current = chainMap.get(current.getBaseVersionId());
+            if (current == null) {
+                throw new IllegalStateException("Broken delta chain for version " + version.getId());
+            }
+        }
+        if (!current.isSnapshot()) {
+            throw new IllegalStateException("Delta chain of version " + version.getId() + " doesn't start with snapshot");
+        }
+        
+        byte[] text = current.getNoteText().getBytes(CHARSET);
+        for (Version delta: chain) {
+            text = Delta.apply(text, delta.getNoteDelta());
+        }
+        version.setRestoredText(new String(text, CHARSET));
+    }
     
 }
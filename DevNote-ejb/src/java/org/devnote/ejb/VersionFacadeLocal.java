@@ -17,9 +17,15 @@
 
 package org.devnote.ejb;
 
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import javax.ejb.Local;
+import org.devnote.entries.Note;
+import org.devnote.entries.User;
 import org.devnote.entries.Version;
+import org.devnote.entries.VersionInfo;
+import org.devnote.service.TextDiff;
 
 /**
  * Version local interface.
@@ -40,8 +46,84 @@ public interface VersionFacadeLocal {
 
     List<Version> findAll();
 
+    void visitAll(EntityVisitor<Version> visitor);
+
     List<Version> findRange(int[] range);
 
     int count();
+
+    int countApproximate();
+
+    List<Version> findPageAfter(Object lastId, int pageSize);
+
+    List<Version> findPageBefore(Object firstId, int pageSize);
+
+    List<Version> findPageAfter(String sortAttribute, Object lastKey, Object lastId, int pageSize);
+
+    List<Version> findPageBefore(String sortAttribute, Object firstKey, Object firstId, int pageSize);
+    
+    // My methods
+    
+    /**
+     * Open note for reading: load note header and text of its last version 
+     * (using Note.lastVersionId pointer) without loading other versions.
+     * @param noteId id of the note;
+     * @return last version with text, note available through {@link Version#getNoteId()}, 
+     * or null if there is no such note;
+     */
+    Version openNote(Object noteId);
+    
+    /**
+     * Load texts of the latest versions of notes with single query 
+     * (for index rebuild). Texts aren't put to cache of version texts 
+     * and loaded versions aren't stored in shared entity cache.
+     * @param noteIds ids of notes;
+     * @return texts by note id, notes without versions are missing;
+     */
+    Map<Integer, String> findLatestTexts(List<Integer> noteIds);
+    
+    /**
+     * Find metadata of all versions of the note without loading texts.
+     * @param note note to search;
+     * @return list of version metadata sorted by creation order;
+     */
+    List<VersionInfo> findHistory(Note note);
+    
+    /**
+     * Find version for reading its text. Text is taken from application 
+     * wide cache of version texts if possible, then version isn't loaded 
+     * from database at all and contains only id, hash, save date, size and text.
+     * @param info metadata of version from history;
+     * @return version with text or null if there is no such version;
+     */
+    Version findForReading(VersionInfo info);
+    
+    /**
+     * Compare texts of two versions line by line. Computed diffs are 
+     * cached by version ids, so texts are loaded only once.
+     * @param versionA base version;
+     * @param versionB target version;
+     * @return list of equal, deleted and inserted ranges;
+     */
+    List<TextDiff.Edit> diff(Version versionA, Version versionB);
+    
+    /**
+     * Compare texts of two versions.
+     * @param versionA base version;
+     * @param versionB target version;
+     * @param granularity lines or words;
+     * @return list of equal, deleted and inserted ranges;
+     */
+    List<TextDiff.Edit> diff(Version versionA, Version versionB, TextDiff.Granularity granularity);
+    
+    /**
+     * Visit versions of all notes of user through the database cursor 
+     * for export. Versions are sorted by note and creation order, 
+     * texts of delta versions are restored, notes come with their directories.
+     * @param user owner of notes;
+     * @param since only versions saved after this date or null for all versions;
+     * @param visitor callback for every version;
+     */
+    void visitForExport(User user, Date since, EntityVisitor<Version> visitor);
     
 }
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.entries;
+
+import java.io.Serializable;
+import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.Convert;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+
+/**
+ * Content entity.<br/>
+ * <br/>
+ * Content contains full text of note addressed by its hash. 
+ * Versions with equal text share single content row, 
+ * reference counter shows how many versions use this content.
+ * @see Version
+ * @author Stanislav Nepochatov
+ */
+@Entity
+@Table(name = "Content")
+@NamedQueries({
+    @NamedQuery(name = "Content.findByHash", query = "SELECT c FROM Content c WHERE c.hash = :hash"),
+    @NamedQuery(name = "Content.acquire", query = "UPDATE Content c SET c.refCount = c.refCount + 1 WHERE c.id = :id"),
+    @NamedQuery(name = "Content.release", query = "UPDATE Content c SET c.refCount = c.refCount - 1 WHERE c.id = :id"),
+    @NamedQuery(name = "Content.removeUnused", query = "DELETE FROM Content c WHERE c.id = :id AND c.refCount <= 0"),
+    @NamedQuery(name = "Content.releaseCount", query = "UPDATE Content c SET c.refCount = c.refCount - :count WHERE c.id = :id"),
+    @NamedQuery(name = "Content.removeUnusedIn", query = "DELETE FROM Content c WHERE c.id IN :ids AND c.refCount <= 0"),
+    @NamedQuery(name = "Content.removeOrphans", query = "DELETE FROM Content c WHERE NOT EXISTS (SELECT v.id FROM Version v WHERE v.contentId = c)")})
+public class Content implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * Entity id.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Basic(optional = false)
+    @Column(name = "id")
+    private Integer id;
+    
+    /**
+     * Hash of the text (same as hash of version).
+     */
+    @Basic(optional = false)
+    @NotNull
+    @Size(min = 1, max = 80)
+    @Column(name = "hash")
+    private String hash;
+    
+    /**
+     * Full text of note (compressed in database).
+     */
+    @Basic(optional = false)
+    @NotNull
+    @Size(min = 1, max = 16777215)
+    @Column(name = "note_text")
+    @Convert(converter = CompressedTextConverter.class)
+    private String noteText;
+    
+    /**
+     * Count of versions which use this content.
+     */
+    @Basic(optional = false)
+    @NotNull
+    @Column(name = "ref_count")
+    private int refCount;
+
+    /**
+     * Default constructor.
+     */
+    public Content() {
+    }
+
+    /**
+     * Parametrick constructor.
+     * @param hash text hash;
+     * @param noteText full text;
+     */
+    public Content(String hash, String noteText) {
+        this.hash = hash;
+        this.noteText = noteText;
+        this.refCount = 1;
+    }
+
+    /**
+     * Get entity id.
+     * @return id entity id;
+     */
+    public Integer getId() {
+        return id;
+    }
+
+    /**
+     * Set entity id.
+     * @param id entity id to set;
+     */
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    /**
+     * Get content hash.
+     * @return hash of text;
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * Set content hash.
+     * @param hash hash to set;
+     */
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    /**
+     * Get full text.
+     * @return string with text;
+     */
+    public String getNoteText() {
+        return noteText;
+    }
+
+    /**
+     * Set full text. Content should be immutable after creation.
+     * @param noteText text to set;
+     */
+    public void setNoteText(String noteText) {
+        this.noteText = noteText;
+    }
+
+    /**
+     * Get count of versions which use this content.
+     * @return reference count;
+     */
+    public int getRefCount() {
+        return refCount;
+    }
+
+    /**
+     * Set reference count.
+     * @param refCount count to set;
+     */
+    public void setRefCount(int refCount) {
+        this.refCount = refCount;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        hash += (id != null ? id.hashCode() : 0);
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof Content)) {
+            return false;
+        }
+        Content other = (Content) object;
+        if ((this.id == null && other.id != null) || (this.id != null && !this.id.equals(other.id))) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "org.devnote.entries.Content[ id=" + id + " ]";
+    }
+    
+}
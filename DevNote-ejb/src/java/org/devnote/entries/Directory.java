@@ -20,6 +20,7 @@ package org.devnote.entries;
 import java.io.Serializable;
 import java.util.List;
 import javax.persistence.Basic;
+import javax.persistence.Cacheable;
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
@@ -34,23 +35,35 @@ import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
+import javax.persistence.Transient;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
+import org.eclipse.persistence.annotations.Cache;
+import org.eclipse.persistence.annotations.CacheCoordinationType;
+import org.eclipse.persistence.annotations.CacheType;
 
 /**
  * Directory entity.<br/>
  * <br/>
  * Directory contains notes and may contain other directories, 
- * Directory linked to the single user.
+ * Directory linked to the single user.<br/>
+ * <br/>
+ * Directories are cached in shared cache: bounded set of recently used 
+ * directories, expired after 10 minutes.
  * @author Stanislav Nepochatov
  * @since DevNote 0.1
  */
 @Entity
+@Cacheable(true)
+@Cache(type = CacheType.SOFT_WEAK, size = 10000, expiry = 600000, coordinationType = CacheCoordinationType.INVALIDATE_CHANGED_OBJECTS)
 @Table(name = "Directory")
 @NamedQueries({
     @NamedQuery(name = "Directory.findAll", query = "SELECT d FROM Directory d"),
     @NamedQuery(name = "Directory.findAllSortPath", query = "SELECT d FROM Directory d WHERE d.userId = :userId ORDER BY d.path"),
-    @NamedQuery(name = "Directory.findById", query = "SELECT d FROM Directory d WHERE d.id = :id")})
+    @NamedQuery(name = "Directory.findById", query = "SELECT d FROM Directory d WHERE d.id = :id"),
+    @NamedQuery(name = "Directory.findByUserPath", query = "SELECT d FROM Directory d WHERE d.userId = :userId AND d.path = :path"),
+    @NamedQuery(name = "Directory.findByPathLike", query = "SELECT d FROM Directory d WHERE d.userId = :userId AND d.path LIKE :pattern ESCAPE '\\' AND d.path NOT LIKE :deepPattern ESCAPE '\\' ORDER BY d.path"),
+    @NamedQuery(name = "Directory.findPathsLike", query = "SELECT d.path FROM Directory d WHERE d.userId = :userId AND d.path LIKE :pattern ESCAPE '\\' AND d.path NOT LIKE :deepPattern ESCAPE '\\'")})
 public class Directory implements Serializable {
     
     private static final long serialVersionUID = 1L;
@@ -92,6 +105,14 @@ public class Directory implements Serializable {
     @JoinColumn(name = "user_id", referencedColumnName = "id")
     @ManyToOne(optional = false)
     private User userId;
+    
+    /**
+     * Segment model of path, published as single immutable object, 
+     * so concurrent readers of shared directory never see half parsed model.<br/>
+     * Path is compared by reference, so model is rebuilt after setPath or field injection by provider.
+     */
+    @Transient
+    private transient volatile PathModel pathModel;
 
     /**
      * Default constructor.
@@ -147,6 +168,7 @@ public class Directory implements Serializable {
      */
     public void setPath(String path) {
         this.path = path;
+        this.pathModel = null;
     }
 
     /**
@@ -213,21 +235,7 @@ public class Directory implements Serializable {
      * @return parent name or empty string if parent is root;
      */
     public String getParentFullPath() {
-        int dotIndex = -1;
-        int beginIndex = 0;
-        
-        for (int runIndex = 0; runIndex < path.length(); runIndex++) {
-            char curr = path.charAt(runIndex);
-            if (curr == '.') {
-                dotIndex = runIndex;
-            }
-        }
-        
-        if (dotIndex > 0) {
-            return path.substring(beginIndex, dotIndex);
-        } else {
-            return "";
-        }
+        return parsePath().parentFullPath;
     }
     
     /**
@@ -237,19 +245,107 @@ public class Directory implements Serializable {
      * will return only 'Test3'
      */
     public String getShortName() {
-        int dotIndex = -1;
-        
-        for (int runIndex = 0; runIndex < path.length(); runIndex++) {
-            char curr = path.charAt(runIndex);
-            if (curr == '.') {
-                dotIndex = runIndex;
-            }
+        return parsePath().shortName;
+    }
+    
+    /**
+     * Get count of path segments.<br/>
+     * <b>Covered by unit test.</b>
+     * @return count of segments, for example 3 for 'Test1.Test2.Test3';
+     */
+    public int getSegmentCount() {
+        return parsePath().dotOffsets.length + 1;
+    }
+    
+    /**
+     * Get start offset of path segment.<br/>
+     * <b>Covered by unit test.</b>
+     * @param index index of segment (from 0);
+     * @return index of first char of segment in path;
+     */
+    public int getSegmentStart(int index) {
+        return index == 0 ? 0 : parsePath().dotOffsets[index - 1] + 1;
+    }
+    
+    /**
+     * Get end offset of path segment.<br/>
+     * <b>Covered by unit test.</b>
+     * @param index index of segment (from 0);
+     * @return index after last char of segment in path;
+     */
+    public int getSegmentEnd(int index) {
+        PathModel model = parsePath();
+        return index == model.dotOffsets.length ? model.path.length() : model.dotOffsets[index];
+    }
+    
+    /**
+     * Parse path into segment model once per path value.
+     * @return segment model of current path;
+     */
+    private PathModel parsePath() {
+        String currentPath = path;
+        PathModel model = pathModel;
+        if (model != null && model.path == currentPath) {
+            return model;
         }
+        model = new PathModel(currentPath);
+        pathModel = model;
+        return model;
+    }
+    
+    /**
+     * Immutable segment model of directory path.
+     */
+    private static final class PathModel {
+        
+        /**
+         * Path which model was parsed from.
+         */
+        private final String path;
+        
+        /**
+         * Offsets of segment separators (dots) in path.
+         */
+        private final int[] dotOffsets;
         
-        if (dotIndex > 0) {
-            return path.substring(dotIndex + 1);
-        } else {
-            return path;
+        /**
+         * Full path of parent directory.
+         */
+        private final String parentFullPath;
+        
+        /**
+         * Short name of directory.
+         */
+        private final String shortName;
+        
+        /**
+         * Parametrick constructor.
+         * @param path path to parse;
+         */
+        PathModel(String path) {
+            int dotCount = 0;
+            for (int runIndex = 0; runIndex < path.length(); runIndex++) {
+                if (path.charAt(runIndex) == '.') {
+                    dotCount++;
+                }
+            }
+            int[] offsets = new int[dotCount];
+            int dotIndex = 0;
+            for (int runIndex = 0; runIndex < path.length(); runIndex++) {
+                if (path.charAt(runIndex) == '.') {
+                    offsets[dotIndex++] = runIndex;
+                }
+            }
+            int lastDot = dotCount > 0 ? offsets[dotCount - 1] : -1;
+            if (lastDot > 0) {
+                this.parentFullPath = path.substring(0, lastDot);
+                this.shortName = path.substring(lastDot + 1);
+            } else {
+                this.parentFullPath = "";
+                this.shortName = path;
+            }
+            this.path = path;
+            this.dotOffsets = offsets;
         }
     }
 }
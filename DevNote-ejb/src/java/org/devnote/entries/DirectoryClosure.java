@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.entries;
+
+import java.io.Serializable;
+import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Directory closure entity.<br/>
+ * <br/>
+ * Closure table contains a row for every (ancestor, descendant) pair of 
+ * directory hierarchy including (directory, directory) pair with zero depth. 
+ * It's an indexed copy of hierarchy encoded in directory path, maintained by 
+ * {@link org.devnote.ejb.DirectoryFacade}.
+ * @see Directory
+ * @author Stanislav Nepochatov
+ */
+@Entity
+@Table(name = "DirectoryClosure")
+@IdClass(DirectoryClosurePK.class)
+@NamedQueries({
+    @NamedQuery(name = "DirectoryClosure.findDescendants", query = "SELECT d FROM Directory d, DirectoryClosure c WHERE c.descendantId = d.id AND c.ancestorId = :id AND c.depth > 0 ORDER BY d.path"),
+    @NamedQuery(name = "DirectoryClosure.findAncestors", query = "SELECT d FROM Directory d, DirectoryClosure c WHERE c.ancestorId = d.id AND c.descendantId = :id AND c.depth > 0 ORDER BY c.depth DESC"),
+    @NamedQuery(name = "DirectoryClosure.countSubtreeNotes", query = "SELECT COUNT(n) FROM Note n, DirectoryClosure c WHERE n.dirId.id = c.descendantId AND c.ancestorId = :id"),
+    @NamedQuery(name = "DirectoryClosure.removeDirectory", query = "DELETE FROM DirectoryClosure c WHERE c.ancestorId = :id OR c.descendantId = :id")})
+public class DirectoryClosure implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * Id of ancestor directory.
+     */
+    @Id
+    @Basic(optional = false)
+    @NotNull
+    @Column(name = "ancestor_id")
+    private Integer ancestorId;
+    
+    /**
+     * Id of descendant directory.
+     */
+    @Id
+    @Basic(optional = false)
+    @NotNull
+    @Column(name = "descendant_id")
+    private Integer descendantId;
+    
+    /**
+     * Count of levels between ancestor and descendant.
+     */
+    @Basic(optional = false)
+    @NotNull
+    @Column(name = "depth")
+    private int depth;
+
+    /**
+     * Default constructor.
+     */
+    public DirectoryClosure() {
+    }
+
+    /**
+     * Parametrick constructor.
+     * @param ancestorId id of ancestor directory;
+     * @param descendantId id of descendant directory;
+     * @param depth count of levels between directories;
+     */
+    public DirectoryClosure(Integer ancestorId, Integer descendantId, int depth) {
+        this.ancestorId = ancestorId;
+        this.descendantId = descendantId;
+        this.depth = depth;
+    }
+
+    /**
+     * Get id of ancestor directory.
+     * @return directory id;
+     */
+    public Integer getAncestorId() {
+        return ancestorId;
+    }
+
+    /**
+     * Get id of descendant directory.
+     * @return directory id;
+     */
+    public Integer getDescendantId() {
+        return descendantId;
+    }
+
+    /**
+     * Get count of levels between ancestor and descendant.
+     * @return depth (0 for directory itself);
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public int hashCode() {
+        return new DirectoryClosurePK(ancestorId, descendantId).hashCode();
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof DirectoryClosure)) {
+            return false;
+        }
+        DirectoryClosure other = (DirectoryClosure) object;
+        return new DirectoryClosurePK(ancestorId, descendantId).equals(new DirectoryClosurePK(other.ancestorId, other.descendantId));
+    }
+
+    @Override
+    public String toString() {
+        return "org.devnote.entries.DirectoryClosure[ ancestorId=" + ancestorId + ", descendantId=" + descendantId + " ]";
+    }
+    
+}
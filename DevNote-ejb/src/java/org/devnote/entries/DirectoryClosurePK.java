@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.entries;
+
+import java.io.Serializable;
+
+/**
+ * Primary key of directory closure entity.
+ * @see DirectoryClosure
+ * @author Stanislav Nepochatov
+ */
+public class DirectoryClosurePK implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * Id of ancestor directory.
+     */
+    private Integer ancestorId;
+    
+    /**
+     * Id of descendant directory.
+     */
+    private Integer descendantId;
+
+    /**
+     * Default constructor.
+     */
+    public DirectoryClosurePK() {
+    }
+
+    /**
+     * Parametrick constructor.
+     * @param ancestorId id of ancestor directory;
+     * @param descendantId id of descendant directory;
+     */
+    public DirectoryClosurePK(Integer ancestorId, Integer descendantId) {
+        this.ancestorId = ancestorId;
+        this.descendantId = descendantId;
+    }
+
+    /**
+     * Get id of ancestor directory.
+     * @return directory id;
+     */
+    public Integer getAncestorId() {
+        return ancestorId;
+    }
+
+    /**
+     * Get id of descendant directory.
+     * @return directory id;
+     */
+    public Integer getDescendantId() {
+        return descendantId;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        hash += (ancestorId != null ? ancestorId.hashCode() : 0);
+        hash = hash * 31 + (descendantId != null ? descendantId.hashCode() : 0);
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof DirectoryClosurePK)) {
+            return false;
+        }
+        DirectoryClosurePK other = (DirectoryClosurePK) object;
+        if ((this.ancestorId == null && other.ancestorId != null) || (this.ancestorId != null && !this.ancestorId.equals(other.ancestorId))) {
+            return false;
+        }
+        if ((this.descendantId == null && other.descendantId != null) || (this.descendantId != null && !this.descendantId.equals(other.descendantId))) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "org.devnote.entries.DirectoryClosurePK[ ancestorId=" + ancestorId + ", descendantId=" + descendantId + " ]";
+    }
+    
+}
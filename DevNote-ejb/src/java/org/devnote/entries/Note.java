@@ -21,6 +21,7 @@ import java.io.Serializable;
 import java.util.Date;
 import java.util.List;
 import javax.persistence.Basic;
+import javax.persistence.Cacheable;
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
@@ -39,20 +40,31 @@ import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
+import org.eclipse.persistence.annotations.Cache;
+import org.eclipse.persistence.annotations.CacheCoordinationType;
+import org.eclipse.persistence.annotations.CacheType;
 
 /**
  * Note entity,<br/>
  * <br/>
  * Note contains general data about user document excepts a text of note. 
- * Text of the note containing in Version entity,
+ * Text of the note containing in Version entity,<br/>
+ * <br/>
+ * Notes are cached in shared cache: bounded set of recently used notes, 
+ * expired after 10 minutes.
  * @see Version
  * @author Stanislav Nepochatov
  */
 @Entity
+@Cacheable(true)
+@Cache(type = CacheType.SOFT_WEAK, size = 10000, expiry = 600000, coordinationType = CacheCoordinationType.INVALIDATE_CHANGED_OBJECTS)
 @Table(name = "Note")
 @NamedQueries({
     @NamedQuery(name = "Note.findAll", query = "SELECT n FROM Note n"),
     @NamedQuery(name = "Note.findById", query = "SELECT n FROM Note n WHERE n.id = :id"),
+    @NamedQuery(name = "Note.findByIds", query = "SELECT n FROM Note n WHERE n.id IN :ids"),
+    @NamedQuery(name = "Note.findIdsByDirectory", query = "SELECT n.id FROM Note n WHERE n.dirId = :directory"),
+    @NamedQuery(name = "Note.findHeaders", query = "SELECT n.id, n.userId.id, n.header FROM Note n WHERE n.id > :lastId ORDER BY n.id"),
     @NamedQuery(name = "Note.findByLastVersionDate", query = "SELECT n FROM Note n WHERE n.lastVersionDate = :lastVersionDate")})
 public class Note implements Serializable {
     
@@ -21,6 +21,7 @@ import java.io.Serializable;
 import java.util.Date;
 import java.util.List;
 import javax.persistence.Basic;
+import javax.persistence.Cacheable;
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
@@ -37,14 +38,23 @@ import javax.persistence.TemporalType;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 import org.devnote.service.Hash;
+import org.eclipse.persistence.annotations.Cache;
+import org.eclipse.persistence.annotations.CacheCoordinationType;
+import org.eclipse.persistence.annotations.CacheType;
 
 /**
  * User entity.<br/>
  * <br/>
- * This entity contains general information about system user.
+ * This entity contains general information about system user.<br/>
+ * <br/>
+ * Users are cached in shared cache: bounded set of recently used users, 
+ * expired after 10 minutes (login dates are written with JDBC and evicted 
+ * by {@link org.devnote.ejb.LoginDateWriter}).
  * @author Stanislav Nepochatov
  */
 @Entity
+@Cacheable(true)
+@Cache(type = CacheType.SOFT_WEAK, size = 1000, expiry = 600000, coordinationType = CacheCoordinationType.INVALIDATE_CHANGED_OBJECTS)
 @Table(name = "User")
 @NamedQueries({
     @NamedQuery(name = "User.findAll", query = "SELECT u FROM User u"),
@@ -20,8 +20,11 @@ package org.devnote.entries;
 import java.io.Serializable;
 import java.util.Date;
 import javax.persistence.Basic;
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
+import javax.persistence.Convert;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
@@ -33,22 +36,46 @@ import javax.persistence.NamedQuery;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
+import javax.persistence.Transient;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
+import org.eclipse.persistence.annotations.Cache;
+import org.eclipse.persistence.annotations.CacheCoordinationType;
+import org.eclipse.persistence.annotations.CacheType;
+import org.eclipse.persistence.config.CacheIsolationType;
 /**
  * Version entity.<br/>
  * <br/>
  * Version contain single edit of note text. 
- * Every version handle whole text of note and it's metadata.
+ * Version handle whole text of note (snapshot) or binary delta against 
+ * previous version of the same note. Snapshot text kept in shared 
+ * {@link Content} entity (or inline for old versions). Text of delta 
+ * version restored by {@link org.devnote.ejb.VersionFacade}.<br/>
+ * <br/>
+ * Versions aren't changed after creation, so they are cached in shared 
+ * cache without expiration (only garbage collector may drop them). Cache 
+ * is protected: reference to uncached {@link Content} is resolved in 
+ * every persistence context.
  * @author Stanislav Nepochatov
  */
 @Entity
+@Cacheable(true)
+@Cache(type = CacheType.SOFT, isolation = CacheIsolationType.PROTECTED, coordinationType = CacheCoordinationType.INVALIDATE_CHANGED_OBJECTS)
 @Table(name = "Version")
 @NamedQueries({
     @NamedQuery(name = "Version.findAll", query = "SELECT v FROM Version v"),
     @NamedQuery(name = "Version.findById", query = "SELECT v FROM Version v WHERE v.id = :id"),
     @NamedQuery(name = "Version.findByHash", query = "SELECT v FROM Version v WHERE v.hash = :hash"),
-    @NamedQuery(name = "Version.findBySaveDate", query = "SELECT v FROM Version v WHERE v.saveDate = :saveDate")})
+    @NamedQuery(name = "Version.findBySaveDate", query = "SELECT v FROM Version v WHERE v.saveDate = :saveDate"),
+    @NamedQuery(name = "Version.findHistory", query = "SELECT NEW org.devnote.entries.VersionInfo(v.id, v.saveDate, v.hash, v.textSize) FROM Version v WHERE v.noteId = :noteId ORDER BY v.id"),
+    @NamedQuery(name = "Version.openNote", query = "SELECT v FROM Note n JOIN n.lastVersionId v JOIN FETCH v.noteId LEFT JOIN FETCH v.contentId WHERE n.id = :noteId"),
+    @NamedQuery(name = "Version.findLatestOfNotes", query = "SELECT v FROM Note n JOIN n.lastVersionId v JOIN FETCH v.noteId LEFT JOIN FETCH v.contentId WHERE n.id IN :noteIds"),
+    @NamedQuery(name = "Version.findDependents", query = "SELECT v FROM Version v WHERE v.noteId = :noteId AND v.baseVersionId = :id"),
+    @NamedQuery(name = "Version.findChainTail", query = "SELECT v FROM Version v WHERE v.noteId = :noteId AND v.snapshotVersionId = :snapshotId AND v.chainLength > :chainLength"),
+    @NamedQuery(name = "Version.findChain", query = "SELECT v FROM Version v LEFT JOIN FETCH v.contentId WHERE v.noteId = :noteId AND v.id BETWEEN :snapshotId AND :id"),
+    @NamedQuery(name = "Version.countContentsByNote", query = "SELECT v.contentId.id, COUNT(v) FROM Version v WHERE v.noteId = :note AND v.contentId IS NOT NULL GROUP BY v.contentId.id"),
+    @NamedQuery(name = "Version.countContentsByDirectory", query = "SELECT v.contentId.id, COUNT(v) FROM Version v WHERE v.noteId.dirId = :directory AND v.contentId IS NOT NULL GROUP BY v.contentId.id"),
+    @NamedQuery(name = "Version.findForExport", query = "SELECT v FROM Version v LEFT JOIN FETCH v.contentId WHERE v.noteId.userId = :userId AND v.saveDate > :since ORDER BY v.noteId.id, v.id")})
 public class Version implements Serializable {
     
     
@@ -83,15 +110,63 @@ public class Version implements Serializable {
     private Date saveDate;
     
     /**
-     * Text of note version.
+     * Inline text of note version (null for delta or shared content version).<br/>
+     * Compressed in database, old uncompressed rows are readed as is.
      */
-    @Basic(optional = false)
-    @NotNull
-    @Lob
+    @Basic(fetch = FetchType.LAZY)
     @Size(min = 1, max = 16777215)
     @Column(name = "note_text")
+    @Convert(converter = CompressedTextConverter.class)
     private String noteText;
     
+    /**
+     * Length of version text in chars.
+     */
+    @Column(name = "text_size")
+    private Integer textSize;
+    
+    /**
+     * Shared content with text of this version (null for delta or inline version).
+     */
+    @JoinColumn(name = "content_id", referencedColumnName = "id")
+    @ManyToOne(fetch = FetchType.LAZY)
+    private Content contentId;
+    
+    /**
+     * Binary delta against base version (null for snapshot version).
+     * @see org.devnote.service.Delta
+     */
+    @Basic(fetch = FetchType.LAZY)
+    @Lob
+    @Column(name = "note_delta")
+    private byte[] noteDelta;
+    
+    /**
+     * Id of version which is a base of delta.
+     */
+    @Column(name = "base_version_id")
+    private Integer baseVersionId;
+    
+    /**
+     * Id of snapshot version which starts delta chain.
+     */
+    @Column(name = "snapshot_version_id")
+    private Integer snapshotVersionId;
+    
+    /**
+     * Count of deltas from snapshot to this version (0 for snapshot).
+     */
+    @Basic(optional = false)
+    @NotNull
+    @Column(name = "chain_length")
+    private int chainLength;
+    
+    /**
+     * Text of delta version restored by facade.
+     */
+    @Transient
+    private String restoredText;
+    
     /**
      * Parent note entity.
      */
@@ -187,7 +262,12 @@ public class Version implements Serializable {
      * @return string with text;
      */
     public String getNoteText() {
-        return noteText;
+        if (noteText != null) {
+            return noteText;
+        } else if (restoredText == null && contentId != null) {
+            restoredText = contentId.getNoteText();
+        }
+        return restoredText;
     }
 
     /**
@@ -197,6 +277,125 @@ public class Version implements Serializable {
      */
     public void setNoteText(String noteText) {
         this.noteText = noteText;
+        this.contentId = null;
+        this.noteDelta = null;
+        this.baseVersionId = null;
+        this.snapshotVersionId = null;
+        this.chainLength = 0;
+    }
+
+    /**
+     * Get length of version text.
+     * @return count of chars or null for old versions;
+     */
+    public Integer getTextSize() {
+        return textSize;
+    }
+
+    /**
+     * Set length of version text.
+     * @param textSize count of chars;
+     */
+    public void setTextSize(Integer textSize) {
+        this.textSize = textSize;
+    }
+
+    /**
+     * Check if this version store whole text.
+     * @return true if version is snapshot / false if version is delta;
+     */
+    public boolean isSnapshot() {
+        return noteDelta == null;
+    }
+
+    /**
+     * Turn this version into delta against base version. 
+     * Current text stays available through {@link #getNoteText()}.
+     * @param delta binary delta;
+     * @param base base version of delta;
+     */
+    public void storeAsDelta(byte[] delta, Version base) {
+        this.restoredText = getNoteText();
+        this.noteText = null;
+        this.contentId = null;
+        this.noteDelta = delta;
+        this.baseVersionId = base.getId();
+        this.snapshotVersionId = base.isSnapshot() ? base.getId() : base.getSnapshotVersionId();
+        this.chainLength = base.getChainLength() + 1;
+    }
+
+    /**
+     * Turn this version into reference to shared content. 
+     * Current text stays available through {@link #getNoteText()}.
+     * @param content content with the same text;
+     */
+    public void storeAsContent(Content content) {
+        this.restoredText = getNoteText();
+        this.noteText = null;
+        this.contentId = content;
+        this.noteDelta = null;
+        this.baseVersionId = null;
+        this.snapshotVersionId = null;
+        this.chainLength = 0;
+    }
+
+    /**
+     * Move delta to chain which starts from other snapshot 
+     * (used when the start of its chain turned into snapshot).
+     * @param snapshot new snapshot of chain;
+     * @param shift count of deltas cut from the start of chain;
+     */
+    public void moveToChain(Version snapshot, int shift) {
+        this.snapshotVersionId = snapshot.getId();
+        this.chainLength -= shift;
+    }
+
+    /**
+     * Get shared content of this version.
+     * @return content entity or null;
+     */
+    public Content getContentId() {
+        return contentId;
+    }
+
+    /**
+     * Get binary delta of this version.
+     * @return delta or null for snapshot;
+     */
+    public byte[] getNoteDelta() {
+        return noteDelta;
+    }
+
+    /**
+     * Get id of the base version of delta.
+     * @return version id or null for snapshot;
+     */
+    public Integer getBaseVersionId() {
+        return baseVersionId;
+    }
+
+    /**
+     * Get id of the snapshot which starts delta chain.
+     * @return version id or null for snapshot;
+     */
+    public Integer getSnapshotVersionId() {
+        return snapshotVersionId;
+    }
+
+    /**
+     * Get count of deltas which should be applied to snapshot to get this version.
+     * @return chain length;
+     */
+    public int getChainLength() {
+        return chainLength;
+    }
+
+    /**
+     * Set text restored from delta chain.
+     * @param restoredText full text of this version;
+     */
+    public void setRestoredText(String restoredText) {
+        this.restoredText = restoredText;
     }
 
     /**
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.entries;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Version metadata without note text. Used for version history 
+ * where loading of whole versions is too expensive.
+ * @see Version
+ * @author Stanislav Nepochatov
+ */
+public class VersionInfo implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * Version id.
+     */
+    private final Integer id;
+    
+    /**
+     * Date of version creation.
+     */
+    private final Date saveDate;
+    
+    /**
+     * Hash of version text.
+     */
+    private final String hash;
+    
+    /**
+     * Length of version text (null for versions saved without size).
+     */
+    private final Integer textSize;
+
+    /**
+     * Full parametrick constructor (used by JPQL constructor expression).
+     * @param id version id;
+     * @param saveDate creation date;
+     * @param hash text hash;
+     * @param textSize text length;
+     */
+    public VersionInfo(Integer id, Date saveDate, String hash, Integer textSize) {
+        this.id = id;
+        this.saveDate = saveDate;
+        this.hash = hash;
+        this.textSize = textSize;
+    }
+
+    /**
+     * Get version id.
+     * @return id of version entity;
+     */
+    public Integer getId() {
+        return id;
+    }
+
+    /**
+     * Get creation date.
+     * @return date of version creation;
+     */
+    public Date getSaveDate() {
+        return saveDate;
+    }
+
+    /**
+     * Get version hash.
+     * @return hash of version text;
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * Get length of version text.
+     * @return count of chars or null if unknown;
+     */
+    public Integer getTextSize() {
+        return textSize;
+    }
+    
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.service;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Binary delta codec for version storage.<br/>
+ * <br/>
+ * Delta describes target text as sequence of COPY (range of base) and 
+ * INSERT (literal bytes) operations. Base is indexed by blocks of 
+ * {@link #BLOCK_SIZE} bytes, target is scanned with rolling hash, so 
+ * encoding is linear for usual edits.<br/>
+ * <br/>
+ * Format: target length, then operations. Every operation starts with 
+ * (length &lt;&lt; 1 | type) header, COPY has base offset after header, 
+ * INSERT has literal bytes after header. All numbers are unsigned varints.
+ * @author Stanislav Nepochatov
+ */
+public final class Delta {
+    
+    /**
+     * Size of indexed base block.
+     */
+    public static final int BLOCK_SIZE = 16;
+    
+    /**
+     * Literal bytes operation.
+     */
+    private static final int OP_INSERT = 0;
+    
+    /**
+     * Base range operation.
+     */
+    private static final int OP_COPY = 1;
+    
+    /**
+     * Rolling hash multiplier.
+     */
+    private static final int PRIME = 31;
+    
+    /**
+     * PRIME in BLOCK_SIZE - 1 power, used to remove outgoing byte from hash.
+     */
+    private static final int PRIME_POW;
+    
+    static {
+        int pow = 1;
+        for (int i = 1; i < BLOCK_SIZE; i++) {
+            pow *= PRIME;
+        }
+        PRIME_POW = pow;
+    }
+    
+    /**
+     * Static only.
+     */
+    private Delta() {
+    }
+    
+    /**
+     * Encode target as delta against base.
+     * @param base previous content;
+     * @param target new content;
+     * @return encoded delta;
+     */
+    public static byte[] encode(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        writeVarInt(out, target.length);
+        
+        int blocks = base.length / BLOCK_SIZE;
+        int mask = Integer.highestOneBit(Math.max(blocks, 1) * 2) - 1;
+        int[] index = new int[mask + 1];
+        for (int block = blocks - 1; block >= 0; block--) {
+            int offset = block * BLOCK_SIZE;
+            index[hash(base, offset) & mask] = offset + 1;
+        }
+        
+        int pending = 0;
+        int pos = 0;
+        int hash = target.length >= BLOCK_SIZE ? hash(target, 0) : 0;
+        while (blocks > 0 && pos + BLOCK_SIZE <= target.length) {
+            int candidate = index[hash & mask] - 1;
+            if (candidate >= 0 && regionEquals(base, candidate, target, pos, BLOCK_SIZE)) {
+                int baseStart = candidate;
+                int targetStart = pos;
+                while (baseStart > 0 && targetStart > pending && base[baseStart - 1] == target[targetStart - 1]) {
+                    baseStart--;
+                    targetStart--;
+                }
+                int baseEnd = candidate + BLOCK_SIZE;
+                int targetEnd = pos + BLOCK_SIZE;
+                while (baseEnd < base.length && targetEnd < target.length && base[baseEnd] == target[targetEnd]) {
+                    baseEnd++;
+                    targetEnd++;
+                }
+                writeInsert(out, target, pending, targetStart);
+                writeVarInt(out, ((targetEnd - targetStart) << 1) | OP_COPY);
+                writeVarInt(out, baseStart);
+                pending = targetEnd;
+                pos = targetEnd;
+                if (pos + BLOCK_SIZE <= target.length) {
+                    hash = hash(target, pos);
+                }
+            } else {
+                if (pos + BLOCK_SIZE < target.length) {
+                    hash = (hash - target[pos] * PRIME_POW) * PRIME + target[pos + BLOCK_SIZE];
+                }
+                pos++;
+            }
+        }
+        writeInsert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+    
+    /**
+     * Apply delta to base and get target content.
+     * @param base previous content;
+     * @param delta encoded delta;
+     * @return restored content;
+     * @throws IllegalArgumentException if delta is corrupted or doesn't match base;
+     */
+    public static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = new int[1];
+        byte[] target = new byte[readVarInt(delta, pos)];
+        int written = 0;
+        while (pos[0] < delta.length) {
+            int header = readVarInt(delta, pos);
+            int length = header >>> 1;
+            if (written + length > target.length) {
+                throw new IllegalArgumentException("Delta exceeds target length");
+            }
+            if ((header & 1) == OP_COPY) {
+                int offset = readVarInt(delta, pos);
+                if (offset + length > base.length) {
+                    throw new IllegalArgumentException("Delta copy out of base range");
+                }
+                System.arraycopy(base, offset, target, written, length);
+            } else {
+                if (pos[0] + length > delta.length) {
+                    throw new IllegalArgumentException("Delta is truncated");
+                }
+                System.arraycopy(delta, pos[0], target, written, length);
+                pos[0] += length;
+            }
+            written += length;
+        }
+        if (written != target.length) {
+            throw new IllegalArgumentException("Delta is truncated");
+        }
+        return target;
+    }
+    
+    /**
+     * Compute hash of block.
+     * @param data byte array;
+     * @param offset block start;
+     * @return hash of block;
+     */
+    private static int hash(byte[] data, int offset) {
+        int hash = 0;
+        for (int i = offset; i < offset + BLOCK_SIZE; i++) {
+            hash = hash * PRIME + data[i];
+        }
+        return hash;
+    }
+    
+    /**
+     * Compare two array regions.
+     * @return true if regions are equal;
+     */
+    private static boolean regionEquals(byte[] first, int firstOffset, byte[] second, int secondOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (first[firstOffset + i] != second[secondOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Write INSERT operation if range isn't empty.
+     */
+    private static void writeInsert(ByteArrayOutputStream out, byte[] target, int from, int to) {
+        if (to > from) {
+            writeVarInt(out, ((to - from) << 1) | OP_INSERT);
+            out.write(target, from, to - from);
+        }
+    }
+    
+    /**
+     * Write unsigned varint.
+     */
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+    
+    /**
+     * Read unsigned varint.
+     * @param data byte array;
+     * @param pos single element array with current position (will be moved);
+     * @return readed number;
+     */
+    private static int readVarInt(byte[] data, int[] pos) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (pos[0] >= data.length) {
+                throw new IllegalArgumentException("Delta is truncated");
+            }
+            byte current = data[pos[0]++];
+            value |= (current & 0x7F) << shift;
+            if ((current & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in delta");
+    }
+}
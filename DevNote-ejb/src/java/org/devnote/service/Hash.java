@@ -17,32 +17,429 @@
 
 package org.devnote.service;
 
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
 /**
- * Util class for operaion with hashes.
+ * Util class for operaion with hashes.<br/>
+ * <br/>
+ * Digests are reused per thread, text is encoded to UTF-8 by small chunks 
+ * right into the digest, so whole note text isn't copied to byte array. 
+ * Passwords are hashed in platform charset as they always were, 
+ * so stored password hashes stay valid on servers with other charset.
  * @author Stanislav Nepochatov
  */
 public class Hash {
     
     /**
-     * Get hash sum of given string.
+     * Hash algorithms.
+     */
+    public static enum Algorithm {
+        
+        /**
+         * MD5 (compatible with existing versions, content hash isn't tagged).
+         */
+        MD5("", true),
+        
+        /**
+         * SHA-256 (64 hex chars).
+         */
+        SHA256("sha256:", true),
+        
+        /**
+         * MurmurHash3 x64 128 bit, fast non-cryptographic hash. 
+         * Its collisions are trivial to make, so it can't identify shared content.
+         */
+        MURMUR3("m3:", false);
+        
+        /**
+         * Prefix of content hash.
+         */
+        private final String tag;
+        
+        /**
+         * Collisions are hard to find.
+         */
+        private final boolean cryptographic;
+        
+        /**
+         * Parametrick constructor.
+         * @param tag prefix of content hash;
+         * @param cryptographic collisions are hard to find;
+         */
+        private Algorithm(String tag, boolean cryptographic) {
+            this.tag = tag;
+            this.cryptographic = cryptographic;
+        }
+        
+        /**
+         * Get algorithm of content hashes by name.
+         * @param name algorithm name;
+         * @return cryptographic algorithm;
+         * @throws IllegalArgumentException if algorithm is unknown or isn't cryptographic;
+         */
+        public static Algorithm forContent(String name) {
+            Algorithm algorithm = valueOf(name);
+            if (!algorithm.cryptographic) {
+                throw new IllegalArgumentException("Hash algorithm " + name + " can't be used for content hashes");
+            }
+            return algorithm;
+        }
+        
+        /**
+         * Create new digest instance of algorithm.
+         * @return message digest;
+         */
+        MessageDigest newDigest() {
+            try {
+                switch (this) {
+                    case MD5:
+                        return MessageDigest.getInstance("MD5");
+                    case SHA256:
+                        return MessageDigest.getInstance("SHA-256");
+                    default:
+                        return new Murmur3Digest();
+                }
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException("Hash algorithm " + this + " isn't supported", ex);
+            }
+        }
+    }
+    
+    /**
+     * Algorithm of version and content hashes (system property devnote.hash.content, 
+     * only cryptographic algorithms). Hashes are tagged by algorithm, 
+     * so versions saved with other algorithm just won't share content with new ones.
+     */
+    public static final Algorithm CONTENT_ALGORITHM = Algorithm.forContent(System.getProperty("devnote.hash.content", "MD5"));
+    
+    /**
+     * Size of chunk (in chars) for UTF-8 encoding.
+     */
+    private static final int CHUNK_SIZE = 4096;
+    
+    /**
+     * Hex digits table.
+     */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    
+    /**
+     * Digests of current thread (by algorithm ordinal).
+     */
+    private static final ThreadLocal<MessageDigest[]> DIGESTS = new ThreadLocal<MessageDigest[]>() {
+        @Override
+        protected MessageDigest[] initialValue() {
+            return new MessageDigest[Algorithm.values().length];
+        }
+    };
+    
+    /**
+     * Encoding buffers of current thread.
+     */
+    private static final ThreadLocal<Buffers> BUFFERS = new ThreadLocal<Buffers>() {
+        @Override
+        protected Buffers initialValue() {
+            return new Buffers();
+        }
+    };
+    
+    /**
+     * Get MD5 hash sum of given string in platform charset (user passwords).<br/>
+     * <b>Covered by unit test.</b>
      * @param givenStr given string;
      * @return md5 hash sum representation;
      */
     public static String getHash(String givenStr) {
-        StringBuffer hexString = new StringBuffer();
-        try {
-            java.security.MessageDigest md = java.security.MessageDigest.getInstance("MD5");
-            md.update(givenStr.getBytes());
-            byte[] hash = md.digest();
-            for (int i = 0; i < hash.length; i++) {
-                if ((0xff & hash[i]) < 0x10) {
-                    hexString.append("0"
-                            + Integer.toHexString((0xFF & hash[i])));
+        return toHex(threadDigest(Algorithm.MD5).digest(givenStr.getBytes(Charset.defaultCharset())));
+    }
+    
+    /**
+     * Get hash of note text with content algorithm.
+     * @param text note text;
+     * @return hex hash string;
+     * @see #CONTENT_ALGORITHM
+     */
+    public static String getContentHash(String text) {
+        return getContentHash(text, CONTENT_ALGORITHM);
+    }
+    
+    /**
+     * Get hash of note text tagged with algorithm prefix 
+     * (MD5 hashes aren't tagged for compatibility with existing versions).<br/>
+     * <b>Covered by unit test.</b>
+     * @param text note text;
+     * @param algorithm hash algorithm;
+     * @return tagged hex hash string, for example 'sha256:ba78...';
+     */
+    public static String getContentHash(String text, Algorithm algorithm) {
+        return algorithm.tag + getHash(text, algorithm);
+    }
+    
+    /**
+     * Get hash sum of given string with specified algorithm.
+     * @param givenStr given string;
+     * @param algorithm hash algorithm;
+     * @return lowercase hex hash string;
+     */
+    public static String getHash(String givenStr, Algorithm algorithm) {
+        return toHex(digest(givenStr, algorithm));
+    }
+    
+    /**
+     * Get raw hash of UTF-8 representation of string.
+     * @param givenStr given string;
+     * @param algorithm hash algorithm;
+     * @return hash bytes;
+     */
+    public static byte[] digest(String givenStr, Algorithm algorithm) {
+        MessageDigest md = threadDigest(algorithm);
+        Buffers buffers = BUFFERS.get();
+        char[] chars = buffers.chars;
+        byte[] bytes = buffers.bytes;
+        int length = givenStr.length();
+        int chunkStart = 0;
+        while (chunkStart < length) {
+            int chunkEnd = Math.min(length, chunkStart + CHUNK_SIZE);
+            if (chunkEnd < length && Character.isHighSurrogate(givenStr.charAt(chunkEnd - 1))) {
+                //Keep surrogate pair inside one chunk.
+                chunkEnd--;
+            }
+            int count = chunkEnd - chunkStart;
+            givenStr.getChars(chunkStart, chunkEnd, chars, 0);
+            md.update(bytes, 0, encodeUtf8(chars, count, bytes));
+            chunkStart = chunkEnd;
+        }
+        return md.digest();
+    }
+    
+    /**
+     * Get reset digest of current thread.
+     * @param algorithm hash algorithm;
+     * @return message digest;
+     */
+    private static MessageDigest threadDigest(Algorithm algorithm) {
+        MessageDigest[] digests = DIGESTS.get();
+        MessageDigest md = digests[algorithm.ordinal()];
+        if (md == null) {
+            md = algorithm.newDigest();
+            digests[algorithm.ordinal()] = md;
+        } else {
+            md.reset();
+        }
+        return md;
+    }
+    
+    /**
+     * Encode chars to UTF-8 as String.getBytes does.
+     * @param chars source chars;
+     * @param count count of chars to encode;
+     * @param buffer destination buffer (at least 3 bytes per char);
+     * @return count of encoded bytes;
+     */
+    private static int encodeUtf8(char[] chars, int count, byte[] buffer) {
+        int pos = 0;
+        int i = 0;
+        while (i < count && chars[i] < 0x80) {
+            buffer[pos++] = (byte) chars[i++];
+        }
+        for (; i < count; i++) {
+            char c = chars[i];
+            if (c < 0x80) {
+                buffer[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[pos++] = (byte) (0xC0 | (c >> 6));
+                buffer[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(chars[i + 1])) {
+                    int code = Character.toCodePoint(c, chars[++i]);
+                    buffer[pos++] = (byte) (0xF0 | (code >> 18));
+                    buffer[pos++] = (byte) (0x80 | ((code >> 12) & 0x3F));
+                    buffer[pos++] = (byte) (0x80 | ((code >> 6) & 0x3F));
+                    buffer[pos++] = (byte) (0x80 | (code & 0x3F));
                 } else {
-                    hexString.append(Integer.toHexString(0xFF & hash[i]));
+                    //Malformed surrogate replaced as String.getBytes does.
+                    buffer[pos++] = '?';
                 }
+            } else {
+                buffer[pos++] = (byte) (0xE0 | (c >> 12));
+                buffer[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return pos;
+    }
+    
+    /**
+     * Convert bytes to lowercase hex string.
+     * @param bytes bytes to convert;
+     * @return hex string;
+     */
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0x0F];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0x0F];
+        }
+        return new String(chars);
+    }
+    
+    /**
+     * Chunk buffers for UTF-8 encoding.
+     */
+    private static final class Buffers {
+        
+        /**
+         * Chars of current chunk.
+         */
+        private final char[] chars = new char[CHUNK_SIZE];
+        
+        /**
+         * Encoded bytes of current chunk (surrogate pair gives 4 bytes for 2 chars).
+         */
+        private final byte[] bytes = new byte[CHUNK_SIZE * 3];
+    }
+    
+    /**
+     * MurmurHash3 x64 128 bit digest (seed 0). 
+     * Result is h1 and h2 in little endian order.
+     */
+    private static final class Murmur3Digest extends MessageDigest {
+        
+        private static final long C1 = 0x87c37b91114253d5L;
+        private static final long C2 = 0x4cf5ad432745937fL;
+        
+        /**
+         * Unprocessed tail of input (less than block).
+         */
+        private final byte[] tail = new byte[16];
+        
+        private int tailLength;
+        private long length;
+        private long h1;
+        private long h2;
+        
+        Murmur3Digest() {
+            super("MurmurHash3-128");
+        }
+        
+        @Override
+        protected void engineUpdate(byte input) {
+            tail[tailLength++] = input;
+            length++;
+            if (tailLength == 16) {
+                block(tail, 0);
+                tailLength = 0;
+            }
+        }
+        
+        @Override
+        protected void engineUpdate(byte[] input, int offset, int len) {
+            int end = offset + len;
+            length += len;
+            if (tailLength > 0) {
+                while (tailLength < 16 && offset < end) {
+                    tail[tailLength++] = input[offset++];
+                }
+                if (tailLength < 16) {
+                    return;
+                }
+                block(tail, 0);
+                tailLength = 0;
+            }
+            while (end - offset >= 16) {
+                block(input, offset);
+                offset += 16;
+            }
+            while (offset < end) {
+                tail[tailLength++] = input[offset++];
+            }
+        }
+        
+        @Override
+        protected byte[] engineDigest() {
+            long k1 = 0;
+            long k2 = 0;
+            for (int i = tailLength - 1; i >= 8; i--) {
+                k2 |= (tail[i] & 0xFFL) << ((i - 8) * 8);
+            }
+            for (int i = Math.min(tailLength, 8) - 1; i >= 0; i--) {
+                k1 |= (tail[i] & 0xFFL) << (i * 8);
+            }
+            if (tailLength > 8) {
+                h2 ^= mixK2(k2);
+            }
+            if (tailLength > 0) {
+                h1 ^= mixK1(k1);
+            }
+            h1 ^= length;
+            h2 ^= length;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix(h1);
+            h2 = fmix(h2);
+            h1 += h2;
+            h2 += h1;
+            byte[] result = new byte[16];
+            for (int i = 0; i < 8; i++) {
+                result[i] = (byte) (h1 >>> (i * 8));
+                result[i + 8] = (byte) (h2 >>> (i * 8));
+            }
+            engineReset();
+            return result;
+        }
+        
+        @Override
+        protected void engineReset() {
+            tailLength = 0;
+            length = 0;
+            h1 = 0;
+            h2 = 0;
+        }
+        
+        @Override
+        protected int engineGetDigestLength() {
+            return 16;
+        }
+        
+        private void block(byte[] data, int offset) {
+            h1 ^= mixK1(getLong(data, offset));
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+            h2 ^= mixK2(getLong(data, offset + 8));
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+        
+        private static long getLong(byte[] data, int offset) {
+            long value = 0;
+            for (int i = 7; i >= 0; i--) {
+                value = (value << 8) | (data[offset + i] & 0xFFL);
             }
-        } catch (Exception ex) {}
-        return hexString.toString();
+            return value;
+        }
+        
+        private static long mixK1(long k1) {
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            return k1 * C2;
+        }
+        
+        private static long mixK2(long k2) {
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            return k2 * C1;
+        }
+        
+        private static long fmix(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
     }
 }
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.devnote.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streaming writer of notes archive.<br/>
+ * <br/>
+ * Archive is ZIP file with following entries:<br/>
+ * directories.txt - dotted paths of directories, one per line;<br/>
+ * notes/&lt;note id&gt;/&lt;version id&gt;.txt - text of every version;<br/>
+ * notes/&lt;note id&gt;/note.txt - header, directory path and 
+ * 'version=id date hash' line of every written version.<br/>
+ * <br/>
+ * Directories should be added before versions, versions should be 
+ * grouped by note. Only metadata of current note is kept in memory, 
+ * so archive of any size is written with constant memory.
+ * @author Stanislav Nepochatov
+ */
+public class NoteArchiveWriter {
+    
+    /**
+     * Charset of all entries.
+     */
+    private static final Charset CHARSET = StandardCharsets.UTF_8;
+    
+    /**
+     * Name of directories entry.
+     */
+    public static final String DIRECTORIES_ENTRY = "directories.txt";
+    
+    /**
+     * Name of note metadata entry in note folder.
+     */
+    public static final String NOTE_ENTRY = "note.txt";
+    
+    /**
+     * ZIP stream.
+     */
+    private final ZipOutputStream zip;
+    
+    /**
+     * Format of dates in metadata (UTC).
+     */
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+    
+    /**
+     * Directories entry is open.
+     */
+    private boolean directoriesOpen = false;
+    
+    /**
+     * At least one version is written.
+     */
+    private boolean versionsStarted = false;
+    
+    /**
+     * Id of current note.
+     */
+    private Integer noteId;
+    
+    /**
+     * Metadata of current note.
+     */
+    private StringBuilder noteInfo;
+    
+    /**
+     * Parametrick constructor.
+     * @param output stream to write archive (isn't closed by writer);
+     */
+    public NoteArchiveWriter(OutputStream output) {
+        this.zip = new ZipOutputStream(output, CHARSET);
+        this.dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+    
+    /**
+     * Add directory.
+     * @param path dotted path of directory;
+     * @throws IOException on write error;
+     */
+    public void addDirectory(String path) throws IOException {
+        if (versionsStarted) {
+            throw new IllegalStateException("Directories should be added before versions");
+        }
+        if (!directoriesOpen) {
+            zip.putNextEntry(new ZipEntry(DIRECTORIES_ENTRY));
+            directoriesOpen = true;
+        }
+        zip.write((path + '\n').getBytes(CHARSET));
+    }
+    
+    /**
+     * Add version of note. Versions of one note should follow each other.
+     * @param noteId id of note;
+     * @param header header of note;
+     * @param directoryPath path of note directory;
+     * @param versionId id of version;
+     * @param saveDate save date of version;
+     * @param hash hash of version;
+     * @param text text of version;
+     * @throws IOException on write error;
+     */
+    public void addVersion(Integer noteId, String header, String directoryPath, 
+            Integer versionId, Date saveDate, String hash, String text) throws IOException {
+        if (!versionsStarted) {
+            closeDirectories();
+            versionsStarted = true;
+        }
+        if (!noteId.equals(this.noteId)) {
+            finishNote();
+            this.noteId = noteId;
+            this.noteInfo = new StringBuilder();
+            noteInfo.append("header=").append(singleLine(header)).append('\n');
+            noteInfo.append("directory=").append(directoryPath).append('\n');
+        }
+        noteInfo.append("version=").append(versionId).append(' ')
+                .append(dateFormat.format(saveDate)).append(' ').append(hash).append('\n');
+        ZipEntry entry = new ZipEntry("notes/" + noteId + "/" + versionId + ".txt");
+        entry.setTime(saveDate.getTime());
+        zip.putNextEntry(entry);
+        zip.write(text.getBytes(CHARSET));
+        zip.closeEntry();
+    }
+    
+    /**
+     * Write metadata of last note and finish archive. 
+     * Output stream stays open.
+     * @throws IOException on write error;
+     */
+    public void finish() throws IOException {
+        closeDirectories();
+        finishNote();
+        zip.finish();
+    }
+    
+    /**
+     * Close directories entry if it's open.
+     */
+    private void closeDirectories() throws IOException {
+        if (directoriesOpen) {
+            zip.closeEntry();
+            directoriesOpen = false;
+        }
+    }
+    
+    /**
+     * Write metadata of current note.
+     */
+    private void finishNote() throws IOException {
+        if (noteId == null) {
+            return;
+        }
+        zip.putNextEntry(new ZipEntry("notes/" + noteId + "/" + NOTE_ENTRY));
+        zip.write(noteInfo.toString().getBytes(CHARSET));
+        zip.closeEntry();
+        noteId = null;
+        noteInfo = null;
+    }
+    
+    /**
+     * Replace line breaks with spaces.
+     * @param text text to convert;
+     * @return single line text;
+     */
+    private static String singleLine(String text) {
+        return text.replace('\r', ' ').replace('\n', ' ');
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.devnote.service;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+
+/**
+ * Walker of filesystem tree with note files.<br/>
+ * <br/>
+ * Every folder is mapped to directory path: root folder to given path, 
+ * subfolders to dotted path of their names below it, for example 
+ * folder 'Linux/nginx' under root mapped to 'Wiki' is 'Wiki.Linux.nginx'. 
+ * Dots in folder names are replaced, because dot is path separator. 
+ * Every file with Markdown, HTML or text extension is a note, its name 
+ * without extension is note header. Hidden files and folders are skipped.
+ * @author Stanislav Nepochatov
+ */
+public class NoteTreeWalker {
+    
+    /**
+     * Extensions of note files (lowercase).
+     */
+    private static final String[] NOTE_EXTENSIONS = {".md", ".markdown", ".html", ".htm", ".txt"};
+    
+    /**
+     * Replacement of dots in folder names.
+     */
+    private static final char DOT_REPLACEMENT = '_';
+    
+    /**
+     * Visitor of note files.
+     */
+    public static interface Visitor {
+        
+        /**
+         * Visit note file.
+         * @param file path of file;
+         * @param directoryPath dotted path of directory;
+         * @param header header of note;
+         * @throws IOException on visitor error, walk stops;
+         */
+        void visit(Path file, String directoryPath, String header) throws IOException;
+    }
+    
+    /**
+     * Root folder.
+     */
+    private final Path root;
+    
+    /**
+     * Directory path of root folder.
+     */
+    private final String rootPath;
+    
+    /**
+     * Parametrick constructor.
+     * @param root root folder;
+     * @param rootPath directory path of root folder (not empty);
+     */
+    public NoteTreeWalker(Path root, String rootPath) {
+        if (rootPath == null || rootPath.isEmpty()) {
+            throw new IllegalArgumentException("Root folder should be mapped to directory");
+        }
+        this.root = root;
+        this.rootPath = rootPath;
+    }
+    
+    /**
+     * Walk tree depth first and visit every note file.
+     * @param visitor visitor of note files;
+     * @throws IOException on walk or visitor error;
+     */
+    public void walk(final Visitor visitor) throws IOException {
+        final Deque<String> paths = new ArrayDeque<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (paths.isEmpty()) {
+                    paths.push(rootPath);
+                    return FileVisitResult.CONTINUE;
+                }
+                String name = dir.getFileName().toString();
+                if (isHidden(name)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                paths.push(paths.peek() + '.' + toSegment(name));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                String name = file.getFileName().toString();
+                if (attrs.isRegularFile() && !isHidden(name) && isNoteFile(name)) {
+                    visitor.visit(file, paths.peek(), toHeader(name));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                if (exc != null) {
+                    throw exc;
+                }
+                paths.pop();
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+    
+    /**
+     * Check if file is note by its extension.<br/>
+     * <b>Covered by unit test.</b>
+     * @param fileName name of file;
+     * @return true if file has note extension;
+     */
+    public static boolean isNoteFile(String fileName) {
+        String lowerName = fileName.toLowerCase(Locale.ROOT);
+        for (String extension: NOTE_EXTENSIONS) {
+            if (lowerName.endsWith(extension) && lowerName.length() > extension.length()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Get note header from file name.<br/>
+     * <b>Covered by unit test.</b>
+     * @param fileName name of note file;
+     * @return name without extension;
+     */
+    public static String toHeader(String fileName) {
+        int dotIndex = fileName.lastIndexOf('.');
+        return (dotIndex > 0 ? fileName.substring(0, dotIndex) : fileName).trim();
+    }
+    
+    /**
+     * Get directory path segment from folder name.<br/>
+     * <b>Covered by unit test.</b>
+     * @param folderName name of folder;
+     * @return trimmed name with dots replaced or replacement char for blank name;
+     */
+    public static String toSegment(String folderName) {
+        String segment = folderName.trim().replace('.', DOT_REPLACEMENT);
+        return segment.isEmpty() ? String.valueOf(DOT_REPLACEMENT) : segment;
+    }
+    
+    /**
+     * Check if file or folder is hidden.
+     * @param name name of file or folder;
+     * @return true if name starts with dot;
+     */
+    private static boolean isHidden(String name) {
+        return name.startsWith(".");
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Trie of dotted directory paths.<br/>
+ * <br/>
+ * Every node of trie is a single path segment, so insert and lookup cost 
+ * depends only on path depth. Lookup compares segments right inside given 
+ * path string without substring allocation. Equal segment names are 
+ * interned, so repeated names (e.g. 'Docs' in every project) share one string.<br/>
+ * <br/>
+ * Empty path is a root of trie. Trie isn't thread safe.
+ * @param <V> type of values bound to paths;
+ * @author Stanislav Nepochatov
+ */
+public class PathTrie<V> {
+    
+    /**
+     * Separator of path segments.
+     */
+    public static final char SEPARATOR = '.';
+    
+    /**
+     * Root node (empty path).
+     */
+    private final Node<V> root = new Node<>(null, "");
+    
+    /**
+     * Pool of interned segment names.
+     */
+    private final Map<String, String> segments = new HashMap<>();
+    
+    /**
+     * Count of paths with values.
+     */
+    private int size = 0;
+    
+    /**
+     * Bind value to path. Missing parent nodes created without values.
+     * @param path full dotted path;
+     * @param value value to bind (not null);
+     * @return previous value of path or null;
+     */
+    public V put(String path, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values aren't supported");
+        }
+        Node<V> node = root;
+        int start = 0;
+        int end = path.length();
+        while (end > 0) {
+            int dot = path.indexOf(SEPARATOR, start);
+            int segmentEnd = dot < 0 ? end : dot;
+            Node<V> child = node.child(path, start, segmentEnd);
+            if (child == null) {
+                child = new Node<>(node, intern(path.substring(start, segmentEnd)));
+                node.add(child);
+            }
+            node = child;
+            if (dot < 0) {
+                break;
+            }
+            start = dot + 1;
+        }
+        V previous = node.value;
+        node.value = value;
+        if (previous == null) {
+            size++;
+        }
+        return previous;
+    }
+    
+    /**
+     * Get value of path.
+     * @param path full dotted path;
+     * @return value or null if there is no such path;
+     */
+    public V get(String path) {
+        Node<V> node = find(path, path.length());
+        return node != null ? node.value : null;
+    }
+    
+    /**
+     * Get value of parent path without building parent path string.
+     * @param path full dotted path;
+     * @return value of parent or null if path is top level or parent is absent;
+     */
+    public V getParent(String path) {
+        int dot = path.lastIndexOf(SEPARATOR);
+        if (dot < 0) {
+            return null;
+        }
+        Node<V> node = find(path, dot);
+        return node != null ? node.value : null;
+    }
+    
+    /**
+     * Check if path has value.
+     * @param path full dotted path;
+     * @return true if path is present;
+     */
+    public boolean contains(String path) {
+        return get(path) != null;
+    }
+    
+    /**
+     * Get values of direct children of path.
+     * @param path full dotted path or empty string for top level;
+     * @return list with values (unordered);
+     */
+    public List<V> getChildren(String path) {
+        List<V> result = new ArrayList<>();
+        Node<V> node = find(path, path.length());
+        if (node != null && node.table != null) {
+            for (Node<V> child: node.table) {
+                if (child != null && child.value != null) {
+                    result.add(child.value);
+                }
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Remove path with all its subpaths.
+     * @param path full dotted path;
+     * @return value of removed path or null;
+     */
+    public V remove(String path) {
+        Node<V> node = find(path, path.length());
+        if (node == null || node == root) {
+            return null;
+        }
+        node.parent.delete(node);
+        size -= countValues(node);
+        return node.value;
+    }
+    
+    /**
+     * Move (rename) path with all its subpaths.
+     * @param path current full path;
+     * @param newPath new full path;
+     * @return false if there is no such path or new path is already used;
+     */
+    public boolean move(String path, String newPath) {
+        Node<V> node = find(path, path.length());
+        if (node == null || node == root || find(newPath, newPath.length()) != null) {
+            return false;
+        }
+        int dot = newPath.lastIndexOf(SEPARATOR);
+        Node<V> newParent = dot < 0 ? root : find(newPath, dot);
+        if (newParent == null) {
+            throw new IllegalArgumentException("Parent of " + newPath + " doesn't exist");
+        }
+        for (Node<V> ancestor = newParent; ancestor != null; ancestor = ancestor.parent) {
+            if (ancestor == node) {
+                throw new IllegalArgumentException("Can't move " + path + " inside itself");
+            }
+        }
+        node.parent.delete(node);
+        node.segment = intern(newPath.substring(dot + 1));
+        node.parent = newParent;
+        newParent.add(node);
+        return true;
+    }
+    
+    /**
+     * Get count of paths with values.
+     * @return count of paths;
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Find node of path prefix.
+     * @param path full dotted path;
+     * @param end end of path prefix (exclusive);
+     * @return node or null;
+     */
+    private Node<V> find(String path, int end) {
+        Node<V> node = root;
+        int start = 0;
+        while (end > 0) {
+            int dot = path.indexOf(SEPARATOR, start);
+            int segmentEnd = dot < 0 || dot > end ? end : dot;
+            node = node.child(path, start, segmentEnd);
+            if (node == null || segmentEnd == end) {
+                return node;
+            }
+            start = dot + 1;
+        }
+        return node;
+    }
+    
+    /**
+     * Get interned segment name.
+     * @param segment segment name;
+     * @return pooled string;
+     */
+    private String intern(String segment) {
+        String pooled = segments.get(segment);
+        if (pooled == null) {
+            segments.put(segment, segment);
+            pooled = segment;
+        }
+        return pooled;
+    }
+    
+    /**
+     * Count values in subtree.
+     * @param node subtree root;
+     * @return count of nodes with values;
+     */
+    private static int countValues(Node<?> node) {
+        int count = node.value != null ? 1 : 0;
+        if (node.table != null) {
+            for (Node<?> child: node.table) {
+                if (child != null) {
+                    count += countValues(child);
+                }
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Hash of string region, same as {@link String#hashCode()} of substring.
+     */
+    private static int hash(String path, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + path.charAt(i);
+        }
+        return hash;
+    }
+    
+    /**
+     * Spread hash bits for table index.
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+    
+    /**
+     * Trie node with open addressing table of children.
+     * @param <V> type of value;
+     */
+    private static final class Node<V> {
+        
+        /**
+         * Parent node (null for root).
+         */
+        private Node<V> parent;
+        
+        /**
+         * Segment name of this node.
+         */
+        private String segment;
+        
+        /**
+         * Bound value or null.
+         */
+        private V value;
+        
+        /**
+         * Children table (null if node has no children).
+         */
+        private Node<V>[] table;
+        
+        /**
+         * Count of children.
+         */
+        private int childCount;
+        
+        /**
+         * Default constructor.
+         * @param parent parent node;
+         * @param segment segment name;
+         */
+        Node(Node<V> parent, String segment) {
+            this.parent = parent;
+            this.segment = segment;
+        }
+        
+        /**
+         * Find child by segment name inside path region.
+         */
+        Node<V> child(String path, int start, int end) {
+            if (table == null) {
+                return null;
+            }
+            int length = end - start;
+            int mask = table.length - 1;
+            for (int i = spread(hash(path, start, end)) & mask; ; i = (i + 1) & mask) {
+                Node<V> candidate = table[i];
+                if (candidate == null) {
+                    return null;
+                }
+                if (candidate.segment.length() == length && path.regionMatches(start, candidate.segment, 0, length)) {
+                    return candidate;
+                }
+            }
+        }
+        
+        /**
+         * Add child node.
+         */
+        void add(Node<V> child) {
+            if (table == null) {
+                table = newTable(4);
+            } else if ((childCount + 1) * 4 > table.length * 3) {
+                Node<V>[] old = table;
+                table = newTable(old.length * 2);
+                for (Node<V> current: old) {
+                    if (current != null) {
+                        insert(current);
+                    }
+                }
+            }
+            insert(child);
+            childCount++;
+        }
+        
+        /**
+         * Delete child node (table rebuilt without it).
+         */
+        void delete(Node<V> child) {
+            Node<V>[] old = table;
+            table = newTable(old.length);
+            for (Node<V> current: old) {
+                if (current != null && current != child) {
+                    insert(current);
+                }
+            }
+            childCount--;
+        }
+        
+        /**
+         * Create table of child nodes.
+         */
+        @SuppressWarnings("unchecked")
+        private static <V> Node<V>[] newTable(int size) {
+            return (Node<V>[]) new Node<?>[size];
+        }
+        
+        /**
+         * Insert node into table without resize.
+         */
+        private void insert(Node<V> child) {
+            int mask = table.length - 1;
+            int i = spread(child.segment.hashCode()) & mask;
+            while (table[i] != null) {
+                i = (i + 1) & mask;
+            }
+            table[i] = child;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Codec for note texts stored in the database.<br/>
+ * <br/>
+ * Small texts stored as plain UTF-8. Bigger texts compressed with 
+ * raw deflate, compression level depends on text size. Compressed data 
+ * starts with {@link #MAGIC} byte which never appears in UTF-8, 
+ * so plain texts (including rows written before compression) 
+ * are decoded without any header.<br/>
+ * <br/>
+ * Format of compressed data: MAGIC, codec byte, 4 bytes of original 
+ * length (big endian), deflate stream.
+ * @author Stanislav Nepochatov
+ */
+public final class TextCodec {
+    
+    /**
+     * Header byte of compressed data (invalid in UTF-8).
+     */
+    public static final int MAGIC = 0xFF;
+    
+    /**
+     * Codec byte of raw deflate stream.
+     */
+    public static final int CODEC_DEFLATE = 1;
+    
+    /**
+     * Length of compressed data header.
+     */
+    private static final int HEADER_SIZE = 6;
+    
+    /**
+     * Texts smaller than this size (in bytes) stored uncompressed.
+     */
+    public static final int MIN_COMPRESS_SIZE = 512;
+    
+    /**
+     * Texts bigger than this size (in bytes) compressed with fastest level.
+     */
+    public static final int FAST_COMPRESS_SIZE = 64 * 1024;
+    
+    /**
+     * Deflater with default compression level for medium texts.
+     */
+    private static final ThreadLocal<Deflater> DEFAULT_DEFLATER = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+    };
+    
+    /**
+     * Deflater with fastest compression level for big texts.
+     */
+    private static final ThreadLocal<Deflater> FAST_DEFLATER = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.BEST_SPEED, true);
+        }
+    };
+    
+    /**
+     * Inflater for decoding.
+     */
+    private static final ThreadLocal<Inflater> INFLATER = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater(true);
+        }
+    };
+    
+    /**
+     * Static only.
+     */
+    private TextCodec() {
+    }
+    
+    /**
+     * Encode text for storage.
+     * @param text text to encode;
+     * @return plain UTF-8 bytes or compressed data;
+     */
+    public static byte[] encode(String text) {
+        byte[] plain = text.getBytes(StandardCharsets.UTF_8);
+        if (plain.length < MIN_COMPRESS_SIZE) {
+            return plain;
+        }
+        
+        Deflater deflater = plain.length < FAST_COMPRESS_SIZE ? DEFAULT_DEFLATER.get() : FAST_DEFLATER.get();
+        deflater.reset();
+        deflater.setInput(plain);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(plain.length / 3 + HEADER_SIZE);
+        out.write(MAGIC);
+        out.write(CODEC_DEFLATE);
+        out.write(plain.length >>> 24);
+        out.write(plain.length >>> 16);
+        out.write(plain.length >>> 8);
+        out.write(plain.length);
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            int count = deflater.deflate(buffer);
+            out.write(buffer, 0, count);
+            if (out.size() >= plain.length) {
+                return plain;
+            }
+        }
+        return out.toByteArray();
+    }
+    
+    /**
+     * Decode stored text.
+     * @param data plain UTF-8 bytes or compressed data;
+     * @return decoded text;
+     * @throws IllegalArgumentException if compressed data is corrupted;
+     */
+    public static String decode(byte[] data) {
+        if (!isCompressed(data)) {
+            return new String(data, StandardCharsets.UTF_8);
+        }
+        if (data[1] != CODEC_DEFLATE) {
+            throw new IllegalArgumentException("Unknown text codec " + data[1]);
+        }
+        int length = ((data[2] & 0xFF) << 24) | ((data[3] & 0xFF) << 16) | ((data[4] & 0xFF) << 8) | (data[5] & 0xFF);
+        byte[] plain = new byte[length];
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(data, HEADER_SIZE, data.length - HEADER_SIZE);
+        try {
+            int readed = 0;
+            while (readed < length) {
+                int count = inflater.inflate(plain, readed, length - readed);
+                if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IllegalArgumentException("Compressed text is truncated");
+                }
+                readed += count;
+            }
+        } catch (DataFormatException ex) {
+            throw new IllegalArgumentException("Compressed text is corrupted", ex);
+        }
+        return new String(plain, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Check if data has compression header.
+     * @param data stored data;
+     * @return true if data is compressed;
+     */
+    public static boolean isCompressed(byte[] data) {
+        return data.length >= HEADER_SIZE && (data[0] & 0xFF) == MAGIC;
+    }
+}
@@ -0,0 +1,712 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Text diff engine for note versions.<br/>
+ * <br/>
+ * Texts are splitted to lines or words, tokens are interned to int ids 
+ * and compared with Myers O(ND) algorithm after common prefix and suffix 
+ * are stripped. Small ranges are compared by greedy forward search with 
+ * kept trace (bounded by {@link #TRACE_BUDGET}), large ranges by 
+ * bidirectional middle snake search which needs linear space. Very 
+ * different texts are splitted at furthest reached point when edit 
+ * cost exceeds limit, and when total search work exceeds limit (linear 
+ * in text size) remaining ranges are reported as whole replacements, 
+ * so result stays correct but may be not minimal.<br/>
+ * <br/>
+ * Result is streamed to {@link Visitor} in text order: equal ranges, 
+ * deleted ranges of base and inserted ranges of target, every change 
+ * block reported as deletion followed by insertion.
+ * @author Stanislav Nepochatov
+ */
+public final class TextDiff {
+    
+    /**
+     * Diff granularity.
+     */
+    public enum Granularity {
+        
+        /**
+         * Whole lines with line terminators.
+         */
+        LINE,
+        
+        /**
+         * Runs of letters and digits, runs of whitespace and single other chars.
+         */
+        WORD
+    }
+    
+    /**
+     * Diff operation.
+     */
+    public enum Operation {
+        
+        /**
+         * Text is the same in both versions.
+         */
+        EQUAL,
+        
+        /**
+         * Text of base version only.
+         */
+        DELETE,
+        
+        /**
+         * Text of target version only.
+         */
+        INSERT
+    }
+    
+    /**
+     * Receiver of streamed diff.
+     */
+    public interface Visitor {
+        
+        /**
+         * Receive next range of diff.
+         * @param operation range operation;
+         * @param text range text;
+         */
+        void visit(Operation operation, String text);
+    }
+    
+    /**
+     * Max count of tokens in range compared with kept trace.
+     */
+    public static final int TRACE_MAX_TOKENS = 16384;
+    
+    /**
+     * Max count of ints in kept trace, larger edit costs switch to middle snake search.
+     */
+    public static final int TRACE_BUDGET = 1 << 20;
+    
+    /**
+     * Min edit cost limit of middle snake search.
+     */
+    public static final int MIN_COST_LIMIT = 1024;
+    
+    /**
+     * Search work (visited diagonals and compared tokens) allowed per token of both texts.
+     */
+    public static final int WORK_PER_TOKEN = 32;
+    
+    /**
+     * Search work allowed for any texts.
+     */
+    public static final long MIN_WORK = 1L << 20;
+    
+    /**
+     * Static only.
+     */
+    private TextDiff() {
+    }
+    
+    /**
+     * Compute diff of texts.
+     * @param base old text;
+     * @param target new text;
+     * @param granularity diff granularity;
+     * @return list of ranges in text order;
+     */
+    public static List<Edit> diff(String base, String target, Granularity granularity) {
+        final List<Edit> result = new ArrayList<>();
+        diff(base, target, granularity, false, new Visitor() {
+            @Override
+            public void visit(Operation operation, String text) {
+                result.add(new Edit(operation, text));
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * Compute diff of texts and stream it to visitor.
+     * @param base old text;
+     * @param target new text;
+     * @param granularity diff granularity;
+     * @param linearSpace never keep trace, even for small ranges (slower, but 
+     * memory is linear in all cases);
+     * @param visitor receiver of diff;
+     */
+    public static void diff(String base, String target, Granularity granularity, boolean linearSpace, Visitor visitor) {
+        Interner interner = new Interner();
+        Tokens a = Tokens.split(base, granularity, interner);
+        Tokens b = Tokens.split(target, granularity, interner);
+        Comparison comparison = new Comparison(a, b, linearSpace, visitor);
+        comparison.compare(0, a.count, 0, b.count);
+        comparison.flush();
+    }
+    
+    /**
+     * Single range of diff.
+     */
+    public static final class Edit {
+        
+        /**
+         * Range operation.
+         */
+        private final Operation operation;
+        
+        /**
+         * Range text.
+         */
+        private final String text;
+        
+        /**
+         * Parametrick constructor.
+         * @param operation range operation;
+         * @param text range text;
+         */
+        public Edit(Operation operation, String text) {
+            this.operation = operation;
+            this.text = text;
+        }
+        
+        /**
+         * Get range operation.
+         * @return operation;
+         */
+        public Operation getOperation() {
+            return operation;
+        }
+        
+        /**
+         * Get range text.
+         * @return text;
+         */
+        public String getText() {
+            return text;
+        }
+
+        @Override
+        public String toString() {
+            return operation + "[" + text + "]";
+        }
+    }
+    
+    /**
+     * Tokenized text.
+     */
+    private static final class Tokens {
+        
+        /**
+         * Source text.
+         */
+        private final String text;
+        
+        /**
+         * Token start offsets, last element is text length.
+         */
+        private int[] starts = new int[16];
+        
+        /**
+         * Interned token ids.
+         */
+        private int[] ids = new int[16];
+        
+        /**
+         * Count of tokens.
+         */
+        private int count;
+        
+        private Tokens(String text) {
+            this.text = text;
+        }
+        
+        /**
+         * Split text to tokens.
+         */
+        static Tokens split(String text, Granularity granularity, Interner interner) {
+            Tokens tokens = new Tokens(text);
+            int length = text.length();
+            int start = 0;
+            while (start < length) {
+                int end = start + 1;
+                if (granularity == Granularity.LINE) {
+                    int newline = text.indexOf('\n', start);
+                    end = newline < 0 ? length : newline + 1;
+                } else {
+                    int kind = kind(text.charAt(start));
+                    if (kind != 2) {
+                        while (end < length && kind(text.charAt(end)) == kind) {
+                            end++;
+                        }
+                    }
+                }
+                tokens.add(start, interner.intern(text, start, end));
+                start = end;
+            }
+            tokens.starts[tokens.count] = length;
+            return tokens;
+        }
+        
+        /**
+         * Get kind of char for word splitting: 0 - letter or digit, 1 - whitespace, 2 - other.
+         */
+        private static int kind(char ch) {
+            if (Character.isLetterOrDigit(ch)) {
+                return 0;
+            }
+            return Character.isWhitespace(ch) ? 1 : 2;
+        }
+        
+        private void add(int start, int id) {
+            if (count + 1 >= starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+                ids = Arrays.copyOf(ids, ids.length * 2);
+            }
+            starts[count] = start;
+            ids[count++] = id;
+        }
+        
+        /**
+         * Get text of tokens range.
+         */
+        String text(int from, int to) {
+            return text.substring(starts[from], starts[to]);
+        }
+    }
+    
+    /**
+     * Open addressing table of token ids, compares text regions without substrings.
+     */
+    private static final class Interner {
+        
+        /**
+         * Table of token ids plus one (0 for empty cell).
+         */
+        private int[] table = new int[1024];
+        
+        /**
+         * Source text of token by id.
+         */
+        private String[] texts = new String[256];
+        
+        /**
+         * Start offset of token by id.
+         */
+        private int[] starts = new int[256];
+        
+        /**
+         * Length of token by id.
+         */
+        private int[] lengths = new int[256];
+        
+        /**
+         * Hash of token by id.
+         */
+        private int[] hashes = new int[256];
+        
+        /**
+         * Count of ids.
+         */
+        private int size;
+        
+        /**
+         * Get id of text region.
+         */
+        int intern(String text, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + text.charAt(i);
+            }
+            int length = end - start;
+            int mask = table.length - 1;
+            int cell = mix(hash) & mask;
+            while (table[cell] != 0) {
+                int id = table[cell] - 1;
+                if (hashes[id] == hash && lengths[id] == length 
+                        && text.regionMatches(start, texts[id], starts[id], length)) {
+                    return id;
+                }
+                cell = (cell + 1) & mask;
+            }
+            if (size == texts.length) {
+                texts = Arrays.copyOf(texts, size * 2);
+                starts = Arrays.copyOf(starts, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+                hashes = Arrays.copyOf(hashes, size * 2);
+            }
+            int id = size++;
+            texts[id] = text;
+            starts[id] = start;
+            lengths[id] = length;
+            hashes[id] = hash;
+            table[cell] = id + 1;
+            if (size * 2 > table.length) {
+                rehash();
+            }
+            return id;
+        }
+        
+        private void rehash() {
+            table = new int[table.length * 2];
+            int mask = table.length - 1;
+            for (int id = 0; id < size; id++) {
+                int cell = mix(hashes[id]) & mask;
+                while (table[cell] != 0) {
+                    cell = (cell + 1) & mask;
+                }
+                table[cell] = id + 1;
+            }
+        }
+        
+        private static int mix(int hash) {
+            hash *= 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
+    }
+    
+    /**
+     * Comparison of two tokenized texts with streaming of result.
+     */
+    private static final class Comparison {
+        
+        private final Tokens base;
+        private final Tokens target;
+        private final int[] a;
+        private final int[] b;
+        private final boolean linearSpace;
+        private final Visitor visitor;
+        
+        /**
+         * Done and allowed search work.
+         */
+        private long work;
+        private final long workLimit;
+        
+        /**
+         * Count of base and target tokens already passed to visitor.
+         */
+        private int aDone;
+        private int bDone;
+        
+        /**
+         * Count of base and target tokens already compared.
+         */
+        private int aPos;
+        private int bPos;
+        
+        /**
+         * Pending range is equal range.
+         */
+        private boolean inEqual;
+        
+        Comparison(Tokens base, Tokens target, boolean linearSpace, Visitor visitor) {
+            this.base = base;
+            this.target = target;
+            this.a = base.ids;
+            this.b = target.ids;
+            this.linearSpace = linearSpace;
+            this.visitor = visitor;
+            this.workLimit = MIN_WORK + (long) WORK_PER_TOKEN * (base.count + target.count);
+        }
+        
+        /**
+         * Compare ranges of tokens.
+         */
+        void compare(int aLo, int aHi, int bLo, int bHi) {
+            int suffix = 0;
+            while (true) {
+                int prefix = 0;
+                while (aLo + prefix < aHi && bLo + prefix < bHi && a[aLo + prefix] == b[bLo + prefix]) {
+                    prefix++;
+                }
+                equal(prefix);
+                aLo += prefix;
+                bLo += prefix;
+                while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+                    aHi--;
+                    bHi--;
+                    suffix++;
+                }
+                if (aLo == aHi || bLo == bHi) {
+                    delete(aHi - aLo);
+                    insert(bHi - bLo);
+                    break;
+                }
+                if (!linearSpace && aHi - aLo + bHi - bLo <= TRACE_MAX_TOKENS && trace(aLo, aHi, bLo, bHi)) {
+                    break;
+                }
+                int[] split = bisect(aLo, aHi, bLo, bHi);
+                if (split == null) {
+                    delete(aHi - aLo);
+                    insert(bHi - bLo);
+                    break;
+                }
+                //Left part is compared recursively, right part in this loop.
+                compare(aLo, split[0], bLo, split[1]);
+                aLo = split[0];
+                bLo = split[1];
+            }
+            equal(suffix);
+        }
+        
+        /**
+         * Find split point of ranges with middle snake search.
+         * @return base and target split offsets or null if ranges have nothing in common;
+         */
+        private int[] bisect(int aLo, int aHi, int bLo, int bHi) {
+            int n = aHi - aLo;
+            int m = bHi - bLo;
+            int maxD = (n + m + 1) / 2;
+            int costLimit = Math.max(MIN_COST_LIMIT, (int) Math.sqrt(n + m));
+            int offset = Math.min(maxD, costLimit + 1);
+            int length = 2 * offset + 2;
+            int[] v1 = new int[length];
+            int[] v2 = new int[length];
+            Arrays.fill(v1, -1);
+            Arrays.fill(v2, -1);
+            v1[offset + 1] = 0;
+            v2[offset + 1] = 0;
+            int delta = n - m;
+            boolean front = (delta & 1) != 0;
+            int k1start = 0;
+            int k1end = 0;
+            int k2start = 0;
+            int k2end = 0;
+            for (int d = 0; d < maxD; d++) {
+                if (d > costLimit || work > workLimit) {
+                    return d > 0 ? furthest(v1, offset, d - 1, k1start, k1end, n, m, aLo, bLo) : null;
+                }
+                work += 2 * d + 2;
+                for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+                    int k1Offset = offset + k1;
+                    int x1;
+                    if (k1 == -d || (k1 != d && v1[k1Offset - 1] < v1[k1Offset + 1])) {
+                        x1 = v1[k1Offset + 1];
+                    } else {
+                        x1 = v1[k1Offset - 1] + 1;
+                    }
+                    int y1 = x1 - k1;
+                    int snakeStart = x1;
+                    while (x1 < n && y1 < m && a[aLo + x1] == b[bLo + y1]) {
+                        x1++;
+                        y1++;
+                    }
+                    work += x1 - snakeStart;
+                    v1[k1Offset] = x1;
+                    if (x1 > n) {
+                        k1end += 2;
+                    } else if (y1 > m) {
+                        k1start += 2;
+                    } else if (front) {
+                        int k2Offset = offset + delta - k1;
+                        if (k2Offset >= 0 && k2Offset < length && v2[k2Offset] != -1 && x1 >= n - v2[k2Offset]) {
+                            return new int[] {aLo + x1, bLo + y1};
+                        }
+                    }
+                }
+                for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+                    int k2Offset = offset + k2;
+                    int x2;
+                    if (k2 == -d || (k2 != d && v2[k2Offset - 1] < v2[k2Offset + 1])) {
+                        x2 = v2[k2Offset + 1];
+                    } else {
+                        x2 = v2[k2Offset - 1] + 1;
+                    }
+                    int y2 = x2 - k2;
+                    int snakeStart = x2;
+                    while (x2 < n && y2 < m && a[aHi - 1 - x2] == b[bHi - 1 - y2]) {
+                        x2++;
+                        y2++;
+                    }
+                    work += x2 - snakeStart;
+                    v2[k2Offset] = x2;
+                    if (x2 > n) {
+                        k2end += 2;
+                    } else if (y2 > m) {
+                        k2start += 2;
+                    } else if (!front) {
+                        int k1Offset = offset + delta - k2;
+                        if (k1Offset >= 0 && k1Offset < length && v1[k1Offset] != -1) {
+                            int x1 = v1[k1Offset];
+                            int y1 = offset + x1 - k1Offset;
+                            if (x1 >= n - x2) {
+                                return new int[] {aLo + x1, bLo + y1};
+                            }
+                        }
+                    }
+                }
+            }
+            return null;
+        }
+        
+        /**
+         * Get furthest point reached by forward search (split for too expensive ranges).
+         */
+        private int[] furthest(int[] v1, int offset, int d, int k1start, int k1end, int n, int m, int aLo, int bLo) {
+            int bestX = -1;
+            int bestY = -1;
+            for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+                int x1 = v1[offset + k1];
+                int y1 = x1 - k1;
+                if (x1 >= 0 && x1 <= n && y1 >= 0 && y1 <= m && x1 + y1 > bestX + bestY) {
+                    bestX = x1;
+                    bestY = y1;
+                }
+            }
+            if (bestX + bestY <= 0 || bestX + bestY >= n + m) {
+                return null;
+            }
+            return new int[] {aLo + bestX, bLo + bestY};
+        }
+        
+        /**
+         * Compare ranges with greedy forward search keeping trace of every step.
+         * @return false if trace exceeds budget and nothing was reported;
+         */
+        private boolean trace(int aLo, int aHi, int bLo, int bHi) {
+            int n = aHi - aLo;
+            int m = bHi - bLo;
+            int max = n + m;
+            int offset = Math.min(max, (int) Math.sqrt(TRACE_BUDGET) + 1) + 1;
+            int[] v = new int[2 * offset + 1];
+            List<int[]> steps = new ArrayList<>();
+            int used = 0;
+            for (int d = 0; d <= max; d++) {
+                for (int k = -d; k <= d; k += 2) {
+                    int x;
+                    if (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])) {
+                        x = v[offset + k + 1];
+                    } else {
+                        x = v[offset + k - 1] + 1;
+                    }
+                    int y = x - k;
+                    int snakeStart = x;
+                    while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                        x++;
+                        y++;
+                    }
+                    work += x - snakeStart;
+                    v[offset + k] = x;
+                    if (x >= n && y >= m) {
+                        backtrack(steps, d, n, m);
+                        return true;
+                    }
+                }
+                used += 2 * d + 1;
+                work += d + 1;
+                if (used > TRACE_BUDGET || work > workLimit) {
+                    return false;
+                }
+                steps.add(Arrays.copyOfRange(v, offset - d, offset + d + 1));
+            }
+            return false;
+        }
+        
+        /**
+         * Restore path from trace and report it.
+         */
+        private void backtrack(List<int[]> steps, int cost, int n, int m) {
+            int[] ops = new int[2 * cost + 1];
+            int[] counts = new int[2 * cost + 1];
+            int size = 0;
+            int x = n;
+            int y = m;
+            for (int d = cost; d > 0; d--) {
+                int[] previous = steps.get(d - 1);
+                int k = x - y;
+                boolean down = k == -d || (k != d && previous[k - 1 + d - 1] < previous[k + 1 + d - 1]);
+                int previousK = down ? k + 1 : k - 1;
+                int previousX = previous[previousK + d - 1];
+                int moveX = down ? previousX : previousX + 1;
+                ops[size] = 0;
+                counts[size++] = x - moveX;
+                ops[size] = down ? 2 : 1;
+                counts[size++] = 1;
+                x = previousX;
+                y = previousX - previousK;
+            }
+            ops[size] = 0;
+            counts[size++] = x;
+            for (int i = size - 1; i >= 0; i--) {
+                switch (ops[i]) {
+                    case 0:
+                        equal(counts[i]);
+                        break;
+                    case 1:
+                        delete(counts[i]);
+                        break;
+                    default:
+                        insert(counts[i]);
+                }
+            }
+        }
+        
+        private void equal(int count) {
+            if (count == 0) {
+                return;
+            }
+            if (!inEqual) {
+                flush();
+                inEqual = true;
+            }
+            aPos += count;
+            bPos += count;
+        }
+        
+        private void delete(int count) {
+            if (count == 0) {
+                return;
+            }
+            if (inEqual) {
+                flush();
+                inEqual = false;
+            }
+            aPos += count;
+        }
+        
+        private void insert(int count) {
+            if (count == 0) {
+                return;
+            }
+            if (inEqual) {
+                flush();
+                inEqual = false;
+            }
+            bPos += count;
+        }
+        
+        /**
+         * Pass pending range to visitor.
+         */
+        void flush() {
+            if (inEqual) {
+                if (aPos > aDone) {
+                    visitor.visit(Operation.EQUAL, base.text(aDone, aPos));
+                }
+            } else {
+                if (aPos > aDone) {
+                    visitor.visit(Operation.DELETE, base.text(aDone, aPos));
+                }
+                if (bPos > bDone) {
+                    visitor.visit(Operation.INSERT, target.text(bDone, bPos));
+                }
+            }
+            aDone = aPos;
+            bDone = bPos;
+        }
+    }
+}
@@ -0,0 +1,611 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory inverted index of notes for full text search.<br/>
+ * <br/>
+ * Index is split to segments by user, so every search reads only notes 
+ * of single user. Note text is stripped from HTML tags, splitted to 
+ * lowercase words, words of header are counted {@link #HEADER_BOOST} times. 
+ * Results are ranked by BM25.<br/>
+ * <br/>
+ * Replaced or removed notes are only marked as dead in postings, segment 
+ * is compacted when dead notes outnumber live ones. Index is thread safe, 
+ * text analysis is done out of segment lock, so documents for index 
+ * rebuild can be prepared by many threads.
+ * @author Stanislav Nepochatov
+ */
+public class TextIndex {
+    
+    /**
+     * Weight of header words against text words.
+     */
+    public static final int HEADER_BOOST = 3;
+    
+    /**
+     * BM25 term frequency saturation.
+     */
+    private static final float K1 = 1.2f;
+    
+    /**
+     * BM25 length normalization.
+     */
+    private static final float B = 0.75f;
+    
+    /**
+     * Min count of dead notes in segment for compaction.
+     */
+    private static final int COMPACT_MIN_DEAD = 1024;
+    
+    /**
+     * Segments by user id.
+     */
+    private final ConcurrentMap<Integer, Segment> segments = new ConcurrentHashMap<>();
+    
+    /**
+     * Split text to lowercase words. HTML tags and entities are skipped.
+     * @param text text or HTML to split;
+     * @return list of words in text order;
+     */
+    public static List<String> tokenize(String text) {
+        List<String> result = new ArrayList<>();
+        if (text == null) {
+            return result;
+        }
+        StringBuilder word = new StringBuilder();
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                word.append(Character.toLowerCase(c));
+                continue;
+            }
+            flushWord(word, result);
+            if (c == '<') {
+                int end = text.indexOf('>', i);
+                i = end < 0 ? length : end;
+            } else if (c == '&') {
+                int end = text.indexOf(';', i);
+                if (end > 0 && end - i <= 10) {
+                    i = end;
+                }
+            }
+        }
+        flushWord(word, result);
+        return result;
+    }
+    
+    /**
+     * Prepare note for indexing.
+     * @param noteId id of note;
+     * @param userId id of note owner;
+     * @param header note header;
+     * @param text text of latest version;
+     * @return analyzed document;
+     */
+    public static Document analyze(int noteId, int userId, String header, String text) {
+        Map<String, int[]> counts = new HashMap<>();
+        for (String term: tokenize(header)) {
+            count(counts, term, HEADER_BOOST);
+        }
+        for (String term: tokenize(text)) {
+            count(counts, term, 1);
+        }
+        return new Document(noteId, userId, counts);
+    }
+    
+    /**
+     * Add note to index or replace indexed note. Empty document removes note.
+     * @param document analyzed note;
+     */
+    public void add(Document document) {
+        getSegment(document.userId).add(document);
+    }
+    
+    /**
+     * Remove note from index.
+     * @param userId id of note owner;
+     * @param noteId id of note;
+     */
+    public void remove(int userId, int noteId) {
+        Segment segment = segments.get(userId);
+        if (segment != null) {
+            segment.remove(noteId);
+        }
+    }
+    
+    /**
+     * Search notes of user.
+     * @param userId id of user;
+     * @param query search words;
+     * @param limit max count of results;
+     * @return hits sorted by relevance;
+     */
+    public List<Hit> search(int userId, String query, int limit) {
+        Segment segment = segments.get(userId);
+        Set<String> terms = new LinkedHashSet<>(tokenize(query));
+        if (segment == null || terms.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        return segment.search(terms, limit);
+    }
+    
+    /**
+     * Get count of indexed notes.
+     * @return count of live notes in all segments;
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment: segments.values()) {
+            size += segment.size();
+        }
+        return size;
+    }
+    
+    /**
+     * Get segment of user (created on demand).
+     */
+    private Segment getSegment(int userId) {
+        Segment segment = segments.get(userId);
+        if (segment == null) {
+            Segment created = new Segment();
+            segment = segments.putIfAbsent(userId, created);
+            if (segment == null) {
+                segment = created;
+            }
+        }
+        return segment;
+    }
+    
+    /**
+     * Add word to result if word isn't empty or single letter.
+     */
+    private static void flushWord(StringBuilder word, List<String> result) {
+        if (word.length() > 1 || (word.length() == 1 && Character.isDigit(word.charAt(0)))) {
+            result.add(word.toString());
+        }
+        word.setLength(0);
+    }
+    
+    /**
+     * Increase term counter.
+     */
+    private static void count(Map<String, int[]> counts, String term, int weight) {
+        int[] counter = counts.get(term);
+        if (counter == null) {
+            counts.put(term, new int[] {weight});
+        } else {
+            counter[0] += weight;
+        }
+    }
+    
+    /**
+     * Analyzed note: unique terms with weighted frequencies.
+     */
+    public static final class Document {
+        
+        private final int noteId;
+        private final int userId;
+        private final String[] terms;
+        private final int[] freqs;
+        private final int length;
+        
+        /**
+         * Build document from term counters.
+         */
+        private Document(int noteId, int userId, Map<String, int[]> counts) {
+            this.noteId = noteId;
+            this.userId = userId;
+            this.terms = new String[counts.size()];
+            this.freqs = new int[counts.size()];
+            int index = 0;
+            int total = 0;
+            for (Map.Entry<String, int[]> entry: counts.entrySet()) {
+                terms[index] = entry.getKey();
+                freqs[index] = entry.getValue()[0];
+                total += freqs[index];
+                index++;
+            }
+            this.length = total;
+        }
+        
+        /**
+         * Get id of note.
+         * @return note id;
+         */
+        public int getNoteId() {
+            return noteId;
+        }
+        
+        /**
+         * Get id of note owner.
+         * @return user id;
+         */
+        public int getUserId() {
+            return userId;
+        }
+        
+        /**
+         * Check if document has no words.
+         * @return true if note has nothing to index;
+         */
+        public boolean isEmpty() {
+            return terms.length == 0;
+        }
+    }
+    
+    /**
+     * Search result.
+     */
+    public static final class Hit implements Comparable<Hit> {
+        
+        private final int noteId;
+        private final float score;
+        
+        /**
+         * Parametrick constructor.
+         * @param noteId id of note;
+         * @param score relevance of note;
+         */
+        public Hit(int noteId, float score) {
+            this.noteId = noteId;
+            this.score = score;
+        }
+        
+        /**
+         * Get id of note.
+         * @return note id;
+         */
+        public int getNoteId() {
+            return noteId;
+        }
+        
+        /**
+         * Get relevance score.
+         * @return BM25 score;
+         */
+        public float getScore() {
+            return score;
+        }
+        
+        /**
+         * Less relevant hit is less, equal scores ordered by newer (bigger) note id.
+         */
+        @Override
+        public int compareTo(Hit other) {
+            int compare = Float.compare(score, other.score);
+            return compare != 0 ? compare : Integer.compare(noteId, other.noteId);
+        }
+    }
+    
+    /**
+     * Posting list of single term.
+     */
+    private static final class Postings {
+        
+        /**
+         * Slots of documents in adding order.
+         */
+        private int[] slots = new int[4];
+        
+        /**
+         * Term frequencies in documents.
+         */
+        private int[] freqs = new int[4];
+        
+        /**
+         * Count of postings (including dead).
+         */
+        private int size;
+        
+        /**
+         * Count of live documents with this term.
+         */
+        private int live;
+        
+        void add(int slot, int freq) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+                freqs = Arrays.copyOf(freqs, size * 2);
+            }
+            slots[size] = slot;
+            freqs[size] = freq;
+            size++;
+            live++;
+        }
+    }
+    
+    /**
+     * Score accumulator of single search.
+     */
+    private static interface Accumulator {
+        
+        /**
+         * Add score of slot.
+         */
+        void add(int slot, float score);
+        
+        /**
+         * Get count of touched slots.
+         */
+        int count();
+        
+        /**
+         * Get touched slot by index.
+         */
+        int slot(int index);
+        
+        /**
+         * Get score of touched slot by index.
+         */
+        float score(int index);
+    }
+    
+    /**
+     * Accumulator with score array for all slots.
+     */
+    private static final class DenseAccumulator implements Accumulator {
+        
+        private final float[] scores;
+        private final int[] touched;
+        private int count;
+        
+        DenseAccumulator(int slotCount) {
+            scores = new float[slotCount];
+            touched = new int[slotCount];
+        }
+        
+        @Override
+        public void add(int slot, float score) {
+            if (scores[slot] == 0) {
+                touched[count++] = slot;
+            }
+            scores[slot] += score;
+        }
+        
+        @Override
+        public int count() {
+            return count;
+        }
+        
+        @Override
+        public int slot(int index) {
+            return touched[index];
+        }
+        
+        @Override
+        public float score(int index) {
+            return scores[touched[index]];
+        }
+    }
+    
+    /**
+     * Accumulator with open addressing table sized by count of candidates.
+     */
+    private static final class SparseAccumulator implements Accumulator {
+        
+        private final int[] keys;
+        private final float[] values;
+        private final int[] order;
+        private int count;
+        
+        SparseAccumulator(int candidates) {
+            int capacity = Integer.highestOneBit(Math.max(candidates, 2) * 2 - 1) << 1;
+            keys = new int[capacity];
+            values = new float[capacity];
+            order = new int[candidates];
+            Arrays.fill(keys, -1);
+        }
+        
+        @Override
+        public void add(int slot, float score) {
+            int mask = keys.length - 1;
+            int i = (slot * 0x9E3779B9) >>> 1 & mask;
+            while (keys[i] != slot) {
+                if (keys[i] == -1) {
+                    keys[i] = slot;
+                    order[count++] = i;
+                    break;
+                }
+                i = (i + 1) & mask;
+            }
+            values[i] += score;
+        }
+        
+        @Override
+        public int count() {
+            return count;
+        }
+        
+        @Override
+        public int slot(int index) {
+            return keys[order[index]];
+        }
+        
+        @Override
+        public float score(int index) {
+            return values[order[index]];
+        }
+    }
+    
+    /**
+     * Index of single user notes.
+     */
+    private static final class Segment {
+        
+        /**
+         * Postings by term.
+         */
+        private Map<String, Postings> postings = new HashMap<>();
+        
+        /**
+         * Documents by slot (null for dead slots).
+         */
+        private Document[] docs = new Document[16];
+        
+        /**
+         * Slots by note id.
+         */
+        private Map<Integer, Integer> slotsByNote = new HashMap<>();
+        
+        /**
+         * Count of used slots.
+         */
+        private int slotCount;
+        
+        /**
+         * Total length of live documents.
+         */
+        private long totalLength;
+        
+        synchronized int size() {
+            return slotsByNote.size();
+        }
+        
+        synchronized void add(Document document) {
+            kill(document.noteId);
+            if (!document.isEmpty()) {
+                append(document);
+            }
+            compactIfNeeded();
+        }
+        
+        synchronized void remove(int noteId) {
+            kill(noteId);
+            compactIfNeeded();
+        }
+        
+        synchronized List<Hit> search(Set<String> terms, int limit) {
+            int live = slotsByNote.size();
+            if (live == 0) {
+                return Collections.emptyList();
+            }
+            List<Postings> matched = new ArrayList<>(terms.size());
+            int candidates = 0;
+            for (String term: terms) {
+                Postings current = postings.get(term);
+                if (current != null && current.live > 0) {
+                    matched.add(current);
+                    candidates += current.size;
+                }
+            }
+            //Rare words touch few notes, so scores are accumulated in map instead of array per slot.
+            Accumulator scores = candidates * 4 < slotCount ? new SparseAccumulator(candidates) : new DenseAccumulator(slotCount);
+            float avgLength = (float) totalLength / live;
+            for (Postings current: matched) {
+                float idf = (float) Math.log(1 + (live - current.live + 0.5) / (current.live + 0.5));
+                for (int i = 0; i < current.size; i++) {
+                    int slot = current.slots[i];
+                    Document doc = docs[slot];
+                    if (doc == null) {
+                        continue;
+                    }
+                    int freq = current.freqs[i];
+                    float norm = K1 * (1 - B + B * doc.length / avgLength);
+                    scores.add(slot, idf * freq * (K1 + 1) / (freq + norm));
+                }
+            }
+            PriorityQueue<Hit> top = new PriorityQueue<>(Math.max(1, Math.min(limit, candidates)));
+            for (int i = 0; i < scores.count(); i++) {
+                int slot = scores.slot(i);
+                Hit hit = new Hit(docs[slot].noteId, scores.score(i));
+                if (top.size() < limit) {
+                    top.add(hit);
+                } else if (hit.compareTo(top.peek()) > 0) {
+                    top.poll();
+                    top.add(hit);
+                }
+            }
+            List<Hit> result = new ArrayList<>(top);
+            Collections.sort(result, Collections.reverseOrder());
+            return result;
+        }
+        
+        /**
+         * Append document to new slot.
+         */
+        private void append(Document document) {
+            if (slotCount == docs.length) {
+                docs = Arrays.copyOf(docs, slotCount * 2);
+            }
+            int slot = slotCount++;
+            docs[slot] = document;
+            slotsByNote.put(document.noteId, slot);
+            totalLength += document.length;
+            for (int i = 0; i < document.terms.length; i++) {
+                Postings current = postings.get(document.terms[i]);
+                if (current == null) {
+                    current = new Postings();
+                    postings.put(document.terms[i], current);
+                }
+                current.add(slot, document.freqs[i]);
+            }
+        }
+        
+        /**
+         * Mark slot of note as dead.
+         */
+        private void kill(int noteId) {
+            Integer slot = slotsByNote.remove(noteId);
+            if (slot == null) {
+                return;
+            }
+            Document old = docs[slot];
+            docs[slot] = null;
+            totalLength -= old.length;
+            for (String term: old.terms) {
+                postings.get(term).live--;
+            }
+        }
+        
+        /**
+         * Rebuild postings without dead slots.
+         */
+        private void compactIfNeeded() {
+            int dead = slotCount - slotsByNote.size();
+            if (dead < COMPACT_MIN_DEAD || dead < slotsByNote.size()) {
+                return;
+            }
+            Document[] old = docs;
+            int oldCount = slotCount;
+            postings = new HashMap<>();
+            docs = new Document[Math.max(16, slotsByNote.size() * 2)];
+            slotsByNote = new HashMap<>();
+            slotCount = 0;
+            totalLength = 0;
+            for (int i = 0; i < oldCount; i++) {
+                if (old[i] != null) {
+                    append(old[i]);
+                }
+            }
+        }
+    }
+}
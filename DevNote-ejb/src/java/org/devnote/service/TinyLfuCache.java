@@ -0,0 +1,376 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Weight bounded cache with W-TinyLFU admission policy.<br/>
+ * <br/>
+ * New entries are placed into small LRU window (1% of weight). Entries 
+ * evicted from the window are candidates to main cache, which is 
+ * segmented LRU: probation and protected (80% of main) parts. Candidate 
+ * is admitted only if it was accessed more often than the victims it 
+ * replaces, so single scans of rarely used entries can't flush 
+ * popular ones. Access frequencies are estimated by count-min sketch 
+ * with 4-bit counters, which are halved periodically, so old 
+ * popularity fades.<br/>
+ * <br/>
+ * Cache is thread safe, all operations are synchronized.
+ * @author Stanislav Nepochatov
+ */
+public class TinyLfuCache<K, V> {
+    
+    /**
+     * Weight calculator of values.
+     */
+    public interface Weigher<V> {
+        
+        /**
+         * Get weight of value.
+         * @param value cached value;
+         * @return positive weight;
+         */
+        long weigh(V value);
+    }
+    
+    /**
+     * Max total weight of entries.
+     */
+    private final long maxWeight;
+    
+    /**
+     * Max weight of window.
+     */
+    private final long windowMax;
+    
+    /**
+     * Max weight of protected part of main cache.
+     */
+    private final long protectedMax;
+    
+    /**
+     * Weigher of values.
+     */
+    private final Weigher<? super V> weigher;
+    
+    /**
+     * Frequency sketch.
+     */
+    private final FrequencySketch sketch;
+    
+    /**
+     * Window entries in access order.
+     */
+    private final LinkedHashMap<K, Node<V>> window = new LinkedHashMap<>(16, 0.75f, true);
+    
+    /**
+     * Main cache entries which were accessed once since admission.
+     */
+    private final LinkedHashMap<K, Node<V>> probation = new LinkedHashMap<>(16, 0.75f, true);
+    
+    /**
+     * Main cache entries which were accessed again after admission.
+     */
+    private final LinkedHashMap<K, Node<V>> protect = new LinkedHashMap<>(16, 0.75f, true);
+    
+    /**
+     * Current weights of parts.
+     */
+    private long windowWeight;
+    private long probationWeight;
+    private long protectWeight;
+    
+    /**
+     * Lookup counters.
+     */
+    private long hits;
+    private long misses;
+    
+    /**
+     * Parametrick constructor.
+     * @param maxWeight max total weight of entries;
+     * @param expectedEntries expected count of cached entries (size of frequency sketch);
+     * @param weigher weigher of values;
+     */
+    public TinyLfuCache(long maxWeight, int expectedEntries, Weigher<? super V> weigher) {
+        this.maxWeight = maxWeight;
+        this.windowMax = Math.max(1, maxWeight / 100);
+        this.protectedMax = (maxWeight - windowMax) * 8 / 10;
+        this.weigher = weigher;
+        this.sketch = new FrequencySketch(expectedEntries);
+    }
+    
+    /**
+     * Get cached value.
+     * @param key key of value;
+     * @return value or null;
+     */
+    public synchronized V get(K key) {
+        sketch.increment(key.hashCode());
+        Node<V> node = window.get(key);
+        if (node == null) {
+            node = protect.get(key);
+        }
+        if (node == null) {
+            node = probation.remove(key);
+            if (node != null) {
+                probationWeight -= node.weight;
+                protect.put(key, node);
+                protectWeight += node.weight;
+                demoteProtected();
+            }
+        }
+        if (node == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return node.value;
+    }
+    
+    /**
+     * Put value. Value heavier than main cache is ignored, value of 
+     * already cached key is kept as is (remove key to replace its value).
+     * @param key key of value;
+     * @param value value to cache;
+     */
+    public synchronized void put(K key, V value) {
+        if (window.containsKey(key) || probation.containsKey(key) || protect.containsKey(key)) {
+            return;
+        }
+        long weight = weigher.weigh(value);
+        if (weight > maxWeight - windowMax) {
+            return;
+        }
+        sketch.increment(key.hashCode());
+        window.put(key, new Node<>(value, weight));
+        windowWeight += weight;
+        while (windowWeight > windowMax && !window.isEmpty()) {
+            Iterator<Map.Entry<K, Node<V>>> iter = window.entrySet().iterator();
+            Map.Entry<K, Node<V>> eldest = iter.next();
+            iter.remove();
+            windowWeight -= eldest.getValue().weight;
+            admit(eldest.getKey(), eldest.getValue());
+        }
+    }
+    
+    /**
+     * Remove value.
+     * @param key key of value;
+     */
+    public synchronized void remove(K key) {
+        Node<V> node = window.remove(key);
+        if (node != null) {
+            windowWeight -= node.weight;
+        }
+        node = probation.remove(key);
+        if (node != null) {
+            probationWeight -= node.weight;
+        }
+        node = protect.remove(key);
+        if (node != null) {
+            protectWeight -= node.weight;
+        }
+    }
+    
+    /**
+     * Get count of cached entries.
+     * @return count of entries;
+     */
+    public synchronized int size() {
+        return window.size() + probation.size() + protect.size();
+    }
+    
+    /**
+     * Get total weight of cached entries.
+     * @return weight of entries;
+     */
+    public synchronized long weight() {
+        return windowWeight + probationWeight + protectWeight;
+    }
+    
+    /**
+     * Get count of lookups which found value.
+     * @return count of hits;
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+    
+    /**
+     * Get count of lookups which didn't find value.
+     * @return count of misses;
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+    
+    /**
+     * Move candidate from window to main cache if it's more popular than 
+     * all victims it replaces. Victims are chosen before eviction, so 
+     * rejected candidate leaves main cache untouched.
+     */
+    private void admit(K key, Node<V> candidate) {
+        int candidateFrequency = sketch.frequency(key.hashCode());
+        long excess = probationWeight + protectWeight + candidate.weight - (maxWeight - windowMax);
+        List<K> victims = new ArrayList<>();
+        for (int part = 0; part < 2 && excess > 0; part++) {
+            Iterator<Map.Entry<K, Node<V>>> iter = (part == 0 ? probation : protect).entrySet().iterator();
+            while (excess > 0 && iter.hasNext()) {
+                Map.Entry<K, Node<V>> victim = iter.next();
+                if (candidateFrequency <= sketch.frequency(victim.getKey().hashCode())) {
+                    return;
+                }
+                victims.add(victim.getKey());
+                excess -= victim.getValue().weight;
+            }
+        }
+        for (K victim: victims) {
+            remove(victim);
+        }
+        probation.put(key, candidate);
+        probationWeight += candidate.weight;
+    }
+    
+    /**
+     * Move least recently used protected entries to probation while protected part is too heavy.
+     */
+    private void demoteProtected() {
+        while (protectWeight > protectedMax && protect.size() > 1) {
+            Iterator<Map.Entry<K, Node<V>>> iter = protect.entrySet().iterator();
+            Map.Entry<K, Node<V>> eldest = iter.next();
+            iter.remove();
+            protectWeight -= eldest.getValue().weight;
+            probation.put(eldest.getKey(), eldest.getValue());
+            probationWeight += eldest.getValue().weight;
+        }
+    }
+    
+    /**
+     * Cached value with its weight.
+     */
+    private static final class Node<V> {
+        
+        private final V value;
+        private final long weight;
+        
+        Node(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+    
+    /**
+     * Count-min sketch of access frequencies with 4 rows of 4-bit counters.
+     */
+    private static final class FrequencySketch {
+        
+        /**
+         * Hash seeds of rows.
+         */
+        private static final int[] SEEDS = {0x97CB3127, 0xB1C8F5D3, 0x9E3779B9, 0x7FEB352D};
+        
+        /**
+         * Max counter value.
+         */
+        private static final int MAX_COUNT = 15;
+        
+        /**
+         * Counters of all rows, two counters in every byte.
+         */
+        private final byte[] table;
+        
+        /**
+         * Row width mask.
+         */
+        private final int mask;
+        
+        /**
+         * Increments since last aging.
+         */
+        private int additions;
+        
+        /**
+         * Count of increments which triggers aging.
+         */
+        private final int sampleSize;
+        
+        FrequencySketch(int expectedEntries) {
+            int width = Integer.highestOneBit(Math.max(64, expectedEntries) * 2 - 1);
+            this.mask = width - 1;
+            this.table = new byte[SEEDS.length * width / 2];
+            this.sampleSize = 10 * width;
+        }
+        
+        int frequency(int hash) {
+            int min = MAX_COUNT;
+            for (int row = 0; row < SEEDS.length; row++) {
+                min = Math.min(min, get(index(row, hash)));
+            }
+            return min;
+        }
+        
+        /**
+         * Increment counters of hash (only minimal ones, conservative update).
+         */
+        void increment(int hash) {
+            int min = frequency(hash);
+            if (min == MAX_COUNT) {
+                return;
+            }
+            for (int row = 0; row < SEEDS.length; row++) {
+                int index = index(row, hash);
+                if (get(index) == min) {
+                    set(index, min + 1);
+                }
+            }
+            if (++additions >= sampleSize) {
+                age();
+            }
+        }
+        
+        /**
+         * Halve all counters.
+         */
+        private void age() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (byte) ((table[i] >>> 1) & 0x77);
+            }
+            additions /= 2;
+        }
+        
+        private int index(int row, int hash) {
+            int mixed = (hash ^ (hash >>> 16)) * SEEDS[row];
+            return row * (mask + 1) + ((mixed ^ (mixed >>> 15)) & mask);
+        }
+        
+        private int get(int index) {
+            return (table[index >> 1] >>> ((index & 1) << 2)) & 0xF;
+        }
+        
+        private void set(int index, int value) {
+            int shift = (index & 1) << 2;
+            table[index >> 1] = (byte) ((table[index >> 1] & ~(0xF << shift)) | (value << shift));
+        }
+    }
+}
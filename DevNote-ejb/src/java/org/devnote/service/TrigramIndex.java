@@ -0,0 +1,440 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory trigram index of note headers.<br/>
+ * <br/>
+ * Every lowercase header (padded with spaces) is splitted to overlapping 
+ * three char fragments (trigrams). Substring search intersects posting lists of 
+ * query trigrams starting from the shortest one and checks remaining 
+ * candidates with plain {@link String#contains(java.lang.CharSequence)}. 
+ * Fuzzy search counts shared trigrams and ranks headers by Jaccard 
+ * similarity of trigram sets.<br/>
+ * <br/>
+ * Index is split to segments by user, segments are thread safe. 
+ * Changed headers are marked as dead and segment is compacted when 
+ * dead headers outnumber live ones.
+ * @author Stanislav Nepochatov
+ */
+public class TrigramIndex {
+    
+    /**
+     * Min count of dead headers in segment for compaction.
+     */
+    private static final int COMPACT_MIN_DEAD = 1024;
+    
+    /**
+     * Segments by user id.
+     */
+    private final ConcurrentMap<Integer, Segment> segments = new ConcurrentHashMap<>();
+    
+    /**
+     * Get unique trigrams of lowercase text.
+     * @param text lowercase text;
+     * @return sorted trigram keys (three chars packed into long);
+     */
+    public static long[] trigrams(String text) {
+        int count = Math.max(0, text.length() - 2);
+        long[] result = new long[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+        }
+        Arrays.sort(result);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || result[unique - 1] != result[i]) {
+                result[unique++] = result[i];
+            }
+        }
+        return Arrays.copyOf(result, unique);
+    }
+    
+    /**
+     * Pad text with spaces, so first and last chars get own trigrams 
+     * and short words with typos still share some of them.
+     * @param text lowercase text;
+     * @return padded text;
+     */
+    private static String pad(String text) {
+        return "  " + text + " ";
+    }
+    
+    /**
+     * Add header of note or replace indexed header.
+     * @param userId id of note owner;
+     * @param noteId id of note;
+     * @param header note header;
+     */
+    public void put(int userId, int noteId, String header) {
+        getSegment(userId).put(noteId, header.toLowerCase());
+    }
+    
+    /**
+     * Remove note header from index.
+     * @param userId id of note owner;
+     * @param noteId id of note;
+     */
+    public void remove(int userId, int noteId) {
+        Segment segment = segments.get(userId);
+        if (segment != null) {
+            segment.remove(noteId);
+        }
+    }
+    
+    /**
+     * Find notes which headers contain fragment (case insensitive).
+     * @param userId id of user;
+     * @param fragment header fragment;
+     * @param limit max count of results;
+     * @return ids of notes (unordered);
+     */
+    public List<Integer> findSubstring(int userId, String fragment, int limit) {
+        Segment segment = segments.get(userId);
+        if (segment == null || fragment.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        return segment.findSubstring(fragment.toLowerCase(), limit);
+    }
+    
+    /**
+     * Find notes with headers similar to text (typos, missed words).
+     * @param userId id of user;
+     * @param text text to compare with headers;
+     * @param minSimilarity min share of common trigrams (from 0 to 1);
+     * @param limit max count of results;
+     * @return ids of notes, most similar first;
+     */
+    public List<Integer> findSimilar(int userId, String text, float minSimilarity, int limit) {
+        Segment segment = segments.get(userId);
+        long[] grams = trigrams(pad(text.toLowerCase()));
+        if (segment == null || grams.length == 0 || limit <= 0) {
+            return Collections.emptyList();
+        }
+        return segment.findSimilar(grams, minSimilarity, limit);
+    }
+    
+    /**
+     * Check if all live headers of user consist of ASCII chars. For such 
+     * headers and ASCII fragment case insensitive search gives the same 
+     * result as database LIKE with any case insensitive collation.
+     * @param userId id of user;
+     * @return true if user has no headers with non ASCII chars;
+     */
+    public boolean isAscii(int userId) {
+        Segment segment = segments.get(userId);
+        return segment == null || segment.isAscii();
+    }
+    
+    /**
+     * Check if text consists of ASCII chars.<br/>
+     * <b>Covered by unit test.</b>
+     * @param text text to check;
+     * @return true if there are no chars above 127;
+     */
+    public static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > 127) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Get count of indexed headers.
+     * @return count of live headers in all segments;
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment: segments.values()) {
+            size += segment.size();
+        }
+        return size;
+    }
+    
+    /**
+     * Get segment of user (created on demand).
+     */
+    private Segment getSegment(int userId) {
+        Segment segment = segments.get(userId);
+        if (segment == null) {
+            Segment created = new Segment();
+            segment = segments.putIfAbsent(userId, created);
+            if (segment == null) {
+                segment = created;
+            }
+        }
+        return segment;
+    }
+    
+    /**
+     * Sorted list of slots with single trigram.
+     */
+    private static final class Postings {
+        
+        private int[] slots = new int[2];
+        private int size;
+        
+        void add(int slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = slot;
+        }
+        
+        boolean contains(int slot) {
+            return Arrays.binarySearch(slots, 0, size, slot) >= 0;
+        }
+    }
+    
+    /**
+     * Headers of single user.
+     */
+    private static final class Segment {
+        
+        /**
+         * Postings by trigram.
+         */
+        private Map<Long, Postings> postings = new HashMap<>();
+        
+        /**
+         * Note ids by slot.
+         */
+        private int[] notes = new int[16];
+        
+        /**
+         * Lowercase headers by slot (null for dead slots).
+         */
+        private String[] headers = new String[16];
+        
+        /**
+         * Count of unique trigrams by slot.
+         */
+        private int[] gramCounts = new int[16];
+        
+        /**
+         * Slots by note id.
+         */
+        private Map<Integer, Integer> slotsByNote = new HashMap<>();
+        
+        /**
+         * Count of used slots.
+         */
+        private int slotCount;
+        
+        /**
+         * Count of live headers with non ASCII chars.
+         */
+        private int nonAsciiCount;
+        
+        synchronized int size() {
+            return slotsByNote.size();
+        }
+        
+        synchronized boolean isAscii() {
+            return nonAsciiCount == 0;
+        }
+        
+        synchronized void put(int noteId, String header) {
+            kill(noteId);
+            append(noteId, header);
+            compactIfNeeded();
+        }
+        
+        synchronized void remove(int noteId) {
+            kill(noteId);
+            compactIfNeeded();
+        }
+        
+        synchronized List<Integer> findSubstring(String fragment, int limit) {
+            List<Integer> result = new ArrayList<>();
+            long[] grams = trigrams(fragment);
+            if (grams.length == 0) {
+                //Too short for trigrams, check every header.
+                for (int slot = 0; slot < slotCount && result.size() < limit; slot++) {
+                    if (headers[slot] != null && headers[slot].contains(fragment)) {
+                        result.add(notes[slot]);
+                    }
+                }
+                return result;
+            }
+            Postings[] lists = new Postings[grams.length];
+            for (int i = 0; i < grams.length; i++) {
+                lists[i] = postings.get(grams[i]);
+                if (lists[i] == null) {
+                    return result;
+                }
+            }
+            Arrays.sort(lists, new Comparator<Postings>() {
+                @Override
+                public int compare(Postings first, Postings second) {
+                    return Integer.compare(first.size, second.size);
+                }
+            });
+            Postings shortest = lists[0];
+            for (int i = 0; i < shortest.size && result.size() < limit; i++) {
+                int slot = shortest.slots[i];
+                if (headers[slot] == null) {
+                    continue;
+                }
+                boolean matched = true;
+                for (int list = 1; list < lists.length && matched; list++) {
+                    matched = lists[list].contains(slot);
+                }
+                if (matched && headers[slot].contains(fragment)) {
+                    result.add(notes[slot]);
+                }
+            }
+            return result;
+        }
+        
+        synchronized List<Integer> findSimilar(long[] grams, float minSimilarity, int limit) {
+            //Header can't reach required similarity if its trigram count is too far from query one.
+            int minGrams = (int) Math.ceil(minSimilarity * grams.length);
+            int maxGrams = minSimilarity > 0 ? (int) (grams.length / minSimilarity) : Integer.MAX_VALUE;
+            int[] shared = new int[slotCount];
+            int[] touched = new int[16];
+            int touchedCount = 0;
+            for (long gram: grams) {
+                Postings current = postings.get(gram);
+                if (current == null) {
+                    continue;
+                }
+                for (int i = 0; i < current.size; i++) {
+                    int slot = current.slots[i];
+                    if (headers[slot] == null || gramCounts[slot] < minGrams || gramCounts[slot] > maxGrams) {
+                        continue;
+                    }
+                    if (shared[slot]++ == 0) {
+                        if (touchedCount == touched.length) {
+                            touched = Arrays.copyOf(touched, touchedCount * 2);
+                        }
+                        touched[touchedCount++] = slot;
+                    }
+                }
+            }
+            final float[] similarity = new float[touchedCount];
+            PriorityQueue<Integer> top = new PriorityQueue<>(Math.max(1, Math.min(limit, touchedCount)), new Comparator<Integer>() {
+                @Override
+                public int compare(Integer first, Integer second) {
+                    return Float.compare(similarity[first], similarity[second]);
+                }
+            });
+            for (int i = 0; i < touchedCount; i++) {
+                int slot = touched[i];
+                int common = shared[slot];
+                similarity[i] = (float) common / (grams.length + gramCounts[slot] - common);
+                if (similarity[i] < minSimilarity) {
+                    continue;
+                }
+                if (top.size() < limit) {
+                    top.add(i);
+                } else if (similarity[i] > similarity[top.peek()]) {
+                    top.poll();
+                    top.add(i);
+                }
+            }
+            Integer[] ranked = top.toArray(new Integer[top.size()]);
+            Arrays.sort(ranked, Collections.reverseOrder(top.comparator()));
+            List<Integer> result = new ArrayList<>(ranked.length);
+            for (Integer index: ranked) {
+                result.add(notes[touched[index]]);
+            }
+            return result;
+        }
+        
+        /**
+         * Append header to new slot.
+         */
+        private void append(int noteId, String header) {
+            if (slotCount == headers.length) {
+                notes = Arrays.copyOf(notes, slotCount * 2);
+                headers = Arrays.copyOf(headers, slotCount * 2);
+                gramCounts = Arrays.copyOf(gramCounts, slotCount * 2);
+            }
+            int slot = slotCount++;
+            long[] grams = trigrams(pad(header));
+            notes[slot] = noteId;
+            headers[slot] = header;
+            if (!TrigramIndex.isAscii(header)) {
+                nonAsciiCount++;
+            }
+            gramCounts[slot] = grams.length;
+            slotsByNote.put(noteId, slot);
+            for (long gram: grams) {
+                Postings current = postings.get(gram);
+                if (current == null) {
+                    current = new Postings();
+                    postings.put(gram, current);
+                }
+                current.add(slot);
+            }
+        }
+        
+        /**
+         * Mark slot of note as dead.
+         */
+        private void kill(int noteId) {
+            Integer slot = slotsByNote.remove(noteId);
+            if (slot != null) {
+                if (!TrigramIndex.isAscii(headers[slot])) {
+                    nonAsciiCount--;
+                }
+                headers[slot] = null;
+            }
+        }
+        
+        /**
+         * Rebuild postings without dead slots.
+         */
+        private void compactIfNeeded() {
+            int dead = slotCount - slotsByNote.size();
+            if (dead < COMPACT_MIN_DEAD || dead < slotsByNote.size()) {
+                return;
+            }
+            int[] oldNotes = notes;
+            String[] oldHeaders = headers;
+            int oldCount = slotCount;
+            int capacity = Math.max(16, slotsByNote.size() * 2);
+            postings = new HashMap<>();
+            notes = new int[capacity];
+            headers = new String[capacity];
+            gramCounts = new int[capacity];
+            slotsByNote = new HashMap<>();
+            slotCount = 0;
+            nonAsciiCount = 0;
+            for (int i = 0; i < oldCount; i++) {
+                if (oldHeaders[i] != null) {
+                    append(oldNotes[i], oldHeaders[i]);
+                }
+            }
+        }
+    }
+}
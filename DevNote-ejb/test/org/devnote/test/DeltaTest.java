@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.devnote.service.Delta;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test of version delta codec.
+ * @author Stanislav Nepochatov
+ */
+public class DeltaTest {
+    
+    /**
+     * Delta of small edit in the middle of long text should be much 
+     * smaller than text and restore exactly the same text.
+     */
+    @Test
+    public void smallEditTest() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            builder.append("<p>Строка номер ").append(i).append(" of some note text.</p>\n");
+        }
+        byte[] base = builder.toString().getBytes(StandardCharsets.UTF_8);
+        builder.insert(builder.length() / 2, "<b>Inserted fragment</b>");
+        builder.delete(100, 140);
+        byte[] target = builder.toString().getBytes(StandardCharsets.UTF_8);
+        
+        byte[] delta = Delta.encode(base, target);
+        assertTrue(delta.length < target.length / 20);
+        assertArrayEquals(target, Delta.apply(base, delta));
+    }
+    
+    /**
+     * Delta should work for empty, short and completely different content.
+     */
+    @Test
+    public void edgeCasesTest() {
+        byte[] empty = new byte[0];
+        byte[] shortText = "Short".getBytes(StandardCharsets.UTF_8);
+        byte[] random = new byte[10000];
+        new Random(42).nextBytes(random);
+        byte[] otherRandom = new byte[7000];
+        new Random(7).nextBytes(otherRandom);
+        
+        assertArrayEquals(empty, Delta.apply(shortText, Delta.encode(shortText, empty)));
+        assertArrayEquals(shortText, Delta.apply(empty, Delta.encode(empty, shortText)));
+        assertArrayEquals(random, Delta.apply(shortText, Delta.encode(shortText, random)));
+        assertArrayEquals(otherRandom, Delta.apply(random, Delta.encode(random, otherRandom)));
+        assertArrayEquals(random, Delta.apply(random, Delta.encode(random, random)));
+    }
+    
+    /**
+     * Broken delta should be rejected instead of producing wrong text.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void corruptedDeltaTest() {
+        byte[] base = "Some base text for delta encoding test".getBytes(StandardCharsets.UTF_8);
+        byte[] target = "Some base text for delta encoding test, edited".getBytes(StandardCharsets.UTF_8);
+        byte[] delta = Delta.encode(base, target);
+        byte[] truncated = new byte[delta.length - 2];
+        System.arraycopy(delta, 0, truncated, 0, truncated.length);
+        Delta.apply(base, truncated);
+    }
+    
+}
@@ -80,4 +80,32 @@ public class DirectoryTest {
         assertEquals(testDir3Res, testDir3Ref.getShortName());
     }
     
+    /**
+     * Run segment model test. Offsets should point into original path and 
+     * cached names should be rebuilt after path change.
+     */
+    @Test
+    public void segmentModelTest() {
+        Directory testDir = new Directory(null, "Заметки.IT.Смартфоны");
+        assertEquals(3, testDir.getSegmentCount());
+        assertEquals(0, testDir.getSegmentStart(0));
+        assertEquals(7, testDir.getSegmentEnd(0));
+        assertEquals(8, testDir.getSegmentStart(1));
+        assertEquals(10, testDir.getSegmentEnd(1));
+        assertEquals(11, testDir.getSegmentStart(2));
+        assertEquals(testDir.getPath().length(), testDir.getSegmentEnd(2));
+        assertSame(testDir.getShortName(), testDir.getShortName());
+        assertSame(testDir.getParentFullPath(), testDir.getParentFullPath());
+        
+        testDir.setPath("Разное.Test");
+        assertEquals(2, testDir.getSegmentCount());
+        assertEquals("Разное", testDir.getParentFullPath());
+        assertEquals("Test", testDir.getShortName());
+        
+        testDir.setPath("Разное");
+        assertEquals(1, testDir.getSegmentCount());
+        assertEquals("", testDir.getParentFullPath());
+        assertEquals("Разное", testDir.getShortName());
+    }
+    
 }
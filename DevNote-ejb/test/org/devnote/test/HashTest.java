@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.test;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import org.devnote.service.Hash;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test of hashing service.
+ * @author Stanislav Nepochatov
+ */
+public class HashTest {
+    
+    /**
+     * Known test vectors of all algorithms.
+     */
+    @Test
+    public void vectorsTest() {
+        assertEquals("d41d8cd98f00b204e9800998ecf8427e", Hash.getHash(""));
+        assertEquals("900150983cd24fb0d6963f7d28e17f72", Hash.getHash("abc"));
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", 
+                Hash.getHash("abc", Hash.Algorithm.SHA256));
+        assertEquals("00000000000000000000000000000000", Hash.getHash("", Hash.Algorithm.MURMUR3));
+        assertEquals("6c1b07bc7bbc4be347939ac4a93c437a", 
+                Hash.getHash("The quick brown fox jumps over the lazy dog", Hash.Algorithm.MURMUR3));
+    }
+    
+    /**
+     * Password hash should use platform charset like stored hashes do.
+     */
+    @Test
+    public void passwordCharsetTest() throws Exception {
+        String password = "пароль-\u00e9";
+        byte[] expected = MessageDigest.getInstance("MD5").digest(password.getBytes(Charset.defaultCharset()));
+        StringBuilder hex = new StringBuilder();
+        for (byte current: expected) {
+            hex.append(String.format("%02x", current));
+        }
+        assertEquals(hex.toString(), Hash.getHash(password));
+    }
+    
+    /**
+     * Streaming encoding of big text should give the same hash as 
+     * digest of whole UTF-8 byte array.
+     */
+    @Test
+    public void streamingTest() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            builder.append("<p>Заметка ").append(i).append(" 😀 text</p>\n");
+        }
+        builder.append('\uD800');
+        String text = builder.toString();
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(MessageDigest.getInstance("MD5").digest(bytes), Hash.digest(text, Hash.Algorithm.MD5));
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(bytes), Hash.digest(text, Hash.Algorithm.SHA256));
+        assertEquals(Hash.getHash(text, Hash.Algorithm.MURMUR3), Hash.getHash(text, Hash.Algorithm.MURMUR3));
+        
+        builder.setLength(0);
+        for (int i = 0; i < 4095; i++) {
+            builder.append('a');
+        }
+        String boundary = builder.append("😀 pair on chunk boundary").toString();
+        assertArrayEquals(MessageDigest.getInstance("MD5").digest(boundary.getBytes(StandardCharsets.UTF_8)), 
+                Hash.digest(boundary, Hash.Algorithm.MD5));
+    }
+    
+    /**
+     * Content hashes should be tagged by algorithm, 
+     * non-cryptographic algorithm can't be used for content.
+     */
+    @Test
+    public void contentHashTest() {
+        assertEquals("900150983cd24fb0d6963f7d28e17f72", Hash.getContentHash("abc", Hash.Algorithm.MD5));
+        assertEquals("sha256:ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", 
+                Hash.getContentHash("abc", Hash.Algorithm.SHA256));
+        assertEquals(Hash.Algorithm.SHA256, Hash.Algorithm.forContent("SHA256"));
+        try {
+            Hash.Algorithm.forContent("MURMUR3");
+            fail("MURMUR3 shouldn't be allowed for content");
+        } catch (IllegalArgumentException ex) {
+            //Pass
+        }
+    }
+    
+}
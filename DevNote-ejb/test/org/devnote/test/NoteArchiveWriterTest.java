@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.devnote.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import org.devnote.service.NoteArchiveWriter;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test of notes archive writer.
+ * @author Stanislav Nepochatov
+ */
+public class NoteArchiveWriterTest {
+    
+    /**
+     * Archive should contain directories, every version and metadata of every note.
+     */
+    @Test
+    public void archiveTest() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        NoteArchiveWriter writer = new NoteArchiveWriter(output);
+        writer.addDirectory("Test");
+        writer.addDirectory("Test.Inner");
+        writer.addVersion(1, "First", "Test", 10, new Date(0), "h10", "Первая версия");
+        writer.addVersion(1, "First", "Test", 12, new Date(1000), "h12", "Вторая версия");
+        writer.addVersion(2, "Two\nlines", "Test.Inner", 11, new Date(2000), "h11", "");
+        writer.finish();
+        
+        Map<String, String> entries = read(output.toByteArray());
+        assertArrayEquals(new String[] {"directories.txt", "notes/1/10.txt", "notes/1/12.txt", 
+            "notes/1/note.txt", "notes/2/11.txt", "notes/2/note.txt"}, entries.keySet().toArray());
+        assertEquals("Test\nTest.Inner\n", entries.get("directories.txt"));
+        assertEquals("Вторая версия", entries.get("notes/1/12.txt"));
+        assertEquals("header=First\ndirectory=Test\n"
+                + "version=10 1970-01-01T00:00:00.000Z h10\n"
+                + "version=12 1970-01-01T00:00:01.000Z h12\n", entries.get("notes/1/note.txt"));
+        assertTrue(entries.get("notes/2/note.txt").startsWith("header=Two lines\n"));
+        assertEquals("", entries.get("notes/2/11.txt"));
+    }
+    
+    /**
+     * Directories can't follow versions.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void orderTest() throws IOException {
+        NoteArchiveWriter writer = new NoteArchiveWriter(new ByteArrayOutputStream());
+        writer.addVersion(1, "First", "Test", 10, new Date(), "h10", "text");
+        writer.addDirectory("Test");
+    }
+    
+    /**
+     * Read all entries of archive.
+     * @param archive archive bytes;
+     * @return entry texts by name in archive order;
+     */
+    private static Map<String, String> read(byte[] archive) throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive), StandardCharsets.UTF_8)) {
+            ZipEntry entry;
+            byte[] buffer = new byte[4096];
+            while ((entry = zip.getNextEntry()) != null) {
+                ByteArrayOutputStream text = new ByteArrayOutputStream();
+                int readed;
+                while ((readed = zip.read(buffer)) > 0) {
+                    text.write(buffer, 0, readed);
+                }
+                entries.put(entry.getName(), new String(text.toByteArray(), StandardCharsets.UTF_8));
+            }
+        }
+        return entries;
+    }
+}
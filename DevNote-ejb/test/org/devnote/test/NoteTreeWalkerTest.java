@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.devnote.test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.TreeMap;
+import org.devnote.service.NoteTreeWalker;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test of note tree walker.
+ * @author Stanislav Nepochatov
+ */
+public class NoteTreeWalkerTest {
+    
+    /**
+     * Only Markdown, HTML and text files are notes.
+     */
+    @Test
+    public void isNoteFileTest() {
+        assertTrue(NoteTreeWalker.isNoteFile("README.md"));
+        assertTrue(NoteTreeWalker.isNoteFile("Setup.HTML"));
+        assertTrue(NoteTreeWalker.isNoteFile("todo.txt"));
+        assertFalse(NoteTreeWalker.isNoteFile("logo.png"));
+        assertFalse(NoteTreeWalker.isNoteFile(".md"));
+        assertFalse(NoteTreeWalker.isNoteFile("Makefile"));
+    }
+    
+    /**
+     * Header is file name without extension, segment has no dots.
+     */
+    @Test
+    public void namesTest() {
+        assertEquals("nginx 1.6 setup", NoteTreeWalker.toHeader("nginx 1.6 setup.md"));
+        assertEquals("Заметка", NoteTreeWalker.toHeader("Заметка.html"));
+        assertEquals("Java_7", NoteTreeWalker.toSegment(" Java.7 "));
+        assertEquals("_", NoteTreeWalker.toSegment("  "));
+    }
+    
+    /**
+     * Folders should be mapped to dotted paths under root path, 
+     * hidden files and folders should be skipped.
+     */
+    @Test
+    public void walkTest() throws IOException {
+        Path root = Files.createTempDirectory("notes");
+        try {
+            write(root.resolve("Index.md"));
+            write(root.resolve("logo.png"));
+            write(root.resolve("Linux/nginx/Setup.html"));
+            write(root.resolve("Linux/Shell.txt"));
+            write(root.resolve("Java.7/Streams.md"));
+            write(root.resolve(".git/config.txt"));
+            write(root.resolve("Linux/.draft.md"));
+            final Map<String, String> visited = new TreeMap<>();
+            new NoteTreeWalker(root, "Wiki").walk(new NoteTreeWalker.Visitor() {
+                @Override
+                public void visit(Path file, String directoryPath, String header) {
+                    visited.put(directoryPath + "/" + header, file.getFileName().toString());
+                }
+            });
+            assertEquals(4, visited.size());
+            assertEquals("Index.md", visited.get("Wiki/Index"));
+            assertEquals("Setup.html", visited.get("Wiki.Linux.nginx/Setup"));
+            assertEquals("Shell.txt", visited.get("Wiki.Linux/Shell"));
+            assertEquals("Streams.md", visited.get("Wiki.Java_7/Streams"));
+        } finally {
+            delete(root);
+        }
+    }
+    
+    /**
+     * Write test file with parent folders.
+     * @param file path of file;
+     */
+    private static void write(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, file.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Delete test tree.
+     * @param root root folder;
+     */
+    private static void delete(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
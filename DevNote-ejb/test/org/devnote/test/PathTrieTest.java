@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.test;
+
+import java.util.HashSet;
+import java.util.List;
+import org.devnote.service.PathTrie;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test of directory path trie.
+ * @author Stanislav Nepochatov
+ */
+public class PathTrieTest {
+    
+    /**
+     * Values should be found by full path and by child path (parent lookup).
+     */
+    @Test
+    public void putGetTest() {
+        PathTrie<String> trie = new PathTrie<>();
+        trie.put("Test", "1");
+        trie.put("Test.Inner", "2");
+        trie.put("Test.Inner.Deep", "3");
+        trie.put("Заметки.IT.Смартфоны", "4");
+        
+        assertEquals(4, trie.size());
+        assertEquals("2", trie.get("Test.Inner"));
+        assertEquals("4", trie.get("Заметки.IT.Смартфоны"));
+        assertNull(trie.get("Заметки.IT"));
+        assertNull(trie.get("Test.Inn"));
+        assertNull(trie.get("Test.Inner.Deep.More"));
+        
+        assertEquals("2", trie.getParent("Test.Inner.Deep"));
+        assertEquals("3", trie.getParent("Test.Inner.Deep.Missing"));
+        assertNull(trie.getParent("Test"));
+        assertNull(trie.getParent("Заметки.IT.Смартфоны"));
+        
+        assertEquals("2", trie.put("Test.Inner", "5"));
+        assertEquals(4, trie.size());
+    }
+    
+    /**
+     * Many children of single node should be found (table resize).
+     */
+    @Test
+    public void manyChildrenTest() {
+        PathTrie<Integer> trie = new PathTrie<>();
+        for (int i = 0; i < 1000; i++) {
+            trie.put("Root.Child" + i, i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Integer.valueOf(i), trie.get("Root.Child" + i));
+        }
+        List<Integer> children = trie.getChildren("Root");
+        assertEquals(1000, new HashSet<>(children).size());
+        assertTrue(trie.getChildren("").isEmpty());
+    }
+    
+    /**
+     * Remove and move should process whole subtree.
+     */
+    @Test
+    public void removeMoveTest() {
+        PathTrie<String> trie = new PathTrie<>();
+        trie.put("Work", "work");
+        trie.put("Work.Clients", "clients");
+        trie.put("Work.Clients.Acme", "acme");
+        trie.put("Archive", "archive");
+        
+        assertTrue(trie.move("Work.Clients", "Archive.OldClients"));
+        assertNull(trie.get("Work.Clients.Acme"));
+        assertEquals("acme", trie.get("Archive.OldClients.Acme"));
+        assertEquals("archive", trie.getParent("Archive.OldClients"));
+        assertFalse(trie.move("Work.Missing", "Archive.Missing"));
+        
+        assertEquals("clients", trie.remove("Archive.OldClients"));
+        assertNull(trie.get("Archive.OldClients.Acme"));
+        assertEquals(2, trie.size());
+    }
+    
+}
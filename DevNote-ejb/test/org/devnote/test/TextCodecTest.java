@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.test;
+
+import java.nio.charset.StandardCharsets;
+import org.devnote.service.TextCodec;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test of stored text codec.
+ * @author Stanislav Nepochatov
+ */
+public class TextCodecTest {
+    
+    /**
+     * Small text should be stored as plain UTF-8, big text 
+     * should be compressed, both should be decoded to the same text.
+     */
+    @Test
+    public void roundTripTest() {
+        String small = "<p>Короткая заметка</p>";
+        byte[] smallData = TextCodec.encode(small);
+        assertFalse(TextCodec.isCompressed(smallData));
+        assertArrayEquals(small.getBytes(StandardCharsets.UTF_8), smallData);
+        assertEquals(small, TextCodec.decode(smallData));
+        
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            builder.append("<p>Paragraph ").append(i).append(" заметки с текстом.</p>\n");
+        }
+        String big = builder.toString();
+        byte[] bigData = TextCodec.encode(big);
+        assertTrue(TextCodec.isCompressed(bigData));
+        assertTrue(bigData.length < big.length() / 3);
+        assertEquals(big, TextCodec.decode(bigData));
+    }
+    
+    /**
+     * Rows written before compression (plain UTF-8 of any size) 
+     * should be readed as is.
+     */
+    @Test
+    public void legacyDataTest() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            builder.append("Old uncompressed note text ").append(i).append('\n');
+        }
+        String legacy = builder.toString();
+        assertEquals(legacy, TextCodec.decode(legacy.getBytes(StandardCharsets.UTF_8)));
+    }
+    
+    /**
+     * Truncated compressed data should be rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedDataTest() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            builder.append("Some text ").append(i).append('\n');
+        }
+        byte[] data = TextCodec.encode(builder.toString());
+        byte[] truncated = new byte[data.length / 2];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+        TextCodec.decode(truncated);
+    }
+    
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.devnote.service.TextDiff;
+import org.devnote.service.TextDiff.Edit;
+import org.devnote.service.TextDiff.Granularity;
+import org.devnote.service.TextDiff.Operation;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test of text diff engine.
+ * @author Stanislav Nepochatov
+ */
+public class TextDiffTest {
+    
+    /**
+     * Changed line should be reported as deletion and insertion between equal lines.
+     */
+    @Test
+    public void lineTest() {
+        List<Edit> diff = TextDiff.diff("one\ntwo\nthree\n", "one\n2\nthree\nfour", Granularity.LINE);
+        assertEquals("[EQUAL[one\n], DELETE[two\n], INSERT[2\n], EQUAL[three\n], INSERT[four]]", diff.toString());
+        assertEquals("[EQUAL[same]]", TextDiff.diff("same", "same", Granularity.LINE).toString());
+        assertEquals("[INSERT[new]]", TextDiff.diff("", "new", Granularity.LINE).toString());
+        assertTrue(TextDiff.diff("", "", Granularity.LINE).isEmpty());
+    }
+    
+    /**
+     * Word diff should keep markup and whitespace as separate tokens.
+     */
+    @Test
+    public void wordTest() {
+        List<Edit> diff = TextDiff.diff("<p>restart nginx server</p>", "<p>reload nginx server now</p>", Granularity.WORD);
+        assertEquals("[EQUAL[<p>], DELETE[restart], INSERT[reload], EQUAL[ nginx server], INSERT[ now], EQUAL[</p>]]", 
+                diff.toString());
+    }
+    
+    /**
+     * Both modes should restore both texts and find the same minimal edit size.
+     */
+    @Test
+    public void randomTest() {
+        Random random = new Random(42);
+        String[] words = {"a", "b", "c", "d", " ", "\n"};
+        for (int round = 0; round < 200; round++) {
+            String base = randomText(words, random.nextInt(200), random);
+            String target = mutate(base, words, random);
+            for (Granularity granularity: Granularity.values()) {
+                List<Edit> trace = collect(base, target, granularity, false);
+                List<Edit> linear = collect(base, target, granularity, true);
+                assertRestores(base, target, trace);
+                assertRestores(base, target, linear);
+                assertEquals(changedTokens(trace, granularity), changedTokens(linear, granularity));
+            }
+        }
+    }
+    
+    /**
+     * Diff of large texts should fall back to middle snake search and stay correct.
+     */
+    @Test
+    public void largeTest() {
+        Random random = new Random(7);
+        String[] words = {"alpha", "beta", "gamma", "delta", " ", "\n"};
+        String base = randomText(words, 100000, random);
+        String target = mutate(base, words, random);
+        List<Edit> diff = TextDiff.diff(base, target, Granularity.WORD);
+        assertRestores(base, target, diff);
+        String other = randomText(words, 50000, random);
+        assertRestores(base, other, TextDiff.diff(base, other, Granularity.WORD));
+    }
+    
+    private static List<Edit> collect(String base, String target, Granularity granularity, boolean linearSpace) {
+        final List<Edit> result = new ArrayList<>();
+        TextDiff.diff(base, target, granularity, linearSpace, new TextDiff.Visitor() {
+            @Override
+            public void visit(Operation operation, String text) {
+                result.add(new Edit(operation, text));
+            }
+        });
+        return result;
+    }
+    
+    private static void assertRestores(String base, String target, List<Edit> diff) {
+        StringBuilder restoredBase = new StringBuilder();
+        StringBuilder restoredTarget = new StringBuilder();
+        for (Edit edit: diff) {
+            assertFalse(edit.getText().isEmpty());
+            if (edit.getOperation() != Operation.INSERT) {
+                restoredBase.append(edit.getText());
+            }
+            if (edit.getOperation() != Operation.DELETE) {
+                restoredTarget.append(edit.getText());
+            }
+        }
+        assertEquals(base, restoredBase.toString());
+        assertEquals(target, restoredTarget.toString());
+    }
+    
+    private static int changedTokens(List<Edit> diff, Granularity granularity) {
+        int tokens = 0;
+        for (Edit edit: diff) {
+            if (edit.getOperation() == Operation.EQUAL) {
+                continue;
+            }
+            String text = edit.getText();
+            for (int i = 0; i < text.length(); i++) {
+                if (granularity == Granularity.LINE) {
+                    if (text.charAt(i) == '\n' || i == text.length() - 1) {
+                        tokens++;
+                    }
+                } else if (i == 0 || Character.isWhitespace(text.charAt(i)) != Character.isWhitespace(text.charAt(i - 1))) {
+                    tokens++;
+                }
+            }
+        }
+        return tokens;
+    }
+    
+    private static String randomText(String[] words, int count, Random random) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(words[random.nextInt(words.length)]);
+        }
+        return builder.toString();
+    }
+    
+    private static String mutate(String text, String[] words, Random random) {
+        StringBuilder builder = new StringBuilder(text);
+        int edits = random.nextInt(10);
+        for (int i = 0; i < edits; i++) {
+            int pos = builder.length() == 0 ? 0 : random.nextInt(builder.length());
+            int end = Math.min(builder.length(), pos + random.nextInt(20));
+            builder.replace(pos, end, randomText(words, random.nextInt(5), random));
+        }
+        return builder.toString();
+    }
+}
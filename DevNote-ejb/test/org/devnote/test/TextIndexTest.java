@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.test;
+
+import java.util.Arrays;
+import java.util.List;
+import org.devnote.service.TextIndex;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test of full text index.
+ * @author Stanislav Nepochatov
+ */
+public class TextIndexTest {
+    
+    /**
+     * HTML tags and entities shouldn't become words.
+     */
+    @Test
+    public void tokenizeTest() {
+        assertEquals(Arrays.asList("nginx", "конфиг", "для", "api", "v2", "1"), 
+                TextIndex.tokenize("<p class=\"x\">Nginx&nbsp;конфиг <b>для</b> API-v2 a 1</p>"));
+    }
+    
+    /**
+     * Search should rank header matches higher, filter by user and 
+     * see updates and removals.
+     */
+    @Test
+    public void searchTest() {
+        TextIndex index = new TextIndex();
+        index.add(TextIndex.analyze(1, 10, "Nginx config", "<p>server block for api</p>"));
+        index.add(TextIndex.analyze(2, 10, "Deploy notes", "<p>restart nginx after deploy</p>"));
+        index.add(TextIndex.analyze(3, 10, "Java", "<p>glassfish pool settings</p>"));
+        index.add(TextIndex.analyze(4, 20, "Nginx", "<p>other user note</p>"));
+        
+        List<TextIndex.Hit> hits = index.search(10, "nginx", 10);
+        assertEquals(2, hits.size());
+        assertEquals(1, hits.get(0).getNoteId());
+        assertEquals(2, hits.get(1).getNoteId());
+        assertEquals(1, index.search(10, "NGINX deploy", 1).size());
+        assertTrue(index.search(10, "missing", 10).isEmpty());
+        
+        index.add(TextIndex.analyze(1, 10, "Apache config", "<p>server block for api</p>"));
+        hits = index.search(10, "nginx", 10);
+        assertEquals(1, hits.size());
+        assertEquals(2, hits.get(0).getNoteId());
+        
+        index.remove(10, 2);
+        assertTrue(index.search(10, "nginx", 10).isEmpty());
+        assertEquals(3, index.size());
+    }
+    
+    /**
+     * Many updates of the same notes should compact segment and keep results.
+     */
+    @Test
+    public void compactionTest() {
+        TextIndex index = new TextIndex();
+        for (int round = 0; round < 50; round++) {
+            for (int id = 0; id < 100; id++) {
+                index.add(TextIndex.analyze(id, 1, "note " + id, "round" + round));
+            }
+        }
+        assertEquals(100, index.size());
+        assertEquals(100, index.search(1, "round49", 1000).size());
+        assertTrue(index.search(1, "round48", 1000).isEmpty());
+        
+        index.add(TextIndex.analyze(500, 1, "unique header", "round49"));
+        List<TextIndex.Hit> hits = index.search(1, "unique round49", 1000);
+        assertEquals(101, hits.size());
+        assertEquals(500, hits.get(0).getNoteId());
+    }
+    
+}
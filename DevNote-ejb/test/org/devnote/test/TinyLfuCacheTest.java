@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.test;
+
+import org.devnote.service.TinyLfuCache;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test of W-TinyLFU cache.
+ * @author Stanislav Nepochatov
+ */
+public class TinyLfuCacheTest {
+    
+    /**
+     * Weigher of strings by length.
+     */
+    private static final TinyLfuCache.Weigher<String> LENGTH = new TinyLfuCache.Weigher<String>() {
+        @Override
+        public long weigh(String value) {
+            return value.length();
+        }
+    };
+    
+    /**
+     * Cache should keep total weight under the bound and ignore too heavy values.
+     */
+    @Test
+    public void weightTest() {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(1000, 100, LENGTH);
+        for (int i = 0; i < 500; i++) {
+            cache.put(i, "value-" + i);
+            assertTrue(cache.weight() <= 1000);
+        }
+        assertTrue(cache.size() > 50);
+        cache.put(-1, new String(new char[2000]));
+        assertNull(cache.get(-1));
+        cache.put(1000, "fresh");
+        assertEquals("fresh", cache.get(1000));
+        cache.remove(1000);
+        assertNull(cache.get(1000));
+    }
+    
+    /**
+     * Scan of entries used once shouldn't flush popular entries.
+     */
+    @Test
+    public void scanResistanceTest() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10000, 1000, LENGTH);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                String key = "hot" + i;
+                if (cache.get(key) == null) {
+                    cache.put(key, "0123456789012345678901234567890123456789012345678" + i);
+                }
+            }
+        }
+        for (int i = 0; i < 5000; i++) {
+            cache.put("scan" + i, "0123456789012345678901234567890123456789012345678" + i);
+        }
+        int kept = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.get("hot" + i) != null) {
+                kept++;
+            }
+        }
+        assertTrue("Only " + kept + " popular entries kept", kept >= 45);
+    }
+    
+    /**
+     * Put of cached key should keep its value.
+     */
+    @Test
+    public void putExistingTest() {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(1000, 100, LENGTH);
+        cache.put(1, "first");
+        cache.put(1, "second value");
+        assertEquals("first", cache.get(1));
+        assertEquals(1, cache.size());
+        assertEquals(5, cache.weight());
+    }
+    
+    /**
+     * Rejected candidate shouldn't evict any entry of main cache.
+     */
+    @Test
+    public void rejectionTest() {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(100, 100, LENGTH);
+        String value = new String(new char[40]);
+        cache.put(1, value);
+        cache.put(2, value);
+        for (int i = 0; i < 5; i++) {
+            cache.get(2);
+        }
+        cache.get(3);
+        cache.get(3);
+        cache.put(3, new String(new char[90]));
+        assertEquals(2, cache.size());
+        assertEquals(80, cache.weight());
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import org.devnote.service.TrigramIndex;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test of trigram header index.
+ * @author Stanislav Nepochatov
+ */
+public class TrigramIndexTest {
+    
+    /**
+     * Substring search should be case insensitive, filter by user 
+     * and see updates and removals.
+     */
+    @Test
+    public void substringTest() {
+        TrigramIndex index = new TrigramIndex();
+        index.put(10, 1, "JIRA-1234 nginx config");
+        index.put(10, 2, "jira-12345 deploy");
+        index.put(10, 3, "Glassfish pool");
+        index.put(20, 4, "JIRA-1234 other user");
+        
+        assertEquals(new HashSet<>(Arrays.asList(1, 2)), new HashSet<>(index.findSubstring(10, "JIRA-1234", 10)));
+        assertEquals(Collections.singletonList(2), index.findSubstring(10, "12345", 10));
+        assertEquals(Collections.singletonList(3), index.findSubstring(10, "FISH", 10));
+        assertEquals(Collections.singletonList(3), index.findSubstring(10, "po", 10));
+        assertTrue(index.findSubstring(10, "nginx deploy", 10).isEmpty());
+        assertEquals(1, index.findSubstring(10, "jira", 1).size());
+        
+        index.put(10, 1, "Apache config");
+        assertEquals(Collections.singletonList(2), index.findSubstring(10, "jira", 10));
+        index.remove(10, 2);
+        assertTrue(index.findSubstring(10, "jira", 10).isEmpty());
+        assertEquals(3, index.size());
+    }
+    
+    /**
+     * Fuzzy search should find headers with typos, most similar first.
+     */
+    @Test
+    public void similarTest() {
+        TrigramIndex index = new TrigramIndex();
+        index.put(1, 1, "Nginx reverse proxy");
+        index.put(1, 2, "Nginx");
+        index.put(1, 3, "Postgres replication");
+        
+        List<Integer> found = index.findSimilar(1, "ngnix", 0.1f, 10);
+        assertFalse(found.isEmpty());
+        assertEquals(Integer.valueOf(2), found.get(0));
+        assertFalse(found.contains(3));
+        assertEquals(Collections.singletonList(3), index.findSimilar(1, "postgres replicaton", 0.5f, 10));
+    }
+    
+    /**
+     * Many updates of the same notes should compact segment and keep results.
+     */
+    @Test
+    public void compactionTest() {
+        TrigramIndex index = new TrigramIndex();
+        for (int round = 0; round < 50; round++) {
+            for (int id = 0; id < 100; id++) {
+                index.put(1, id, "note " + id + " round " + round);
+            }
+        }
+        assertEquals(100, index.size());
+        assertEquals(100, index.findSubstring(1, "round 49", 1000).size());
+        assertTrue(index.findSubstring(1, "round 48", 1000).isEmpty());
+        assertEquals(Collections.singletonList(42), index.findSubstring(1, "note 42 ", 1000));
+    }
+    
+    /**
+     * User segment is ASCII only while it has no live non ASCII headers.
+     */
+    @Test
+    public void asciiTest() {
+        TrigramIndex index = new TrigramIndex();
+        assertTrue(index.isAscii(1));
+        index.put(1, 1, "nginx config");
+        assertTrue(index.isAscii(1));
+        index.put(1, 2, "Café setup");
+        assertFalse(index.isAscii(1));
+        assertTrue(index.isAscii(2));
+        index.put(1, 2, "Cafe setup");
+        assertTrue(index.isAscii(1));
+        index.put(1, 3, "Заметка");
+        index.remove(1, 3);
+        assertTrue(index.isAscii(1));
+        assertTrue(TrigramIndex.isAscii("JIRA-1234"));
+        assertFalse(TrigramIndex.isAscii("straße"));
+    }
+}
@@ -18,9 +18,9 @@
 package org.devnote.managed;
 
 import java.io.Serializable;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 import javax.annotation.PostConstruct;
 import javax.ejb.EJB;
 import javax.enterprise.context.SessionScoped;
@@ -30,6 +30,8 @@ import javax.inject.Named;
 import org.devnote.ejb.DirectoryFacadeLocal;
 import org.devnote.entries.Directory;
 import org.devnote.wrappers.primefaces.DirectoryWrapper;
+import org.primefaces.event.NodeCollapseEvent;
+import org.primefaces.event.NodeExpandEvent;
 import org.primefaces.model.TreeNode;
 
 /**
@@ -64,37 +66,50 @@ public class DirectoryTreeBuilder implements Serializable {
     private DirectoryWrapper selected;
     
     /**
-     * Bean initialization method.
+     * Bean initialization method. Only top level directories are loaded, 
+     * subdirectories loaded on node expand.
      */
     @PostConstruct
     public void init() {
         root = new DirectoryWrapper();
-        
-        Map<String, TreeNode> pathMap = new HashMap<>();
-        
-        List<Directory> sortedDirs = dirBean.findAllSortByPath(session.getCurrentUser());
-        if (sortedDirs.isEmpty()) {
-            System.err.println("LIST EMPTY!");
+        loadChildren((DirectoryWrapper) root, "");
+    }
+    
+    /**
+     * Node expand event listener method. Loads children of expanded node.
+     * @param e expand event from primefaces;
+     */
+    public void onNodeExpand(NodeExpandEvent e) {
+        DirectoryWrapper expanded = (DirectoryWrapper) e.getTreeNode();
+        if (expanded.hasUnloadedChildren()) {
+            loadChildren(expanded, expanded.getWrapped().getPath());
         }
-        for (Directory current: sortedDirs) {
-            String parentName = current.getParentFullPath();
-            if (parentName.isEmpty()) {
-                System.err.println("PROCESSING TO ROOT: " + current.getPath());
-                TreeNode insertedToRoot = new DirectoryWrapper(current, root);
-                root.getChildren().add(insertedToRoot);
-                pathMap.put(current.getPath(), insertedToRoot);
-                insertedToRoot.setExpanded(true);
-            } else {
-                if (pathMap.containsKey(current.getParentFullPath())) {
-                    TreeNode parent = pathMap.get(current.getParentFullPath());
-                    TreeNode insertedInside = new DirectoryWrapper(current, parent);
-                    parent.getChildren().add(insertedInside);
-                    pathMap.put(current.getPath(), insertedInside);
-                    insertedInside.setExpanded(true);
-                    System.err.println("PROCESSING TO: " + current.getPath() + " -> " + parent);
-                }
-            }
+        expanded.setExpanded(true);
+    }
+    
+    /**
+     * Node collapse event listener method.
+     * @param e collapse event from primefaces;
+     */
+    public void onNodeCollapse(NodeCollapseEvent e) {
+        e.getTreeNode().setExpanded(false);
+    }
+    
+    /**
+     * Load direct children of directory node.
+     * @param parent parent node;
+     * @param parentPath path of parent directory or empty string for root;
+     */
+    private void loadChildren(DirectoryWrapper parent, String parentPath) {
+        List<Directory> children = dirBean.findChildren(session.getCurrentUser(), parentPath);
+        Set<String> nonEmpty = children.isEmpty() ? Collections.<String>emptySet() 
+                : dirBean.findNonEmptyChildPaths(session.getCurrentUser(), parentPath);
+        for (Directory current: children) {
+            DirectoryWrapper inserted = new DirectoryWrapper(current, parent);
+            inserted.setHasUnloadedChildren(nonEmpty.contains(current.getPath()));
+            parent.getChildren().add(inserted);
         }
+        parent.setHasUnloadedChildren(false);
     }
     
     /**
@@ -19,20 +19,26 @@ package org.devnote.managed;
 
 import java.io.Serializable;
 import java.util.Date;
+import java.util.List;
 import javax.ejb.EJB;
 import javax.enterprise.context.SessionScoped;
+import javax.faces.application.FacesMessage;
 import javax.faces.bean.ManagedProperty;
+import javax.faces.context.FacesContext;
 import javax.faces.event.ValueChangeEvent;
 import javax.inject.Inject;
 import javax.inject.Named;
 import org.devnote.ejb.DirectoryFacadeLocal;
 import org.devnote.ejb.NoteFacadeLocal;
+import org.devnote.ejb.SearchFacadeLocal;
 import org.devnote.ejb.VersionFacadeLocal;
 import org.devnote.entries.Directory;
 import org.devnote.entries.Note;
 import org.devnote.entries.Version;
+import org.devnote.entries.VersionInfo;
 import org.devnote.service.Hash;
 import org.devnote.wrappers.primefaces.DirectoryWrapper;
+import org.devnote.wrappers.primefaces.NoteLazyModel;
 import org.primefaces.event.NodeSelectEvent;
 import org.primefaces.event.SelectEvent;
 
@@ -44,6 +50,11 @@ import org.primefaces.event.SelectEvent;
 @SessionScoped
 public class EventHandler implements Serializable {
     
+    /**
+     * Max count of search results.
+     */
+    private static final int SEARCH_LIMIT = 50;
+    
     /**
      * Notes ejb facade.
      */
@@ -62,6 +73,12 @@ public class EventHandler implements Serializable {
     @EJB
     private DirectoryFacadeLocal directoryBean;
     
+    /**
+     * Search ejb facade.
+     */
+    @EJB
+    private SearchFacadeLocal searchBean;
+    
     /**
      * User session managed bean.
      */
@@ -74,6 +91,11 @@ public class EventHandler implements Serializable {
      */
     private DirectoryWrapper currentDir;
     
+    /**
+     * Lazy model of notes in current directory.
+     */
+    private NoteLazyModel noteModel;
+    
     /**
      * Current selected note.
      */
@@ -84,6 +106,16 @@ public class EventHandler implements Serializable {
      */
     private Version currentVersion;
     
+    /**
+     * Last version of current note (source of editor text).
+     */
+    private Version lastVersion;
+    
+    /**
+     * Metadata of all versions of current note (without texts).
+     */
+    private List<VersionInfo> versionHistory;
+    
     /**
      * Current browsed version id.
      */
@@ -107,6 +139,16 @@ public class EventHandler implements Serializable {
      * If there is note, last version text will taken.
      */
     private String currentEditText;
+    
+    /**
+     * Search query.
+     */
+    private String searchQuery;
+    
+    /**
+     * Notes found by search query.
+     */
+    private List<Note> searchResults;
 
     /**
      * Get current directory wrapper.
@@ -124,6 +166,14 @@ public class EventHandler implements Serializable {
         this.currentDir = currentDir;
     }
     
+    /**
+     * Get lazy model of notes in current directory.
+     * @return model for notes table or null if directory isn't selected;
+     */
+    public NoteLazyModel getNoteModel() {
+        return noteModel;
+    }
+    
     /**
      * Get current note.
      * @return the currentNote
@@ -156,6 +206,14 @@ public class EventHandler implements Serializable {
         this.currentVersion = currentVersion;
     }
     
+    /**
+     * Get version history of current note.
+     * @return list with version metadata;
+     */
+    public List<VersionInfo> getVersionHistory() {
+        return versionHistory;
+    }
+    
     /**
      * Get editor active flag.
      * @return true: if user edit note / false: if user read note;
@@ -197,8 +255,11 @@ public class EventHandler implements Serializable {
         this.currentDir = ((DirectoryWrapper) e.getTreeNode());
         Directory newWrapped = directoryBean.find(currentDir.getWrapped().getId());
         this.currentDir.setWrapped(newWrapped);
+        this.noteModel = new NoteLazyModel(noteBean, newWrapped);
         this.currentNote = null;
         this.currentVersion = null;
+        this.lastVersion = null;
+        this.versionHistory = null;
     }
     
     /**
@@ -206,11 +267,67 @@ public class EventHandler implements Serializable {
      * @param e selection from primefaces;
      */
     public void onNoteSelected(SelectEvent e) {
+        openNote((Note) e.getObject());
+    }
+    
+    /**
+     * Search notes of current user.
+     */
+    public void search() {
+        this.searchResults = searchBean.search(session.getCurrentUser(), searchQuery, SEARCH_LIMIT);
+    }
+    
+    /**
+     * Search result selection event listener method.
+     * @param e selection from primefaces;
+     */
+    public void onSearchResultSelected(SelectEvent e) {
+        openNote((Note) e.getObject());
+    }
+    
+    /**
+     * Get search query.
+     * @return search words;
+     */
+    public String getSearchQuery() {
+        return searchQuery;
+    }
+    
+    /**
+     * Set search query.
+     * @param searchQuery search words to set;
+     */
+    public void setSearchQuery(String searchQuery) {
+        this.searchQuery = searchQuery;
+    }
+    
+    /**
+     * Get notes found by last search.
+     * @return list with notes or null if there was no search;
+     */
+    public List<Note> getSearchResults() {
+        return searchResults;
+    }
+    
+    /**
+     * Open latest version of note for view. 
+     * If note has no versions (e.g. removed meanwhile), error message is shown.
+     * @param note note to open;
+     */
+    private void openNote(Note note) {
         this.enableEdit = false;
-        Note eventNote = (Note) e.getObject();
-        this.currentNote = noteBean.find(eventNote.getId());
-        this.currentVersion = versionBean.find(currentNote.getVersionList().get(currentNote.getVersionList().size() - 1).getId());
+        this.lastVersion = versionBean.openNote(note.getId());
+        if (this.lastVersion == null) {
+            this.currentNote = null;
+            this.currentVersion = null;
+            this.versionHistory = null;
+            FacesContext.getCurrentInstance().addMessage("note-error", new FacesMessage(FacesMessage.SEVERITY_ERROR, "Note can't be opened, it may be removed!", ""));
+            return;
+        }
+        this.currentNote = this.lastVersion.getNoteId();
+        this.currentVersion = this.lastVersion;
         this.currentVersionId = this.currentVersion.getId();
+        this.versionHistory = versionBean.findHistory(currentNote);
     }
     
     /**
@@ -218,6 +335,18 @@ public class EventHandler implements Serializable {
      * @param e selection from primefaces;
      */
     public void onVersionSelected(ValueChangeEvent e) {
+        if (this.lastVersion != null && this.lastVersion.getId() == this.currentVersionId) {
+            this.currentVersion = this.lastVersion;
+            return;
+        }
+        if (this.versionHistory != null) {
+            for (VersionInfo info: this.versionHistory) {
+                if (info.getId().equals(this.currentVersionId)) {
+                    this.currentVersion = versionBean.findForReading(info);
+                    return;
+                }
+            }
+        }
         this.currentVersion = versionBean.find(this.currentVersionId);
     }
     
@@ -238,8 +367,8 @@ public class EventHandler implements Serializable {
      * @return text of current selected version;
      */
     public String getCurrentEditText() {
-        if (this.currentVersion != null) {
-            return versionBean.find(this.currentNote.getLastVersionId().getId()).getNoteText();
+        if (this.lastVersion != null) {
+            return this.lastVersion.getNoteText();
         } else {
             return "";
         }
@@ -258,7 +387,7 @@ public class EventHandler implements Serializable {
      */
     public String getCurrentEditHeader() {
         if (this.currentNote != null) {
-            return noteBean.find(this.currentNote.getId()).getHeader();
+            return this.currentNote.getHeader();
         } else {
             return "";
         }
@@ -278,22 +407,28 @@ public class EventHandler implements Serializable {
         Version newVersion = new Version();
         newVersion.setNoteText(currentEditText);
         newVersion.setSaveDate(new Date());
-        newVersion.setHash(Hash.getHash(currentEditText));
+        newVersion.setHash(Hash.getContentHash(currentEditText));
         newVersion.setUserId(session.getCurrentUser());
         newVersion.setNoteId(currentNote);
         versionBean.create(newVersion);
         
         currentNote.setHeader(currentEditHeader);
         currentNote.setLastVersionId(newVersion);
-        currentNote.getVersionList().add(newVersion);
         currentNote.setLastVersionDate(newVersion.getSaveDate());
         noteBean.edit(currentNote);
+        searchBean.index(currentNote, currentEditText);
+        if (this.noteModel != null) {
+            this.noteModel.refresh();
+        }
         
-        Directory newWrapped = directoryBean.find(currentDir.getWrapped().getId());
-        this.currentDir.setWrapped(newWrapped);
-        
+        this.lastVersion = newVersion;
         this.currentVersion = newVersion;
         this.currentVersionId = newVersion.getId();
+        if (this.versionHistory != null) {
+            this.versionHistory.add(new VersionInfo(newVersion.getId(), newVersion.getSaveDate(), newVersion.getHash(), newVersion.getTextSize()));
+        } else {
+            this.versionHistory = versionBean.findHistory(currentNote);
+        }
         this.enableEdit = false;
     }
     
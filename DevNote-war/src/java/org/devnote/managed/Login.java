@@ -61,8 +61,8 @@ public class Login {
      * @return result code for navigation ('success' if login performed correctly or 'failed' if not)
      */
     public String login() {
-        User findedUser = userBean.findByLogin(currentUser.getLogin());
-        if (findedUser != null && currentUser.getLogin().equals(findedUser.getLogin()) && currentUser.getPassw().equals(findedUser.getPassw())) {
+        User findedUser = userBean.authenticate(currentUser.getLogin(), currentUser.getPassw());
+        if (findedUser != null) {
             FacesContext.getCurrentInstance().getExternalContext().getSessionMap().put("username", findedUser.getLogin());
             if (findedUser.getIsAdmin()) {
                 FacesContext.getCurrentInstance().getExternalContext().getSessionMap().put("isAdmin", "true");
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.devnote.servlets;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import javax.ejb.EJB;
+import javax.inject.Inject;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.devnote.ejb.SharedCache;
+import org.devnote.entries.User;
+import org.devnote.managed.UserSession;
+
+/**
+ * Statistics of shared entity cache of this application node 
+ * as plain text, available only for admins.
+ * @author Stanislav Nepochatov
+ */
+public class CacheStatsServlet extends HttpServlet {
+    
+    /**
+     * Shared cache statistics.
+     */
+    @EJB
+    private SharedCache sharedCache;
+    
+    /**
+     * Current user session.
+     */
+    @Inject
+    private UserSession session;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        User user = session.getCurrentUser();
+        if (user == null || !user.getIsAdmin()) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        response.setContentType("text/plain");
+        response.setCharacterEncoding("UTF-8");
+        PrintWriter writer = response.getWriter();
+        for (SharedCache.Statistics statistics: sharedCache.getStatistics()) {
+            writer.println(statistics + String.format(", hitRatio=%.3f", statistics.getHitRatio()));
+        }
+    }
+    
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.devnote.servlets;
+
+import java.io.IOException;
+import java.util.Date;
+import javax.ejb.EJB;
+import javax.inject.Inject;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.devnote.ejb.ExportFacadeLocal;
+import org.devnote.entries.User;
+import org.devnote.managed.UserSession;
+
+/**
+ * Export of current user notes as ZIP archive. Archive is streamed 
+ * straight to response without buffering.<br/>
+ * <br/>
+ * Optional 'since' parameter (milliseconds from epoch) limits 
+ * export to versions saved after that date.
+ * @author Stanislav Nepochatov
+ */
+public class ExportServlet extends HttpServlet {
+    
+    /**
+     * Export ejb facade.
+     */
+    @EJB
+    private ExportFacadeLocal exportBean;
+    
+    /**
+     * Current user session.
+     */
+    @Inject
+    private UserSession session;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        User user = session.getCurrentUser();
+        if (user == null) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        Date since = null;
+        String sinceParam = request.getParameter("since");
+        if (sinceParam != null && !sinceParam.isEmpty()) {
+            try {
+                since = new Date(Long.parseLong(sinceParam));
+            } catch (NumberFormatException ex) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Parameter 'since' should be milliseconds from epoch");
+                return;
+            }
+        }
+        response.setContentType("application/zip");
+        response.setHeader("Content-Disposition", "attachment; filename=\"devnote-" + user.getId() 
+                + (since != null ? "-since-" + since.getTime() : "") + ".zip\"");
+        exportBean.export(user, since, response.getOutputStream());
+    }
+    
+}
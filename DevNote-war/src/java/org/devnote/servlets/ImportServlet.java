@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.devnote.servlets;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import javax.ejb.EJB;
+import javax.ejb.EJBException;
+import javax.inject.Inject;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.devnote.ejb.NoteImporter;
+import org.devnote.entries.User;
+import org.devnote.managed.UserSession;
+
+/**
+ * Bulk import of note tree from server folder to notes of current user, 
+ * available only for admins.<br/>
+ * <br/>
+ * POST with 'folder' (local path on server) and 'path' (directory path 
+ * of imported root) parameters starts import in background, 
+ * GET shows progress of the latest import as plain text.
+ * @author Stanislav Nepochatov
+ */
+public class ImportServlet extends HttpServlet {
+    
+    /**
+     * Bulk importer.
+     */
+    @EJB
+    private NoteImporter importer;
+    
+    /**
+     * Current user session.
+     */
+    @Inject
+    private UserSession session;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        User user = getAdmin(response);
+        if (user == null) {
+            return;
+        }
+        printProgress(importer.getProgress(user.getId()), response);
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        User user = getAdmin(response);
+        if (user == null) {
+            return;
+        }
+        String folder = request.getParameter("folder");
+        String path = request.getParameter("path");
+        if (folder == null || folder.isEmpty() || path == null || path.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Parameters 'folder' and 'path' are required");
+            return;
+        }
+        try {
+            printProgress(importer.start(user.getId(), folder, path), response);
+        } catch (EJBException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IllegalArgumentException) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, cause.getMessage());
+            } else if (cause instanceof IllegalStateException) {
+                response.sendError(HttpServletResponse.SC_CONFLICT, cause.getMessage());
+            } else {
+                throw ex;
+            }
+        }
+    }
+    
+    /**
+     * Get current user if it's admin or send error.
+     * @param response servlet response;
+     * @return admin user or null if error was sent;
+     */
+    private User getAdmin(HttpServletResponse response) throws IOException {
+        User user = session.getCurrentUser();
+        if (user == null || !user.getIsAdmin()) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return null;
+        }
+        return user;
+    }
+    
+    /**
+     * Write import progress.
+     * @param progress progress or null if there was no import;
+     * @param response servlet response;
+     */
+    private static void printProgress(NoteImporter.Progress progress, HttpServletResponse response) throws IOException {
+        response.setContentType("text/plain");
+        response.setCharacterEncoding("UTF-8");
+        PrintWriter writer = response.getWriter();
+        if (progress == null) {
+            writer.println("No import");
+        } else {
+            writer.println((progress.isDone() ? "Finished: " : "Running: ") + progress);
+        }
+    }
+    
+}
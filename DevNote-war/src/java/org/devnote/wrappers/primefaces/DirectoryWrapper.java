@@ -56,6 +56,11 @@ public class DirectoryWrapper implements TreeNode, Serializable {
      */
     private Boolean expanded = false;
     
+    /**
+     * Flag of subdirectories which aren't loaded yet.
+     */
+    private boolean hasUnloadedChildren = false;
+    
     /**
      * Selected flag.
      */
@@ -129,7 +134,7 @@ public class DirectoryWrapper implements TreeNode, Serializable {
 
     @Override
     public boolean isLeaf() {
-        return this.childrens.isEmpty();
+        return this.childrens.isEmpty() && !this.hasUnloadedChildren;
     }
 
     @Override
@@ -188,6 +193,22 @@ public class DirectoryWrapper implements TreeNode, Serializable {
         this.wrapped = wrapped;
     }
     
+    /**
+     * Check if directory has subdirectories which should be loaded on expand.
+     * @return true if children aren't loaded yet;
+     */
+    public boolean hasUnloadedChildren() {
+        return this.hasUnloadedChildren;
+    }
+    
+    /**
+     * Set unloaded subdirectories flag.
+     * @param hasUnloadedChildren true if directory has subdirectories which aren't loaded yet;
+     */
+    public void setHasUnloadedChildren(boolean hasUnloadedChildren) {
+        this.hasUnloadedChildren = hasUnloadedChildren;
+    }
+    
     @Override
     public String toString() {
         return (String) this.getData();
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2014 Stanislav Nepochatov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.devnote.wrappers.primefaces;
+
+import java.util.List;
+import java.util.Map;
+import org.devnote.ejb.NoteFacadeLocal;
+import org.devnote.entries.Directory;
+import org.devnote.entries.Note;
+import org.primefaces.model.LazyDataModel;
+import org.primefaces.model.SortOrder;
+
+/**
+ * Lazy primefaces data model with notes of single directory.<br/>
+ * <br/>
+ * Model loads only visible page. Next and previous pages are loaded 
+ * by keyset (sort key and id of the edge row of current page), so paging 
+ * cost doesn't depend on page depth. Random page jumps and first load 
+ * use offset query.
+ * @see NoteFacadeLocal#findDirPage
+ * @author Stanislav Nepochatov
+ */
+public class NoteLazyModel extends LazyDataModel<Note> {
+    
+    /**
+     * Note facade.
+     */
+    private final NoteFacadeLocal noteBean;
+    
+    /**
+     * Directory of notes.
+     */
+    private final Directory dir;
+    
+    /**
+     * Current loaded page.
+     */
+    private List<Note> page;
+    
+    /**
+     * Offset of current loaded page.
+     */
+    private int pageFirst;
+    
+    /**
+     * Sort field of current loaded page.
+     */
+    private String pageSortField;
+    
+    /**
+     * Sort order of current loaded page.
+     */
+    private boolean pageAscending;
+    
+    /**
+     * Header filter of current loaded page.
+     */
+    private String pageFilter;
+    
+    /**
+     * Row count is outdated flag.
+     */
+    private boolean countOutdated = true;
+    
+    /**
+     * Parametrick constructor.
+     * @param noteBean note facade;
+     * @param dir directory of notes;
+     */
+    public NoteLazyModel(NoteFacadeLocal noteBean, Directory dir) {
+        this.noteBean = noteBean;
+        this.dir = dir;
+    }
+
+    @Override
+    public List<Note> load(int first, int pageSize, String sortField, SortOrder sortOrder, Map<String, Object> filters) {
+        boolean ascending = sortField != null && sortOrder == SortOrder.ASCENDING;
+        Object filterValue = filters != null ? filters.get("header") : null;
+        String filter = filterValue != null ? filterValue.toString() : null;
+        
+        boolean samePaging = page != null && !page.isEmpty() && !countOutdated 
+                && pageAscending == ascending && equals(pageSortField, sortField) && equals(pageFilter, filter);
+        List<Note> loaded;
+        if (samePaging && first == pageFirst + page.size()) {
+            Note last = page.get(page.size() - 1);
+            loaded = noteBean.findDirPage(dir, sortField, ascending, filter, getSortKey(last, sortField), last.getId(), true, pageSize);
+        } else if (samePaging && first + pageSize == pageFirst) {
+            Note firstNote = page.get(0);
+            loaded = noteBean.findDirPage(dir, sortField, ascending, filter, getSortKey(firstNote, sortField), firstNote.getId(), false, pageSize);
+        } else {
+            loaded = noteBean.findDirRange(dir, sortField, ascending, filter, first, pageSize);
+        }
+        
+        if (!samePaging) {
+            this.setRowCount(noteBean.countDir(dir, filter));
+            this.countOutdated = false;
+        }
+        this.page = loaded;
+        this.pageFirst = first;
+        this.pageSortField = sortField;
+        this.pageAscending = ascending;
+        this.pageFilter = filter;
+        return loaded;
+    }
+
+    @Override
+    public Note getRowData(String rowKey) {
+        if (page != null) {
+            for (Note current: page) {
+                if (current.getId().toString().equals(rowKey)) {
+                    return current;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Object getRowKey(Note note) {
+        return note.getId();
+    }
+    
+    /**
+     * Mark model as outdated after notes change, 
+     * next load will recount notes and use offset query.
+     */
+    public void refresh() {
+        this.countOutdated = true;
+    }
+    
+    /**
+     * Get directory of this model.
+     * @return directory entity;
+     */
+    public Directory getDir() {
+        return dir;
+    }
+    
+    /**
+     * Get sort key of note.
+     * @param note note from page;
+     * @param sortField sort field or null for default;
+     * @return value of sort attribute;
+     */
+    private static Object getSortKey(Note note, String sortField) {
+        return "header".equals(sortField) ? note.getHeader() : note.getLastVersionDate();
+    }
+    
+    /**
+     * Null safe equals.
+     */
+    private static boolean equals(String first, String second) {
+        return first == null ? second == null : first.equals(second);
+    }
+}
@@ -1,5 +1,6 @@
 -- Create DevNote database;
--- Data base structure version = 2.1;
+-- Data base structure version = 3.0;
+-- Existing databases are updated with updatedb.sql;
 
 -- DEVNOTE USER CREATE
 -- !!!WARNING!!! Change password here!
@@ -36,6 +37,19 @@ PRIMARY KEY (id),
 FOREIGN KEY (user_id) REFERENCES User(id)
 );
 
+-- DIRECTORY HIERARCHY CLOSURE TABLE
+-- Row for every (ancestor, descendant) pair including directory itself (depth = 0).
+-- Existing directories may be indexed with backfill statement from filldb.sql.
+CREATE TABLE DirectoryClosure (
+ancestor_id	int not null,
+descendant_id	int not null,
+depth		int not null,
+PRIMARY KEY (ancestor_id, descendant_id),
+INDEX (descendant_id, ancestor_id),
+FOREIGN KEY (ancestor_id) REFERENCES Directory(id),
+FOREIGN KEY (descendant_id) REFERENCES Directory(id)
+);
+
 -- NOTE TABLE
 CREATE TABLE Note (
 id		int AUTO_INCREMENT not null,
@@ -49,6 +63,16 @@ FOREIGN KEY (user_id) REFERENCES User(id),
 FOREIGN KEY (dir_id) REFERENCES Directory(id)
 );
 
+-- NOTE CONTENT TABLE (full texts shared by versions with equal hash)
+CREATE TABLE Content (
+id		int AUTO_INCREMENT not null,
+hash		varchar(80) not null,
+note_text	mediumblob not null,
+ref_count	int not null,
+PRIMARY KEY (id),
+UNIQUE (hash)
+);
+
 -- NOTE VERSION TABLE
 CREATE TABLE Version (
 id		int AUTO_INCREMENT not null,
@@ -56,11 +80,23 @@ hash		text(32) not null,
 save_date	timestamp not null,
 user_id		int not null,
 note_id		int not null,
-note_text	mediumtext not null,
+note_text	mediumblob null,
+text_size	int null,
+content_id	int null,
+note_delta	mediumblob null,
+base_version_id	int null,
+snapshot_version_id	int null,
+chain_length	int not null default 0,
 PRIMARY KEY (id),
 FOREIGN KEY (user_id) REFERENCES User(id),
-FOREIGN KEY (note_id) REFERENCES Note(id)
+FOREIGN KEY (note_id) REFERENCES Note(id),
+FOREIGN KEY (content_id) REFERENCES Content(id)
 );
 
 -- ADD FOREIGN KEY FOR NOTE TABLE
-ALTER TABLE Note ADD FOREIGN KEY (last_version_id) REFERENCES Version(id);
\ No newline at end of file
+ALTER TABLE Note ADD FOREIGN KEY (last_version_id) REFERENCES Version(id);
+
+-- KEYSET PAGINATION INDEXES (sort key + id tie breaker)
+CREATE INDEX note_last_version_date ON Note (last_version_date, id);
+CREATE INDEX version_save_date ON Version (save_date, id);
+CREATE INDEX note_dir_last_version_date ON Note (dir_id, last_version_date, id);
\ No newline at end of file
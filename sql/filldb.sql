@@ -26,6 +26,11 @@ INSERT INTO Directory (path, user_id) VALUES ("Test.Inner.Deep", 2);
 -- ID = 4
 INSERT INTO Directory (path, user_id) VALUES ("Test2", 2);
 
+-- DIRECTORY CLOSURE BACKFILL (indexes hierarchy of all directories by path)
+INSERT INTO DirectoryClosure (ancestor_id, descendant_id, depth)
+SELECT a.id, d.id, (LENGTH(d.path) - LENGTH(REPLACE(d.path, '.', ''))) - (LENGTH(a.path) - LENGTH(REPLACE(a.path, '.', '')))
+FROM Directory a JOIN Directory d ON a.user_id = d.user_id AND (d.id = a.id OR LEFT(d.path, CHAR_LENGTH(a.path) + 1) = CONCAT(a.path, '.'));
+
 -- NOTE CREATION
 
 -- TEST NOTE (ID = 1)
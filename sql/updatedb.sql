@@ -0,0 +1,72 @@
+-- Update existing DevNote database;
+-- Data base structure version = 2.1 -> 3.0;
+-- Sections are marked with target version, skip sections already applied;
+--
+-- UPGRADE ORDER:
+-- 1. Stop application (undeploy DevNote);
+-- 2. Backup database (mysqldump devnote);
+-- 3. Run this script once;
+-- 4. Deploy new application version.
+-- New application writes compressed binary texts, so it must not run 
+-- against old mediumtext columns. Fresh installs use createdb.sql instead.
+
+-- CHANGE DB;
+USE devnote;
+
+-- === 2.9 ===
+
+-- VERSION DELTA COLUMNS
+-- Existing versions stay full text snapshots (note_delta is null, chain_length = 0).
+ALTER TABLE Version
+ADD text_size	int null,
+ADD content_id	int null,
+ADD note_delta	mediumblob null,
+ADD base_version_id	int null,
+ADD snapshot_version_id	int null,
+ADD chain_length	int not null default 0;
+
+-- TEXT SIZE BACKFILL (in chars, before column becomes binary)
+UPDATE Version SET text_size = CHAR_LENGTH(note_text);
+
+-- NOTE CONTENT TABLE (full texts shared by versions with equal hash)
+CREATE TABLE Content (
+id		int AUTO_INCREMENT not null,
+hash		varchar(64) not null,
+note_text	mediumblob not null,
+ref_count	int not null,
+PRIMARY KEY (id),
+UNIQUE (hash)
+);
+
+ALTER TABLE Version ADD FOREIGN KEY (content_id) REFERENCES Content(id);
+
+-- BINARY TEXT COLUMN
+-- Old rows keep UTF-8 bytes and are decoded as is, new rows may be compressed.
+-- Text becomes nullable: shared content and delta versions have no inline text.
+ALTER TABLE Version MODIFY note_text mediumblob null;
+
+-- DIRECTORY HIERARCHY CLOSURE TABLE
+CREATE TABLE DirectoryClosure (
+ancestor_id	int not null,
+descendant_id	int not null,
+depth		int not null,
+PRIMARY KEY (ancestor_id, descendant_id),
+INDEX (descendant_id, ancestor_id),
+FOREIGN KEY (ancestor_id) REFERENCES Directory(id),
+FOREIGN KEY (descendant_id) REFERENCES Directory(id)
+);
+
+-- DIRECTORY CLOSURE BACKFILL (indexes hierarchy of all directories by path)
+INSERT INTO DirectoryClosure (ancestor_id, descendant_id, depth)
+SELECT a.id, d.id, (LENGTH(d.path) - LENGTH(REPLACE(d.path, '.', ''))) - (LENGTH(a.path) - LENGTH(REPLACE(a.path, '.', '')))
+FROM Directory a JOIN Directory d ON a.user_id = d.user_id AND (d.id = a.id OR LEFT(d.path, CHAR_LENGTH(a.path) + 1) = CONCAT(a.path, '.'));
+
+-- KEYSET PAGINATION INDEXES (sort key + id tie breaker)
+CREATE INDEX note_last_version_date ON Note (last_version_date, id);
+CREATE INDEX version_save_date ON Version (save_date, id);
+CREATE INDEX note_dir_last_version_date ON Note (dir_id, last_version_date, id);
+
+-- === 3.0 ===
+
+-- ALGORITHM TAGGED CONTENT HASHES (e.g. 'sha256:' + 64 hex chars)
+ALTER TABLE Content MODIFY hash varchar(80) not null;